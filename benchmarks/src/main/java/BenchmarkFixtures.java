@@ -0,0 +1,224 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The game's package-private classes set up for the JMH benchmarks in the benchmarks package.
+ * JMH refuses benchmarks in the default package, so they reach these through reflection and only
+ * ever see JDK functional interfaces; everything that is measured still runs the game's own code.
+ */
+public final class BenchmarkFixtures {
+    private BenchmarkFixtures() {
+    }
+
+    static {
+        // Compile the levels into a scratch directory instead of ./levels of wherever this runs
+        if (System.getProperty("level.dir") == null) {
+            try {
+                System.setProperty("level.dir", Files.createTempDirectory("bench-levels").toString());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /** A connection that keeps up with everything: each frame goes through its queue and straight out */
+    static final class FakeConnection implements Connection {
+        private final OutboundQueue outbound = new OutboundQueue(OutboundQueue.DEFAULT_CAPACITY);
+        private long bytes = 0;
+
+        @Override
+        public void send(ByteBuffer frame, OutboundQueue.Delivery delivery) {
+            outbound.offer(frame, delivery);
+            ByteBuffer next;
+            while ((next = outbound.poll()) != null) {
+                bytes += next.remaining();
+            }
+        }
+
+        @Override
+        public OutboundQueue outbound() {
+            return outbound;
+        }
+
+        @Override
+        public void close() {
+            outbound.close();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public String describe() {
+            return "fake";
+        }
+    }
+
+    /** A started match of fake clients, the first one is handed back */
+    private static ClientHandler startedMatch(Match match) {
+        ClientHandler first = null;
+        for (int i = 0; i < GameServer.PLAYERS_PER_MATCH; i++) {
+            ClientHandler client = new ClientHandler(new FakeConnection());
+            match.addPlayer(client);
+            if (first == null) first = client;
+        }
+        match.start();
+        return first;
+    }
+
+    /** ClientHandler.onMessage of player 1 in a running match */
+    public static Consumer<String> clientMessages() {
+        ClientHandler client = startedMatch(new Match(1));
+        return client::onMessage;
+    }
+
+    /**
+     * Two lines player 1 sends in turns: position (POSITION_UPDATE), move (MOVE) or ack
+     * (SNAPSHOT_ACK). Moves go one step from the spawn point and back, so every one of them is
+     * legal and the simulation does the full check each time.
+     */
+    public static String[] messages(String kind) {
+        MovementSimulation.Floor ground = floors()[0];
+        double x = ground.spawnX, y = ground.spawnY;
+        // A direction the spawn point can step into and back out of
+        char there = 'R', back = 'L';
+        for (char[] pair : new char[][] {{'R', 'L'}, {'L', 'R'}, {'D', 'U'}, {'U', 'D'}}) {
+            if (new MovementSimulation(floors()).move(pair[0], 0) != MovementSimulation.Outcome.BLOCKED) {
+                there = pair[0];
+                back = pair[1];
+                break;
+            }
+        }
+        double dx = there == 'R' ? MovementSimulation.STEP : there == 'L' ? -MovementSimulation.STEP : 0;
+        double dy = there == 'D' ? MovementSimulation.STEP : there == 'U' ? -MovementSimulation.STEP : 0;
+
+        return switch (kind) {
+            case "position" -> new String[] {
+                    "POSITION_UPDATE:" + (x + dx) + ":" + (y + dy), "POSITION_UPDATE:" + x + ":" + y};
+            case "move" -> new String[] {"MOVE:" + there + ":1", "MOVE:" + back + ":2"};
+            case "ack" -> new String[] {"SNAPSHOT_ACK:1", "SNAPSHOT_ACK:2"};
+            default -> throw new IllegalArgumentException("Unknown message kind " + kind);
+        };
+    }
+
+    /** Match.broadcastToAll reaching recipients clients: both players, the rest watch as spectators */
+    public static Consumer<String> matchBroadcast(int recipients) {
+        Match match = new Match(1);
+        startedMatch(match);
+        for (int i = GameServer.PLAYERS_PER_MATCH; i < recipients; i++) {
+            ClientHandler spectator = new ClientHandler(new FakeConnection());
+            spectators.add(spectator);
+            GameServer.getSpectators().add(spectator, List.of());
+        }
+        return match::broadcastToAll;
+    }
+
+    private static final List<ClientHandler> spectators = new ArrayList<>();
+
+    /** Remove the spectators matchBroadcast added, the feed is shared by the whole server */
+    public static void clearSpectators() {
+        for (ClientHandler spectator : spectators) {
+            GameServer.getSpectators().remove(spectator);
+        }
+        spectators.clear();
+    }
+
+    /**
+     * MultiplayerController.checkCollision on the ground floor: walls and barriers touching, washroom
+     * blocks overlapping, for player position i of positions random ones. Returns the blocking box or -1.
+     */
+    public static IntUnaryOperator multiplayerCollision(int positions) {
+        MovementSimulation.Floor floor = floors()[0];
+        double[] xs = new double[positions], ys = new double[positions];
+        randomPositions(floor.width, floor.height, xs, ys);
+        double w = floor.playerWidth, h = floor.playerHeight;
+        StaticGeometry walls = floor.walls, barriers = floor.barriers, washrooms = floor.washroomBlocks;
+        return i -> {
+            double minX = xs[i], minY = ys[i], maxX = minX + w, maxY = minY + h;
+            int hit = walls.firstIntersecting(minX, minY, maxX, maxY);
+            if (hit < 0) hit = barriers.firstIntersecting(minX, minY, maxX, maxY);
+            if (hit < 0) hit = washrooms.firstOverlapping(minX, minY, maxX, maxY);
+            return hit;
+        };
+    }
+
+    /** LibraryController.checkCollision and checkBookCollisions: obstacles, then books */
+    public static IntUnaryOperator libraryCollision(int positions) {
+        LevelData level;
+        try {
+            level = LevelData.forResource("/fxml/library.fxml");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        double[] xs = new double[positions], ys = new double[positions];
+        randomPositions(level.width() > 0 ? level.width() : 600, level.height() > 0 ? level.height() : 400, xs, ys);
+        LevelData.Kind player = LevelData.Kind.PLAYER;
+        double w = level.maxX(player, 0) - level.minX(player, 0), h = level.maxY(player, 0) - level.minY(player, 0);
+        StaticGeometry obstacles = level.geometry(LevelData.Kind.OBSTACLE);
+        StaticGeometry books = level.geometry(LevelData.Kind.BOOK);
+        return i -> {
+            double minX = xs[i], minY = ys[i], maxX = minX + w, maxY = minY + h;
+            int hit = obstacles.firstIntersecting(minX, minY, maxX, maxY);
+            return hit >= 0 ? hit : books.firstIntersecting(minX, minY, maxX, maxY);
+        };
+    }
+
+    /**
+     * CafeController.checkBubbleSortTouch driven to the end from the given plate order, the player
+     * always stepping on the plate the puzzle waits for. Returns the number of plates touched.
+     */
+    public static IntSupplier bubbleSort(int[] plates) {
+        return () -> {
+            BubbleSortPuzzle puzzle = new BubbleSortPuzzle(plates);
+            int touches = 0;
+            while (!puzzle.nextPass()) {
+                if (puzzle.skipLocked()) continue;
+                puzzle.touchSecond();
+                touches++;
+            }
+            return touches;
+        };
+    }
+
+    /** Plate values 1..n in a fixed shuffled order */
+    public static int[] shuffledPlates(int n) {
+        int[] plates = new int[n];
+        for (int i = 0; i < n; i++) {
+            plates[i] = i + 1;
+        }
+        Random random = new Random(42);
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = plates[i];
+            plates[i] = plates[j];
+            plates[j] = t;
+        }
+        return plates;
+    }
+
+    private static void randomPositions(double width, double height, double[] xs, double[] ys) {
+        Random random = new Random(42);
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = random.nextDouble() * width;
+            ys[i] = random.nextDouble() * height;
+        }
+    }
+
+    private static MovementSimulation.Floor[] floors() {
+        try {
+            return MovementSimulation.floors();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares a JMH JSON result (-rf json) against the stored baseline and exits with 1 if any
+ * benchmark got slower by more than the threshold (default 10%) and by more than the two error
+ * margins together, so noise alone doesn't fail it.
+ *
+ *   java -cp target/benchmarks.jar benchmarks.BaselineCompare baseline/baseline.json target/result.json [--threshold=10]
+ */
+public class BaselineCompare {
+
+    record Result(String mode, double score, double error, String unit) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> files = new ArrayList<>();
+        double threshold = 10;
+        for (String arg : args) {
+            if (arg.startsWith("--threshold=")) {
+                threshold = Double.parseDouble(arg.substring("--threshold=".length()));
+            } else {
+                files.add(arg);
+            }
+        }
+        if (files.size() != 2) {
+            System.err.println("Usage: BaselineCompare <baseline.json> <result.json> [--threshold=percent]");
+            System.exit(2);
+        }
+
+        Map<String, Result> baseline = read(Path.of(files.get(0)));
+        Map<String, Result> current = read(Path.of(files.get(1)));
+
+        int regressions = 0;
+        System.out.printf("%-60s %14s %14s %9s%n", "benchmark", "baseline", "current", "change");
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result now = entry.getValue();
+            Result before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-60s %14s %14.3f %9s%n", entry.getKey(), "-", now.score(), "new");
+                continue;
+            }
+            // Time per operation should go down, throughput up
+            boolean lowerIsBetter = !now.mode().equals("thrpt");
+            double change = (now.score() - before.score()) / before.score() * 100;
+            double worse = lowerIsBetter ? change : -change;
+            boolean beyondNoise = Math.abs(now.score() - before.score()) > before.error() + now.error();
+            boolean regressed = worse > threshold && beyondNoise;
+            if (regressed) regressions++;
+            System.out.printf("%-60s %14.3f %14.3f %+8.1f%% %s%s%n", entry.getKey(), before.score(), now.score(),
+                    change, now.unit(), regressed ? "  REGRESSION" : "");
+        }
+        for (String name : baseline.keySet()) {
+            if (!current.containsKey(name)) {
+                System.out.printf("%-60s %14.3f %14s %9s%n", name, baseline.get(name).score(), "-", "missing");
+            }
+        }
+
+        System.out.println(regressions == 0 ? "No regressions" : regressions + " regression(s) over " + threshold + "%");
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+
+    /** Benchmark name with its parameters, e.g. benchmarks.BroadcastBenchmark.broadcastToAll:clients=100 */
+    @SuppressWarnings("unchecked")
+    static Map<String, Result> read(Path file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (Object item : (List<Object>) new Json(Files.readString(file)).value()) {
+            Map<String, Object> run = (Map<String, Object>) item;
+            StringBuilder name = new StringBuilder((String) run.get("benchmark"));
+            Map<String, Object> params = (Map<String, Object>) run.get("params");
+            if (params != null) {
+                params.forEach((key, value) -> name.append(':').append(key).append('=').append(value));
+            }
+            Map<String, Object> metric = (Map<String, Object>) run.get("primaryMetric");
+            Object error = metric.get("scoreError");
+            results.put(name.toString(), new Result((String) run.get("mode"), (Double) metric.get("score"),
+                    error instanceof Double d ? d : 0, (String) metric.get("scoreUnit")));
+        }
+        return results;
+    }
+
+    /** Just enough JSON for JMH's result files; "NaN" error margins come out as strings */
+    static final class Json {
+        private final String text;
+        private int pos = 0;
+
+        Json(String text) {
+            this.text = text;
+        }
+
+        Object value() {
+            skipSpace();
+            char c = text.charAt(pos);
+            switch (c) {
+                case '{': {
+                    Map<String, Object> object = new LinkedHashMap<>();
+                    pos++;
+                    skipSpace();
+                    if (text.charAt(pos) == '}') {
+                        pos++;
+                        return object;
+                    }
+                    while (true) {
+                        skipSpace();
+                        String key = string();
+                        skipSpace();
+                        expect(':');
+                        object.put(key, value());
+                        skipSpace();
+                        if (text.charAt(pos++) == '}') return object;
+                    }
+                }
+                case '[': {
+                    List<Object> array = new ArrayList<>();
+                    pos++;
+                    skipSpace();
+                    if (text.charAt(pos) == ']') {
+                        pos++;
+                        return array;
+                    }
+                    while (true) {
+                        array.add(value());
+                        skipSpace();
+                        if (text.charAt(pos++) == ']') return array;
+                    }
+                }
+                case '"':
+                    return string();
+                default: {
+                    int start = pos;
+                    while (pos < text.length() && ",}] \t\r\n".indexOf(text.charAt(pos)) < 0) pos++;
+                    String literal = text.substring(start, pos);
+                    return switch (literal) {
+                        case "true" -> Boolean.TRUE;
+                        case "false" -> Boolean.FALSE;
+                        case "null" -> null;
+                        default -> Double.parseDouble(literal);
+                    };
+                }
+            }
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder out = new StringBuilder();
+            char c;
+            while ((c = text.charAt(pos++)) != '"') {
+                if (c == '\\') {
+                    c = text.charAt(pos++);
+                    switch (c) {
+                        case 'n' -> out.append('\n');
+                        case 't' -> out.append('\t');
+                        case 'u' -> {
+                            out.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                            pos += 4;
+                        }
+                        default -> out.append(c);
+                    }
+                } else {
+                    out.append(c);
+                }
+            }
+            return out.toString();
+        }
+
+        private void expect(char c) {
+            if (text.charAt(pos) != c) {
+                throw new IllegalArgumentException("Expected '" + c + "' at " + pos);
+            }
+            pos++;
+        }
+
+        private void skipSpace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Match.broadcastToAll of one game event to a growing number of clients: the two players and, past
+ * them, spectators getting the same event through the SpectatorFeed. Each client's queue is drained
+ * right away, so this is the encode and fan-out cost without a slow reader holding anything up.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog.level=WARN")
+@State(Scope.Thread)
+public class BroadcastBenchmark {
+    @Param({"2", "100", "1000"})
+    public int clients;
+
+    private Consumer<String> broadcast;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        broadcast = Fixtures.call("matchBroadcast", clients);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Fixtures.call("clearSpectators");
+    }
+
+    @Benchmark
+    public void broadcastToAll() {
+        broadcast.accept("ROOM_VISITED:1:12");
+    }
+}
@@ -0,0 +1,34 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * The cafe's bubble sort puzzle (CafeController.checkBubbleSortTouch) played from a shuffled order
+ * until it reports sorted: the five plates of the real level, and longer rows to show how the step
+ * logic grows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog.level=WARN")
+@State(Scope.Thread)
+public class BubbleSortBenchmark {
+    @Param({"5", "32"})
+    public int plates;
+
+    private IntSupplier solve;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        solve = Fixtures.call("bubbleSort", (Object) Fixtures.<int[]>call("shuffledPlates", plates));
+    }
+
+    @Benchmark
+    public int solvePuzzle() {
+        return solve.getAsInt();
+    }
+}
@@ -0,0 +1,43 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The AABB checks behind MultiplayerController.checkCollision (walls, barriers, washroom blocks of
+ * the ground floor) and LibraryController.checkCollision (obstacles, then books), against the
+ * compiled levels, for player positions spread over the whole floor.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog.level=WARN")
+@State(Scope.Thread)
+public class CollisionBenchmark {
+    private static final int POSITIONS = 1024;
+
+    private IntUnaryOperator multiplayer;
+    private IntUnaryOperator library;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        multiplayer = Fixtures.call("multiplayerCollision", POSITIONS);
+        library = Fixtures.call("libraryCollision", POSITIONS);
+    }
+
+    @Benchmark
+    public int multiplayerCheckCollision() {
+        next = (next + 1) & (POSITIONS - 1);
+        return multiplayer.applyAsInt(next);
+    }
+
+    @Benchmark
+    public int libraryCheckCollision() {
+        next = (next + 1) & (POSITIONS - 1);
+        return library.applyAsInt(next);
+    }
+}
@@ -0,0 +1,38 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * ClientHandler.onMessage for the lines a player sends most during a match: the split, the number
+ * parsing and the Match call behind it (the movement check for positions and moves).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog.level=WARN")
+@State(Scope.Thread)
+public class MessageParsingBenchmark {
+    @Param({"position", "move", "ack"})
+    public String kind;
+
+    private Consumer<String> handler;
+    private String[] lines;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        handler = Fixtures.call("clientMessages");
+        lines = Fixtures.call("messages", kind);
+    }
+
+    @Benchmark
+    public void handleMessage() {
+        // Alternating lines, one step out and one back, keep every position legal
+        handler.accept(lines[next]);
+        next ^= 1;
+    }
+}
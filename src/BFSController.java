@@ -1,7 +1,8 @@
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
-import javafx.scene.Parent;
+import javafx.geometry.Bounds;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
@@ -14,13 +15,18 @@ import javafx.scene.shape.Rectangle;
 import javafx.stage.Stage;
 
 import java.io.IOException;
+import java.net.URL;
 import java.util.*;
 
-public class BFSController {
+public class BFSController implements LevelCache.Controller {
 
     @FXML
     private AnchorPane rootPane;
 
+    // Where this floor's FXML came from, set by FXMLLoader; names the compiled level
+    @FXML
+    private URL location;
+
     @FXML
     private Rectangle player;
 
@@ -28,6 +34,11 @@ public class BFSController {
     private Label timerLabel;
 
     private double step = 5;
+    // Held keys and the frame loop that walks the player with them
+    private final InputState input = new InputState();
+    private GameLoop loop;
+    // Toasts for doors, washrooms and lifts, the player keeps walking while they show
+    private Notifications notifications;
     private List<Rectangle> walls = new ArrayList<>();
     private List<Line> barriers = new ArrayList<>();
     private List<Rectangle> collectibles = new ArrayList<>();
@@ -36,6 +47,15 @@ public class BFSController {
     private List<Rectangle> lifts = new ArrayList<>();
     private Map<Rectangle, Integer> doorIDs = new HashMap<>();
 
+    // Spatial index of the floor, built once in categorizeNodes so a key press only tests nearby nodes
+    private static final double GRID_CELL_SIZE = 40;
+    private SpatialGrid<Node> obstacleGrid;
+    private SpatialGrid<Rectangle> collectibleGrid;
+    private SpatialGrid<Rectangle> classroomDoorGrid;
+    private SpatialGrid<Rectangle> washroomDoorGrid;
+    private SpatialGrid<Rectangle> liftGrid;
+    private final List<Rectangle> nearby = new ArrayList<>();
+
     private int nextDoorID = 1;
     private boolean allClassroomsVisited = false;
     private boolean gameWon = false;
@@ -51,16 +71,7 @@ public class BFSController {
     public void initialize() {
         categorizeNodes();
         setupKeyControls();
-
-        // Attach current floor's timer label
-        GameTimer.attachLabel(timerLabel);
-
-        if (currentFloor == null) {
-            currentFloor = "Ground Floor";
-            Platform.runLater(this::showIntroAndFloorPopups);
-        } else {
-            GameTimer.resume(); // continue timer on new floor
-        }
+        notifications = new Notifications(rootPane);
 
         // Focus for key events
         rootPane.setFocusTraversable(true);
@@ -84,41 +95,71 @@ public class BFSController {
         });
     }
 
-    /** Categorize nodes based on color/type */
-    private void categorizeNodes() {
-        for (var node : rootPane.getChildren()) {
-            if (node instanceof Rectangle r) {
-                Color fillColor = (Color) r.getFill();
-
-                if (fillColor.equals(Color.WHITE)) {
-                    classroomDoors.add(r);
-                    try {
-                        int id = Integer.parseInt(r.getId());
-                        doorIDs.put(r, id);
-                    } catch (Exception e) {
-                        System.out.println("Set numeric FX ID for classroom doors!");
-                    }
-                } else if (fillColor.equals(Color.ORANGE)) {
-                    washroomDoors.add(r);
-                } else if (fillColor.equals(Color.DODGERBLUE)
-                        || fillColor.equals(Color.web("#1e2226"))
-                        || fillColor.equals(Color.GRAY)) {
-                    walls.add(r);
-                } else if (fillColor.equals(Color.web("#f7eed3"))) {
-                    collectibles.add(r);
-                } else if (fillColor.equals(Color.LIGHTGRAY) || fillColor.equals(Color.RED)) {
-                    lifts.add(r);
-                }
+    /** The floor is showing: take over the timer and load the floor above in the background */
+    @Override
+    public void activate() {
+        // Attach current floor's timer label
+        GameTimer.attachLabel(timerLabel);
 
-            } else if (node instanceof Line line) {
-                barriers.add(line);
-            }
+        if (currentFloor == null) {
+            currentFloor = "Ground Floor";
+            Platform.runLater(this::showIntroAndFloorPopups);
+        } else {
+            GameTimer.resume(); // continue timer on new floor
+            showInfo("Floor Info", "You are on the " + currentFloor + ".");
         }
+        rootPane.requestFocus();
+        loop.start();
 
-        classroomDoors.removeIf(d -> doorIDs.get(d) == null);
+        LevelCache.prewarm(floorMap.get(currentFloor));
+    }
+
+    /** Categorize nodes from the floor's compiled level, which sorted them by color/type once */
+    private void categorizeNodes() {
+        LevelData level = FxGeometry.level(location, rootPane);
+        double width = level.width() > 0 ? level.width() : 600;
+        double height = level.height() > 0 ? level.height() : 400;
+
+        obstacleGrid = new SpatialGrid<>(width, height, GRID_CELL_SIZE);
+        collectibleGrid = new SpatialGrid<>(width, height, GRID_CELL_SIZE);
+        classroomDoorGrid = new SpatialGrid<>(width, height, GRID_CELL_SIZE);
+        washroomDoorGrid = new SpatialGrid<>(width, height, GRID_CELL_SIZE);
+        liftGrid = new SpatialGrid<>(width, height, GRID_CELL_SIZE);
+
+        collect(level, LevelData.Kind.WALL, Rectangle.class, walls, obstacleGrid);
+        // The dark washroom blocks are plain walls on the single player floors
+        collect(level, LevelData.Kind.WASHROOM_BLOCK, Rectangle.class, walls, obstacleGrid);
+        collect(level, LevelData.Kind.BARRIER, Line.class, barriers, obstacleGrid);
+        collect(level, LevelData.Kind.COLLECTIBLE, Rectangle.class, collectibles, collectibleGrid);
+        collect(level, LevelData.Kind.CLASSROOM_DOOR, Rectangle.class, classroomDoors, classroomDoorGrid);
+        collect(level, LevelData.Kind.WASHROOM_DOOR, Rectangle.class, washroomDoors, washroomDoorGrid);
+        collect(level, LevelData.Kind.LIFT, Rectangle.class, lifts, liftGrid);
+
+        for (int i = 0; i < classroomDoors.size(); i++) {
+            doorIDs.put(classroomDoors.get(i), level.id(LevelData.Kind.CLASSROOM_DOOR, i));
+        }
         classroomDoors.sort(Comparator.comparingInt(doorIDs::get));
     }
 
+    /** Add every node of a kind to its list, and to its grid by the box the level recorded */
+    private <T extends Node> void collect(LevelData level, LevelData.Kind kind, Class<T> type,
+                                          List<? super T> nodes, SpatialGrid<? super T> grid) {
+        for (int i = 0; i < level.count(kind); i++) {
+            T node = FxGeometry.node(level, kind, i, rootPane, type);
+            nodes.add(node);
+            grid.add(node, level.minX(kind, i), level.minY(kind, i), level.maxX(kind, i), level.maxY(kind, i));
+        }
+    }
+
+    private static boolean intersectsAny(SpatialGrid<?> grid, Bounds bounds) {
+        return grid.intersectsAny(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
+    }
+
+    private static <T> List<T> query(SpatialGrid<T> grid, Bounds bounds, List<T> out) {
+        grid.query(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY(), out);
+        return out;
+    }
+
     /** Show intro popups and start timer */
     private void showIntroAndFloorPopups() {
         List<String> intros = Arrays.asList(
@@ -151,6 +192,8 @@ public class BFSController {
     /** Timer reached 0 */
     private void onTimeUp() {
     if (!gameWon) {
+        // A fresh ground floor loads while the lose screen shows, for Try Again
+        LevelCache.prewarm("/fxml/game1.fxml");
         Platform.runLater(() -> {
             try {
                 System.out.println("Creating lose screen programmatically...");
@@ -183,11 +226,11 @@ public class BFSController {
                         gameWon = false;
                         GameTimer.reset(); // ← ADD THIS LINE to reset the timer
                         
-                        FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/game1.fxml"));
-                        javafx.scene.Parent root = loader.load();
+                        LevelCache.Loaded level = LevelCache.take("/fxml/game1.fxml");
                         Stage stage = (Stage) vbox.getScene().getWindow();
-                        stage.setScene(new Scene(root, 800, 600));
+                        stage.setScene(new Scene(level.root(), 800, 600));
                         stage.show();
+                        level.activate();
                     } catch (Exception ex) {
                         ex.printStackTrace();
                     }
@@ -226,110 +269,104 @@ public class BFSController {
     }
 }
 
-    /** Key movement and collision detection */
+    /** Key movement and collision detection, driven by the frame loop */
     private void setupKeyControls() {
-        rootPane.setOnKeyPressed(event -> {
-            double oldX = player.getLayoutX();
-            double oldY = player.getLayoutY();
-
-            if (event.getCode() == KeyCode.UP)
-                player.setLayoutY(player.getLayoutY() - step);
-            else if (event.getCode() == KeyCode.DOWN)
-                player.setLayoutY(player.getLayoutY() + step);
-            else if (event.getCode() == KeyCode.LEFT)
-                player.setLayoutX(player.getLayoutX() - step);
-            else if (event.getCode() == KeyCode.RIGHT)
-                player.setLayoutX(player.getLayoutX() + step);
-
-            // Boundaries
-            if (player.getLayoutX() < 0 || player.getLayoutX() + player.getWidth() > rootPane.getWidth()
-                    || player.getLayoutY() < 0 || player.getLayoutY() + player.getHeight() > rootPane.getHeight()) {
-                player.setLayoutX(oldX);
-                player.setLayoutY(oldY);
-            }
+        input.attach(rootPane);
+        loop = new GameLoop("BFS " + location, rootPane, input, GameLoop.DEFAULT_STEPS_PER_SECOND,
+                this::stepPlayer, this::checkInteractions);
+    }
 
-            // Wall collisions
-            for (Rectangle wall : walls) {
-                if (player.getBoundsInParent().intersects(wall.getBoundsInParent())) {
-                    player.setLayoutX(oldX);
-                    player.setLayoutY(oldY);
-                    break;
-                }
-            }
+    /** One step in a direction, undone if it leaves the floor or runs into a wall */
+    private boolean stepPlayer(KeyCode direction) {
+        double oldX = player.getLayoutX();
+        double oldY = player.getLayoutY();
+
+        if (direction == KeyCode.UP)
+            player.setLayoutY(player.getLayoutY() - step);
+        else if (direction == KeyCode.DOWN)
+            player.setLayoutY(player.getLayoutY() + step);
+        else if (direction == KeyCode.LEFT)
+            player.setLayoutX(player.getLayoutX() - step);
+        else if (direction == KeyCode.RIGHT)
+            player.setLayoutX(player.getLayoutX() + step);
+
+        // Boundaries
+        if (player.getLayoutX() < 0 || player.getLayoutX() + player.getWidth() > rootPane.getWidth()
+                || player.getLayoutY() < 0 || player.getLayoutY() + player.getHeight() > rootPane.getHeight()) {
+            player.setLayoutX(oldX);
+            player.setLayoutY(oldY);
+            return false;
+        }
 
-            // Line barriers
-            for (Line line : barriers) {
-                if (player.getBoundsInParent().intersects(line.getBoundsInParent())) {
-                    player.setLayoutX(oldX);
-                    player.setLayoutY(oldY);
-                    break;
-                }
-            }
+        // Wall and line barrier collisions, only the grid cells around the player are checked
+        if (intersectsAny(obstacleGrid, player.getBoundsInParent())) {
+            player.setLayoutX(oldX);
+            player.setLayoutY(oldY);
+            return false;
+        }
+        return true;
+    }
 
-            // Collectibles
-            List<Rectangle> collected = new ArrayList<>();
-            for (Rectangle item : collectibles) {
-                if (player.getBoundsInParent().intersects(item.getBoundsInParent())) {
-                    collected.add(item);
-                    rootPane.getChildren().remove(item);
-                }
-            }
-            collectibles.removeAll(collected);
-
-            // Classroom doors
-            for (Rectangle door : classroomDoors) {
-                if (player.getBoundsInParent().intersects(door.getBoundsInParent())) {
-                    int id = doorIDs.get(door);
-                    if (door.getFill().equals(Color.BLACK))
-                        continue;
-
-                    if (id == nextDoorID) {
-                        door.setFill(Color.BLACK);
-                        nextDoorID++;
-                        checkAllClassroomsVisited();
-
-                        if (currentFloor.equals("Top Floor") && id == 22) {
-                            showVictory();
-                            return;
-                        }
-                    } else {
-                        showInfo("Wrong Order", "You must explore Room " + nextDoorID + " first!");
-                    }
-                }
-            }
+    /** Whatever the player now stands on, once per frame in which they moved */
+    private void checkInteractions() {
+        if (gameWon) return;
+        Bounds playerBounds = player.getBoundsInParent();
 
-            // Washrooms
-            for (Rectangle washroom : washroomDoors) {
-                if (player.getBoundsInParent().intersects(washroom.getBoundsInParent())) {
-                    int id = 0;
-                    try {
-                        id = Integer.parseInt(washroom.getId());
-                    } catch (Exception e) {
-                    }
-                    String message;
-                    if (id == 100 || id == 500)
-                        message = "This is Female Washroom";
-                    else if (id == 200 || id == 600)
-                        message = "This is Male Washroom";
-                    else if (id == 300 || id == 400)
-                        message = "This is Faculty/Staff Washroom";
-                    else
-                        message = "Unknown Washroom";
-                    showInfo("Washroom", message);
+        // Collectibles
+        for (Rectangle item : query(collectibleGrid, playerBounds, nearby)) {
+            collectibleGrid.remove(item);
+            collectibles.remove(item);
+            rootPane.getChildren().remove(item);
+        }
+
+        // Classroom doors, in room order like the full list
+        query(classroomDoorGrid, playerBounds, nearby).sort(Comparator.comparingInt(doorIDs::get));
+        for (Rectangle door : nearby) {
+            int id = doorIDs.get(door);
+            if (door.getFill().equals(Color.BLACK))
+                continue;
+
+            if (id == nextDoorID) {
+                door.setFill(Color.BLACK);
+                nextDoorID++;
+                checkAllClassroomsVisited();
+
+                if (currentFloor.equals("Top Floor") && id == 22) {
+                    showVictory();
+                    return;
                 }
+            } else {
+                showInfo("Wrong Order", "You must explore Room " + nextDoorID + " first!");
             }
+        }
 
-            // Lifts
-            for (Rectangle lift : lifts) {
-                if (player.getBoundsInParent().intersects(lift.getBoundsInParent())) {
-                    if (allClassroomsVisited)
-                        handleFloorChange();
-                    else
-                        showInfo("Locked", "Explore all classrooms before using it!");
-                    break;
-                }
+        // Washrooms
+        for (Rectangle washroom : query(washroomDoorGrid, playerBounds, nearby)) {
+            int id = 0;
+            try {
+                id = Integer.parseInt(washroom.getId());
+            } catch (Exception e) {
             }
-        });
+            String message;
+            if (id == 100 || id == 500)
+                message = "This is Female Washroom";
+            else if (id == 200 || id == 600)
+                message = "This is Male Washroom";
+            else if (id == 300 || id == 400)
+                message = "This is Faculty/Staff Washroom";
+            else
+                message = "Unknown Washroom";
+            showInfo("Washroom", message);
+        }
+
+        // Lifts
+        for (Rectangle lift : query(liftGrid, playerBounds, nearby)) {
+            if (allClassroomsVisited)
+                handleFloorChange();
+            else
+                showInfo("Locked", "Explore all classrooms before using it!");
+            break;
+        }
     }
 
     private void checkAllClassroomsVisited() {
@@ -365,19 +402,15 @@ public class BFSController {
     }
 
     private void showInfo(String title, String message) {
-        Platform.runLater(() -> {
-            Alert alert = new Alert(Alert.AlertType.INFORMATION);
-            alert.setTitle(title);
-            alert.setHeaderText(null);
-            alert.setContentText(message);
-            alert.showAndWait();
-        });
+        notifications.show(title, message);
     }
 
     private void showVictory() {
         gameWon = true;
         GameTimer.stop();
-        rootPane.setOnKeyPressed(null);
+        loop.stop();
+        // A fresh ground floor loads while the victory screen shows, for Play Again
+        LevelCache.prewarm("/fxml/game1.fxml");
 
         try {
             System.out.println("Creating victory screen programmatically...");
@@ -410,11 +443,11 @@ public class BFSController {
                     gameWon = false;
                     GameTimer.reset(); // ← ADD THIS LINE to reset the timer
 
-                    FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/game1.fxml"));
-                    javafx.scene.Parent root = loader.load();
+                    LevelCache.Loaded level = LevelCache.take("/fxml/game1.fxml");
                     Stage stage = (Stage) vbox.getScene().getWindow();
-                    stage.setScene(new Scene(root, 800, 600));
+                    stage.setScene(new Scene(level.root(), 800, 600));
                     stage.show();
+                    level.activate();
                 } catch (Exception ex) {
                     ex.printStackTrace();
                 }
@@ -453,22 +486,17 @@ public class BFSController {
 
     private void loadNextFloor(String fxmlFile, String floorName) {
         try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource(fxmlFile)); // absolute path
-            Parent root = loader.load();
+            // Usually prewarmed while this floor was played, so only the scene changes here
+            loop.stop();
+            GameTimer.pause(); // the next floor resumes it once it shows
+            LevelCache.Loaded next = LevelCache.take(fxmlFile); // absolute path
 
             Stage stage = (Stage) rootPane.getScene().getWindow();
-            stage.setScene(new Scene(root));
+            stage.setScene(new Scene(next.root()));
             stage.show();
 
             currentFloor = floorName;
-            // Update references
-            rootPane = (AnchorPane) root.lookup("#rootPane");
-            timerLabel = (Label) root.lookup("#timerLabel");
-            player = (Rectangle) root.lookup("#player");
-            GameTimer.attachLabel(timerLabel);
-            GameTimer.resume();
-
-            Platform.runLater(() -> showInfo("Floor Info", "You are on the " + currentFloor + "."));
+            next.activate(); // the next floor says which floor this is
 
         } catch (IOException e) {
             e.printStackTrace();
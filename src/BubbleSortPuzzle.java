@@ -0,0 +1,66 @@
+/**
+ * The cafe's plate puzzle without the scene: a bubble sort over the plate values that the player
+ * walks through one pair at a time. Stepping on the second plate of the current pair compares the
+ * two and swaps them when they are out of order, then the next pair is up. A pass without a swap
+ * means the plates are sorted. Plates already in their final place are locked, and a pair of two
+ * locked plates is skipped.
+ */
+final class BubbleSortPuzzle {
+    private final int[] values;
+    private final boolean[] locked;
+    private int passIndex = 0; // first plate of the current pair
+    private boolean swappedInPass = false;
+
+    /** Plate values 1..n in their starting order */
+    BubbleSortPuzzle(int[] values) {
+        this.values = values.clone();
+        this.locked = new boolean[values.length];
+    }
+
+    /** The first plate of the pair to work on, the player has to step on the one after it */
+    int pair() {
+        return passIndex;
+    }
+
+    /** At the end of a pass start the next one, returns true if it had no swap: sorted */
+    boolean nextPass() {
+        if (passIndex < values.length - 1) {
+            return false;
+        }
+        boolean sorted = !swappedInPass;
+        passIndex = 0;
+        swappedInPass = false;
+        return sorted;
+    }
+
+    /** Move past the current pair if both plates are locked, returns true if it did */
+    boolean skipLocked() {
+        if (locked[passIndex] && locked[passIndex + 1]) {
+            passIndex++;
+            return true;
+        }
+        return false;
+    }
+
+    /** The player stepped on the second plate: compare, maybe swap, go to the next pair. True if swapped */
+    boolean touchSecond() {
+        int first = values[passIndex];
+        int second = values[passIndex + 1];
+        boolean swap = first > second;
+        if (swap) {
+            values[passIndex] = second;
+            values[passIndex + 1] = first;
+            swappedInPass = true;
+        }
+        lockCorrect();
+        passIndex++;
+        return swap;
+    }
+
+    private void lockCorrect() {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == i + 1)
+                locked[i] = true;
+        }
+    }
+}
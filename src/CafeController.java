@@ -4,25 +4,26 @@ import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
-import javafx.scene.input.KeyEvent;
+import javafx.scene.input.KeyCode;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.control.Label;
 import javafx.stage.Stage;
-import javafx.geometry.Bounds;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.net.URL;
 import java.util.List;
 import java.util.Optional;
-import java.util.Timer;
-import java.util.TimerTask;
 
 public class CafeController {
 
     @FXML
     private AnchorPane anchorPane;
 
+    // Where the cafe's FXML came from, set by FXMLLoader; names the compiled level
+    @FXML
+    private URL location;
+
     @FXML
     private Rectangle player; // Gold player square
 
@@ -38,35 +39,41 @@ public class CafeController {
     private static final double MOVE_SPEED = 5.0;
 
     private List<Rectangle> plates;
-    private List<Integer> plateValues; // numeric mapping
-    private boolean[] locked;
-
-    private int passIndex = 0; // current bubble sort index
-    private boolean swappedInPass = false;
+    private BubbleSortPuzzle puzzle; // the plates' numeric values and how far the sort got
+    // Every rectangle but the player and the plates, from the compiled level
+    private StaticGeometry obstacleGeometry = new StaticGeometry();
 
-    private int timeLeft = 180; // 3 minutes in seconds
+    // 3 minutes on the shared GameClock
+    private final GameClock.Countdown countdown = GameClock.countdown(180);
     private boolean gameOver = false;
+    // Held keys and the frame loop that walks the player with them
+    private final InputState input = new InputState();
+    private GameLoop loop;
 
     @FXML
 public void initialize() {
     anchorPane.setFocusTraversable(true);
     anchorPane.requestFocus();
+    input.attach(anchorPane);
+    loop = new GameLoop("Cafe", anchorPane, input, GameLoop.DEFAULT_STEPS_PER_SECOND,
+            this::stepPlayer, this::afterMove);
 
     plates = List.of(player1, player11, player111, player1111, player11111);
-    plateValues = new ArrayList<>();
-    locked = new boolean[plates.size()];
+    obstacleGeometry = FxGeometry.level(location, anchorPane).geometry(LevelData.Kind.OBSTACLE);
 
     // Map colors to numbers
-    for (Rectangle r : plates) {
-        switch (r.getFill().toString()) {
-            case "0x000000ff" -> plateValues.add(1); // black
-            case "0xff0000ff" -> plateValues.add(2); // red
-            case "0x00ff00ff" -> plateValues.add(3); // green
-            case "0x0000ffff" -> plateValues.add(4); // blue
-            case "0xffffffff" -> plateValues.add(5); // white
-            default -> plateValues.add(0);
-        }
+    int[] plateValues = new int[plates.size()];
+    for (int i = 0; i < plates.size(); i++) {
+        plateValues[i] = switch (plates.get(i).getFill().toString()) {
+            case "0x000000ff" -> 1; // black
+            case "0xff0000ff" -> 2; // red
+            case "0x00ff00ff" -> 3; // green
+            case "0x0000ffff" -> 4; // blue
+            case "0xffffffff" -> 5; // white
+            default -> 0;
+        };
     }
+    puzzle = new BubbleSortPuzzle(plateValues);
 
     anchorPane.setOnMouseClicked(e -> anchorPane.requestFocus());
 
@@ -127,21 +134,21 @@ public void initialize() {
         });
     }
 
-    @FXML
-    private void handleKeyPressed(KeyEvent event) {
+    /** One step of the frame loop, false if the player hit something and stayed put */
+    private boolean stepPlayer(KeyCode direction) {
         if (gameOver)
-            return; // stop movement after game over
+            return false; // stop movement after game over
 
         double newX = player.getLayoutX();
         double newY = player.getLayoutY();
 
-        switch (event.getCode()) {
+        switch (direction) {
             case UP -> newY -= MOVE_SPEED;
             case DOWN -> newY += MOVE_SPEED;
             case LEFT -> newX -= MOVE_SPEED;
             case RIGHT -> newX += MOVE_SPEED;
             default -> {
-                return;
+                return false;
             }
         }
 
@@ -154,8 +161,15 @@ public void initialize() {
         if (checkCollision()) {
             player.setLayoutX(oldX);
             player.setLayoutY(oldY);
+            return false;
         }
+        return true;
+    }
 
+    /** Once per frame in which the player moved */
+    private void afterMove() {
+        if (gameOver)
+            return;
         checkBubbleSortTouch();
 
         anchorPane.requestFocus();
@@ -163,15 +177,8 @@ public void initialize() {
 
     /** Collision with walls/other shapes, ignoring plates */
     private boolean checkCollision() {
-        Bounds playerBounds = player.getBoundsInParent();
-        for (var node : anchorPane.getChildren()) {
-            if (node == player || plates.contains(node))
-                continue;
-            if (node instanceof Rectangle shape) {
-                if (playerBounds.intersects(shape.getBoundsInParent()))
-                    return true;
-            }
-        }
+        if (FxGeometry.firstIntersecting(obstacleGeometry, player) >= 0)
+            return true;
         double left = player.getLayoutX();
         double right = left + player.getWidth();
         double top = player.getLayoutY();
@@ -181,37 +188,23 @@ public void initialize() {
 
     /** Bubble sort logic: swap only when player touches the SECOND plate in pair */
     private void checkBubbleSortTouch() {
-        if (passIndex >= plates.size() - 1) {
-            if (!swappedInPass) {
-                triggerWin(); // all passes done, sorted
-            }
-            passIndex = 0;
-            swappedInPass = false;
+        if (puzzle.nextPass()) {
+            triggerWin(); // all passes done, sorted
         }
 
-        Rectangle first = plates.get(passIndex);
-        Rectangle second = plates.get(passIndex + 1);
-
         // Skip already locked plates
-        if (locked[passIndex] && locked[passIndex + 1]) {
-            passIndex++;
+        if (puzzle.skipLocked()) {
             return;
         }
 
+        Rectangle first = plates.get(puzzle.pair());
+        Rectangle second = plates.get(puzzle.pair() + 1);
+
         // Only trigger swap when touching the SECOND plate
         if (player.getBoundsInParent().intersects(second.getBoundsInParent())) {
-            int val1 = plateValues.get(passIndex);
-            int val2 = plateValues.get(passIndex + 1);
-
-            if (val1 > val2) {
+            if (puzzle.touchSecond()) {
                 swapPlates(first, second);
-                plateValues.set(passIndex, val2);
-                plateValues.set(passIndex + 1, val1);
-                swappedInPass = true;
             }
-
-            lockCorrectPlates();
-            passIndex++;
         }
     }
 
@@ -221,40 +214,22 @@ public void initialize() {
         b.setFill(temp);
     }
 
-    private void lockCorrectPlates() {
-        for (int i = 0; i < plateValues.size(); i++) {
-            if (plateValues.get(i) == i + 1)
-                locked[i] = true;
-        }
-    }
-
     /** Countdown timer logic */
     private void startCountdown() {
-        Timer timer = new Timer();
-        timer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                Platform.runLater(() -> {
-                    if (gameOver) {
-                        timer.cancel();
-                        return;
-                    }
-                    int minutes = timeLeft / 60;
-                    int seconds = timeLeft % 60;
-                    timerLabel.setText(String.format("%02d:%02d", minutes, seconds));
-                    timeLeft--;
-                    if (timeLeft < 0) {
-                        triggerLose();
-                        timer.cancel();
-                    }
+        loop.start();
+        timerLabel.setText(countdown.format());
+        countdown.onSecond(seconds -> timerLabel.setText(countdown.format()))
+                .onTimeUp(() -> {
+                    if (!gameOver) triggerLose();
                 });
-            }
-        }, 0, 1000);
+        countdown.start();
     }
 
     /** Trigger win screen */
 private void triggerWin() {
     gameOver = true;
+    countdown.pause();
+    loop.stop();
     try {
         System.out.println("Creating win screen programmatically...");
         
@@ -320,6 +295,8 @@ private void triggerWin() {
 /** Trigger lose screen */
 private void triggerLose() {
     gameOver = true;
+    countdown.pause();
+    loop.stop();
     try {
         System.out.println("Creating lose screen programmatically...");
         
@@ -0,0 +1,333 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/** Game side of one player: parses their messages and routes them to their match */
+class ClientHandler {
+    private static final Log log = Log.get("ClientHandler");
+    private static final long SNAPSHOT_RESEND_NANOS = 500_000_000L;
+    
+    private final Connection connection;
+    // Set by the lobby or a resume, read on the transport thread
+    private volatile int playerId;
+    private volatile Match match;
+    private volatile boolean binaryProtocol = false;
+    private volatile boolean snapshotProtocol = false;
+    private volatile boolean inputProtocol = false;
+    private final AtomicBoolean disconnected = new AtomicBoolean(false);
+    
+    // Snapshot replication: the newest state version this client confirmed, and what we last sent it
+    private volatile long ackedVersion = 0;
+    private volatile long sentVersion = 0;
+    private long sentAtNanos = 0;
+    // Client prediction: the newest MOVE we confirmed, only the tick thread touches it
+    private long sentInputAck = 0;
+    // Session resume: set once the client lists RESUME, then it sends JOIN or RESUME:<token>
+    private volatile boolean resumeProtocol = false;
+    private volatile boolean helloReceived = false;
+    private final AtomicBoolean placed = new AtomicBoolean(false);
+    // Watches every match through the SpectatorFeed instead of playing
+    private volatile boolean spectator = false;
+    private volatile String sessionToken;
+    
+    public ClientHandler(Connection connection) {
+        this.connection = connection;
+    }
+    
+    void joinMatch(Match match, int playerId) {
+        // Id first: whoever sees the match also sees the id
+        this.playerId = playerId;
+        this.match = match;
+    }
+    
+    /** Called by the transport for every complete line received */
+    void onMessage(String inputLine) {
+        log.debug("Received from Player {}: {}", playerId, inputLine);
+        ServerMetrics.messageReceived(inputLine);
+        if (match != null) {
+            match.recordReceived(playerId, inputLine);
+        }
+        try {
+            handleMessage(inputLine);
+        } catch (RuntimeException e) {
+            log.warn("Bad message from player {}: {} ({})", playerId, inputLine, e.getMessage());
+        }
+    }
+    
+    /** Called by the transport for every binary position frame received */
+    void onPositionFrame(float x, float y) {
+        ServerMetrics.positionFrameReceived();
+        if (!binaryProtocol) {
+            // Never negotiated, or the server has binary frames turned off
+            log.warn("Binary frame from {} without BINARY, closing", connection.describe());
+            connection.close();
+            return;
+        }
+        if (match == null || match.isGameCompleted()) {
+            return;
+        }
+        match.recordFrame(playerId, x, y);
+        match.updatePlayerPosition(playerId, x, y);
+    }
+    
+    /** Called by the transport once the connection is gone */
+    void onDisconnect() {
+        if (!disconnected.compareAndSet(false, true)) return;
+        ServerMetrics.connectionClosed();
+        if (spectator) {
+            GameServer.getSpectators().remove(this);
+        }
+        if (match != null) {
+            match.removeClient(this);
+        }
+    }
+    
+    private void handleMessage(String message) {
+        if (message.startsWith(WireProtocol.HELLO + ":")) {
+            negotiate(message.substring(WireProtocol.HELLO.length() + 1).split(","));
+            return;
+        }
+        if (message.equals("JOIN")) {
+            enterLobby();
+            return;
+        }
+        if (message.startsWith("RESUME:")) {
+            resume(message.substring("RESUME:".length()));
+            return;
+        }
+        if (message.startsWith("CLOCK:")) {
+            // Answered at once, in the lobby too, so the client knows our clock before START_GAME
+            sendMessage(message + ":" + System.nanoTime());
+            return;
+        }
+        if (match == null || match.isGameCompleted()) {
+            return; // Ignore messages after game completion
+        }
+        
+        String[] parts = message.split(":");
+        switch (parts[0]) {
+            case "POSITION_UPDATE":
+                double x = Double.parseDouble(parts[1]);
+                double y = Double.parseDouble(parts[2]);
+                match.updatePlayerPosition(playerId, x, y);
+                break;
+                
+            case "ITEM_COLLECTED":
+                match.playerCollectedItem(playerId, parts[1]);
+                break;
+                
+            case "MOVE":
+                long input = parts.length > 2 ? Long.parseLong(parts[2]) : 0;
+                match.playerMoved(playerId, parts[1].charAt(0), input);
+                break;
+                
+            case "ROOM_VISITED":
+                // Room visits follow from the simulated movement, a client's own report changes nothing
+                log.debug("Player {} reported room {}", playerId, parts[1]);
+                break;
+                
+            case "FLOOR_CHANGED":
+                match.playerChangedFloor(playerId, parts[1]);
+                break;
+                
+            case "VICTORY":
+                // Only the server's simulation decides who reached the IT room
+                log.info("Player {} claimed victory for player {}, ignored", playerId, parts[1]);
+                break;
+                
+            case "TIME_UP":
+                // The match clock runs here, a client's own countdown reaching zero ends nothing
+                log.debug("Player {} reported time up", playerId);
+                break;
+                
+            case "SNAPSHOT_ACK":
+                long version = Long.parseLong(parts[1]);
+                if (version > ackedVersion && version <= sentVersion) {
+                    ackedVersion = version;
+                }
+                break;
+                
+            case "RESYNC":
+                // Forget what the client had, the next snapshot carries the whole state
+                ackedVersion = 0;
+                sentVersion = 0;
+                break;
+                
+            case "PLAYER_DISCONNECTING":
+                log.info("Player {} is disconnecting gracefully", playerId);
+                connection.close();
+                break;
+        }
+    }
+    
+    private void negotiate(String[] capabilities) {
+        List<String> accepted = new ArrayList<>();
+        for (String capability : capabilities) {
+            if (capability.equals(WireProtocol.CAP_BINARY) && GameServer.isBinaryProtocolAllowed()) {
+                accepted.add(capability);
+            } else if (capability.equals(WireProtocol.CAP_SNAPSHOT) || capability.equals(WireProtocol.CAP_INPUT)
+                    || capability.equals(WireProtocol.CAP_CLOCK) || capability.equals(WireProtocol.CAP_RESUME)
+                    || capability.equals(WireProtocol.CAP_SPECTATE)) {
+                accepted.add(capability);
+            }
+        }
+        // Acknowledge first, the client only expects the new formats after this line
+        sendMessage(WireProtocol.PROTOCOL + ":" + String.join(",", accepted));
+        binaryProtocol = accepted.contains(WireProtocol.CAP_BINARY);
+        snapshotProtocol = accepted.contains(WireProtocol.CAP_SNAPSHOT);
+        inputProtocol = accepted.contains(WireProtocol.CAP_INPUT);
+        resumeProtocol = accepted.contains(WireProtocol.CAP_RESUME);
+        helloReceived = true;
+        if (accepted.contains(WireProtocol.CAP_SPECTATE)) {
+            if (placed.compareAndSet(false, true)) {
+                spectator = true;
+                GameServer.watch(this);
+            }
+        } else if (!resumeProtocol) {
+            enterLobby();
+        }
+    }
+    
+    boolean saidHello() {
+        return helloReceived;
+    }
+    
+    /** Join the waiting match, unless this connection already joined or resumed */
+    void enterLobby() {
+        if (disconnected.get() || !placed.compareAndSet(false, true)) {
+            return; // gone before its HELLO wait was over, or already placed
+        }
+        GameServer.joinLobby(this);
+        if (disconnected.get()) {
+            match.removeClient(this); // dropped while joining, onDisconnect had no match yet
+        }
+    }
+    
+    private void resume(String token) {
+        if (!placed.compareAndSet(false, true)) {
+            return; // already playing on this connection
+        }
+        if (!GameServer.resume(token, this)) {
+            log.info("Resume from {} refused, no such session", connection.describe());
+            // Not placed after all, the connection may still JOIN a new match
+            placed.set(false);
+            sendReliable("RESUME_FAILED");
+        }
+    }
+    
+    /** Take over the slot of the same player's dropped connection */
+    void resumeFrom(ClientHandler dropped) {
+        playerId = dropped.playerId;
+        sessionToken = dropped.sessionToken;
+        // The last ack may have died in the old connection's queue, the next tick sends it again
+        sentInputAck = 0;
+        match = dropped.match;
+    }
+    
+    boolean usesResume() {
+        return resumeProtocol;
+    }
+    
+    String getSessionToken() {
+        return sessionToken;
+    }
+    
+    void setSessionToken(String token) {
+        sessionToken = token;
+    }
+    
+    Match getMatch() {
+        return match;
+    }
+    
+    boolean usesInput() {
+        return inputProtocol;
+    }
+    
+    long getSentInputAck() {
+        return sentInputAck;
+    }
+    
+    void inputAckSent(long input) {
+        sentInputAck = input;
+    }
+    
+    boolean usesSnapshots() {
+        return snapshotProtocol;
+    }
+    
+    long getAckedVersion() {
+        return ackedVersion;
+    }
+    
+    /** A snapshot is due when the state moved on, or the last one went unacknowledged for too long */
+    boolean snapshotDue(long version, long now) {
+        if (version > sentVersion) return true;
+        return ackedVersion < sentVersion && now - sentAtNanos > SNAPSHOT_RESEND_NANOS;
+    }
+    
+    void snapshotSent(long version, long now) {
+        sentVersion = version;
+        sentAtNanos = now;
+    }
+    
+    /** Send an already encoded frame, shared between all recipients of a broadcast */
+    void sendFrame(ByteBuffer frame) {
+        sendFrame(frame, OutboundQueue.Delivery.NORMAL);
+    }
+    
+    void sendFrame(ByteBuffer frame, OutboundQueue.Delivery delivery) {
+        if (connection.isOpen()) {
+            connection.send(frame, delivery);
+        }
+    }
+    
+    boolean usesBinaryProtocol() {
+        return binaryProtocol;
+    }
+    
+    public void sendMessage(String message) {
+        sendMessage(message, OutboundQueue.Delivery.NORMAL);
+    }
+    
+    /** Match results, queued even if this client is already far behind */
+    public void sendReliable(String message) {
+        sendMessage(message, OutboundQueue.Delivery.RELIABLE);
+    }
+    
+    private void sendMessage(String message, OutboundQueue.Delivery delivery) {
+        if (connection.isOpen()) {
+            connection.send(WireProtocol.encodeText(message), delivery);
+            log.debug("Sent to Player {}: {}", playerId, message);
+        }
+    }
+    
+    public void closeConnection() {
+        connection.close();
+    }
+    
+    public int getPlayerId() {
+        return playerId;
+    }
+    
+    int getMatchId() {
+        return match == null ? -1 : match.getMatchId();
+    }
+    
+    String describe() {
+        return connection.describe();
+    }
+    
+    int getOutboundDepth() {
+        return connection.outbound().depth();
+    }
+    
+    int getOutboundMaxDepth() {
+        return connection.outbound().maxDepth();
+    }
+    
+    long getOutboundCoalesced() {
+        return connection.outbound().coalesced();
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Estimate of how far the server's System.nanoTime() is ahead of ours, from CLOCK pings.
+ *
+ * The client sends CLOCK:<its time> and the server answers CLOCK:<that time>:<server time>. The
+ * server read its clock somewhere between our send and our receive, assumed to be halfway. Of
+ * the recent answers the one with the shortest round trip is trusted, a slow answer spent its
+ * extra time in some queue and says little about where in the trip the server looked.
+ */
+final class ClockSync {
+    private static final int WINDOW = 8;
+
+    private final long[] rtts = new long[WINDOW];
+    private final long[] offsets = new long[WINDOW];
+    private int next = 0;
+    private int count = 0;
+    private int best = -1;
+
+    /** A ping sent at sent, answered with serverTime, and the answer arrived at received */
+    synchronized void add(long sent, long serverTime, long received) {
+        long rtt = received - sent;
+        if (rtt < 0) return;
+        rtts[next] = rtt;
+        offsets[next] = serverTime - (sent + rtt / 2);
+        next = (next + 1) % WINDOW;
+        count = Math.min(count + 1, WINDOW);
+
+        best = 0;
+        for (int i = 1; i < count; i++) {
+            if (rtts[i] < rtts[best]) best = i;
+        }
+    }
+
+    synchronized boolean isSynced() {
+        return best >= 0;
+    }
+
+    /** Round trip of the trusted ping */
+    synchronized long rttNanos() {
+        return best >= 0 ? rtts[best] : 0;
+    }
+
+    /** Server time minus local time */
+    synchronized long offsetNanos() {
+        return best >= 0 ? offsets[best] : 0;
+    }
+
+    /** A server System.nanoTime() as ours */
+    long toLocal(long serverTime) {
+        return serverTime - offsetNanos();
+    }
+}
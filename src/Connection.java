@@ -0,0 +1,15 @@
+import java.nio.ByteBuffer;
+
+/** What a transport has to offer the game logic for one connected client */
+interface Connection {
+    /** Queue a frame for this client, never blocks on the socket */
+    void send(ByteBuffer frame, OutboundQueue.Delivery delivery);
+
+    OutboundQueue outbound();
+
+    void close();
+
+    boolean isOpen();
+
+    String describe();
+}
@@ -0,0 +1,52 @@
+import javafx.geometry.Bounds;
+import javafx.scene.Node;
+import javafx.scene.layout.Pane;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.List;
+
+/** Snapshots JavaFX nodes into StaticGeometry when a level loads, and finds a compiled level's nodes */
+final class FxGeometry {
+    private FxGeometry() {
+    }
+
+    /** One box per node, its bounds in parent as they are now, in list order */
+    static StaticGeometry snapshot(List<? extends Node> nodes) {
+        StaticGeometry geometry = new StaticGeometry(nodes.size());
+        for (Node node : nodes) {
+            Bounds bounds = node.getBoundsInParent();
+            geometry.add(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
+        }
+        return geometry;
+    }
+
+    /** Index of the first box the node's current bounds in parent touch, or -1 */
+    static int firstIntersecting(StaticGeometry geometry, Node node) {
+        Bounds bounds = node.getBoundsInParent();
+        return geometry.firstIntersecting(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
+    }
+
+    /**
+     * The compiled level of the FXML a controller was loaded from; FXMLLoader hands a controller
+     * that location through an @FXML URL location field.
+     */
+    static LevelData level(URL location, Pane root) {
+        try {
+            LevelData level = LevelData.forFxml(location);
+            if (root.getChildren().size() < level.childCount()) {
+                throw new IllegalStateException("Level for " + location + " has " + level.childCount()
+                        + " nodes, the scene " + root.getChildren().size());
+            }
+            return level;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load level for " + location, e);
+        }
+    }
+
+    /** The root's child a level entity was compiled from */
+    static <T extends Node> T node(LevelData level, LevelData.Kind kind, int i, Pane root, Class<T> type) {
+        return type.cast(root.getChildren().get(level.childIndex(kind, i)));
+    }
+}
@@ -0,0 +1,152 @@
+import javafx.animation.AnimationTimer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * The one clock every game countdown runs on. A countdown is a deadline in System.nanoTime(),
+ * not a number of seconds decremented by a timer, so it can't drift however late a frame or a
+ * callback runs, and pausing just remembers what was left.
+ *
+ * A single AnimationTimer checks the running countdowns once per frame and only calls back when
+ * the displayed second changes or the time is up, so labels are updated once a second. Everything
+ * here runs on the FX thread.
+ */
+final class GameClock {
+    private static final long SECOND = 1_000_000_000L;
+
+    private static final List<Countdown> running = new ArrayList<>();
+    private static final AnimationTimer ticker = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            tick(now);
+        }
+    };
+
+    private GameClock() {
+    }
+
+    static Countdown countdown(int seconds) {
+        return new Countdown(seconds);
+    }
+
+    private static void tick(long now) {
+        // Callbacks may stop countdowns or start new ones, so go over a copy
+        for (Countdown countdown : running.toArray(new Countdown[0])) {
+            countdown.check(now);
+        }
+    }
+
+    private static void subscribe(Countdown countdown) {
+        if (running.isEmpty()) {
+            ticker.start();
+        }
+        running.add(countdown);
+    }
+
+    private static void unsubscribe(Countdown countdown) {
+        running.remove(countdown);
+        if (running.isEmpty()) {
+            ticker.stop();
+        }
+    }
+
+    /** A countdown from a number of seconds to zero, paused until started */
+    static final class Countdown {
+        private final long duration;
+        // While running the deadline counts, while paused what was left
+        private long deadline;
+        private long left;
+        private boolean isRunning = false;
+        private int shownSeconds;
+        private IntConsumer onSecond;
+        private Runnable onTimeUp;
+
+        private Countdown(int seconds) {
+            this.duration = seconds * SECOND;
+            this.left = duration;
+            this.shownSeconds = seconds;
+        }
+
+        /** Called with the seconds left each time that number changes */
+        Countdown onSecond(IntConsumer onSecond) {
+            this.onSecond = onSecond;
+            return this;
+        }
+
+        /** Called once when the countdown reaches zero */
+        Countdown onTimeUp(Runnable onTimeUp) {
+            this.onTimeUp = onTimeUp;
+            return this;
+        }
+
+        /** Start, or continue after pause(); does nothing once the time is up */
+        void start() {
+            if (isRunning || left <= 0) return;
+            isRunning = true;
+            deadline = System.nanoTime() + left;
+            subscribe(this);
+        }
+
+        /**
+         * Run until a deadline in System.nanoTime(), or move the deadline of a running countdown.
+         * For a countdown whose end is decided elsewhere, like the server's match clock.
+         */
+        void runUntil(long deadline) {
+            this.deadline = deadline;
+            if (!isRunning) {
+                isRunning = true;
+                subscribe(this);
+            }
+        }
+
+        void pause() {
+            if (!isRunning) return;
+            left = Math.max(0, deadline - System.nanoTime());
+            isRunning = false;
+            unsubscribe(this);
+        }
+
+        /** Back to the full time, paused */
+        void reset() {
+            pause();
+            left = duration;
+            shownSeconds = (int) (duration / SECOND);
+        }
+
+        boolean isRunning() {
+            return isRunning;
+        }
+
+        long getRemainingNanos() {
+            return isRunning ? Math.max(0, deadline - System.nanoTime()) : left;
+        }
+
+        /** Whole seconds left, rounded up, so it shows 10:00 until a full second has passed */
+        int getRemainingSeconds() {
+            return (int) ((getRemainingNanos() + SECOND - 1) / SECOND);
+        }
+
+        /** The remaining time as mm:ss */
+        String format() {
+            int seconds = getRemainingSeconds();
+            return String.format("%02d:%02d", seconds / 60, seconds % 60);
+        }
+
+        private void check(long now) {
+            long remaining = Math.max(0, deadline - now);
+            int seconds = (int) ((remaining + SECOND - 1) / SECOND);
+            if (seconds != shownSeconds) {
+                shownSeconds = seconds;
+                if (onSecond != null) onSecond.accept(seconds);
+            }
+            if (remaining == 0) {
+                isRunning = false;
+                left = 0;
+                unsubscribe(this);
+                if (onTimeUp != null) onTimeUp.run();
+            }
+        }
+    }
+}
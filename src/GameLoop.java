@@ -0,0 +1,211 @@
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.Node;
+import javafx.scene.input.KeyCode;
+import javafx.stage.Window;
+
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * The per-frame movement loop of a level. Every frame it looks at the InputState and moves the
+ * player a whole step per elapsed step interval, so walking speed is the same on every machine
+ * and key repeat setting, and a freshly pressed key steps at once.
+ *
+ * Collision stays a per-step check inside the Stepper, steps are the level's usual grid (5px on
+ * the floors) and the server simulates the same steps. Interactions (doors, books, plates, lifts)
+ * run once per frame after the player moved, outside the animation pulse, because they may open
+ * an Alert and showAndWait() is not allowed while a pulse is processed.
+ *
+ * The loop stops by itself once its view is no longer in a showing window, and drops every held
+ * key while the window is not focused (an Alert is open), so no key stays stuck down.
+ *
+ * F3 shows its numbers on screen (PerfHud).
+ */
+final class GameLoop {
+    private static final Log log = Log.get("GameLoop");
+    static final double DEFAULT_STEPS_PER_SECOND = 30;
+    // After a long stall (GC, a dialog) don't make up for all the lost steps at once
+    private static final int MAX_STEPS_PER_FRAME = 4;
+    private static final long REPORT_NANOS = 10_000_000_000L;
+
+    /** Moves the player one step in a direction, returns false when it stayed put */
+    interface Stepper {
+        boolean step(KeyCode direction);
+    }
+
+    private final String name;
+    private final Node view;
+    private final InputState input;
+    private final long stepNanos;
+    private final Stepper stepper;
+    private final Runnable afterMove;
+    private LongConsumer render;
+    private final PerfHud hud;
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            frame(now);
+        }
+    };
+    private boolean running = false;
+
+    private long lastFrame = 0;
+    private long accumulated = 0;
+
+    // Frame metrics, all in nanoseconds
+    private long frames = 0;
+    private long averageFrame = 0;
+    private long averageUpdate = 0;
+    private long worstFrame = 0;
+    private long reportFrames = 0;
+    private long reportWorst = 0;
+    private long reportStart = 0;
+
+    GameLoop(String name, Node view, InputState input, double stepsPerSecond, Stepper stepper, Runnable afterMove) {
+        this.name = name;
+        this.view = view;
+        this.input = input;
+        this.stepNanos = (long) (1_000_000_000L / stepsPerSecond);
+        this.stepper = stepper;
+        this.afterMove = afterMove;
+        this.hud = new PerfHud(view);
+        // Through the input, so F3 arrives wherever the level listens for keys
+        input.onPress(PerfHud.TOGGLE_KEY, hud::toggle);
+    }
+
+    /** Also run this every frame with the frame's timestamp, for things drawn between steps */
+    void onFrame(LongConsumer render) {
+        this.render = render;
+    }
+
+    /** Show the round trip to the server on the HUD, in nanoseconds or negative while unknown */
+    void showRoundTrip(LongSupplier roundTripNanos) {
+        hud.showRoundTrip(roundTripNanos);
+    }
+
+    void start() {
+        if (running) return;
+        running = true;
+        lastFrame = 0;
+        accumulated = 0;
+        input.clear();
+        timer.start();
+    }
+
+    void stop() {
+        if (!running) return;
+        running = false;
+        timer.stop();
+        log.debug("{} stopped after {} frames ({})", name, frames, metrics());
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    private void frame(long now) {
+        long started = System.nanoTime();
+        Window window = view.getScene() != null ? view.getScene().getWindow() : null;
+        if (window == null || !window.isShowing()) {
+            stop();
+            return;
+        }
+        if (lastFrame == 0) {
+            lastFrame = now;
+            reportStart = now;
+            return;
+        }
+        long elapsed = now - lastFrame;
+        lastFrame = now;
+        recordFrame(elapsed, now);
+        hud.frame(now, elapsed, this);
+        if (render != null) {
+            render.accept(now);
+        }
+
+        if (!window.isFocused()) {
+            input.clear();
+            accumulated = 0;
+            return;
+        }
+
+        boolean moved = false;
+        KeyCode tap = input.takeTap();
+        KeyCode direction = input.direction();
+        if (tap != null) {
+            // A new press steps right away, holding it keeps stepping from here
+            moved = step(tap);
+            if (moved) {
+                hud.recordInput(System.nanoTime() - input.tapNanos());
+            }
+            accumulated = 0;
+        } else if (direction != null) {
+            accumulated += elapsed;
+            int steps = (int) Math.min(MAX_STEPS_PER_FRAME, accumulated / stepNanos);
+            accumulated = steps == MAX_STEPS_PER_FRAME ? 0 : accumulated - steps * stepNanos;
+            for (int i = 0; i < steps; i++) {
+                moved |= step(direction);
+            }
+        } else {
+            accumulated = 0;
+        }
+
+        if (moved && afterMove != null) {
+            Platform.runLater(afterMove);
+        }
+        averageUpdate += (System.nanoTime() - started - averageUpdate) / 16;
+    }
+
+    private boolean step(KeyCode direction) {
+        long started = System.nanoTime();
+        boolean moved = stepper.step(direction);
+        hud.recordStep(System.nanoTime() - started);
+        return moved;
+    }
+
+    private void recordFrame(long frame, long now) {
+        frames++;
+        averageFrame = frames == 1 ? frame : averageFrame + (frame - averageFrame) / 16;
+        worstFrame = Math.max(worstFrame, frame);
+        reportFrames++;
+        reportWorst = Math.max(reportWorst, frame);
+        if (now - reportStart >= REPORT_NANOS) {
+            log.debug("{}: {} fps, worst frame {} ms", name, reportFrames * 1_000_000_000L / (now - reportStart),
+                    reportWorst / 1_000_000.0);
+            reportFrames = 0;
+            reportWorst = 0;
+            reportStart = now;
+        }
+    }
+
+    /** Frames drawn since start */
+    long getFrames() {
+        return frames;
+    }
+
+    /** Frames per second, from the recent average frame time */
+    double getFps() {
+        return averageFrame > 0 ? 1_000_000_000.0 / averageFrame : 0;
+    }
+
+    /** Recent average time between two frames */
+    double getAverageFrameMillis() {
+        return averageFrame / 1_000_000.0;
+    }
+
+    /** Longest time between two frames since start */
+    double getWorstFrameMillis() {
+        return worstFrame / 1_000_000.0;
+    }
+
+    /** Recent average time the loop itself took per frame, movement and collision */
+    double getAverageUpdateMillis() {
+        return averageUpdate / 1_000_000.0;
+    }
+
+    private String metrics() {
+        return String.format("%.1f fps, frame %.2f ms avg / %.2f ms worst, update %.3f ms avg",
+                getFps(), getAverageFrameMillis(), getWorstFrameMillis(), getAverageUpdateMillis());
+    }
+}
@@ -41,11 +41,11 @@ public class GameManager {
     
     private void loadFXML(String fxmlPath, String title) {
         try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource(fxmlPath));
-            Parent root = loader.load();
-            Scene scene = new Scene(root, 800, 600);
+            LevelCache.Loaded level = LevelCache.take(fxmlPath);
+            Scene scene = new Scene(level.root(), 800, 600);
             primaryStage.setTitle(title);
             primaryStage.setScene(scene);
+            level.activate();
         } catch (Exception e) {
             e.printStackTrace();
         }
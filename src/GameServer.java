@@ -1,299 +1,469 @@
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.SecureRandom;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 public class GameServer {
+    private static final Log log = Log.get("GameServer");
     private static final int PORT = 12345;
-    private static Set<ClientHandler> clients = ConcurrentHashMap.newKeySet();
-    private static GameState gameState = new GameState();
-    private static boolean gameCompleted = false;
-    private static int winnerId = -1;
-    
-    // Timer for game duration
-    private static Timer gameTimer;
-    private static final int GAME_DURATION = 600; // 10 minutes in seconds
-    
+    static final int PLAYERS_PER_MATCH = 2;
+    static final int GAME_DURATION = 600; // 10 minutes in seconds
+    // Clients that say HELLO right away get to choose JOIN or RESUME, the others join after this
+    private static final long HELLO_WAIT_MILLIS = 250;
+
+    // Lobby: every new connection fills the waiting match, full matches start and a fresh one opens
+    private static final Map<Integer, Match> activeMatches = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextMatchId = new AtomicInteger(1);
+    private static Match waitingMatch = new Match(nextMatchId.getAndIncrement());
+
+    // One timer thread serves the deadlines and delayed closes of every match
+    private static final Timer scheduler = new Timer("match-scheduler", true);
+
+    // Players of running matches by session token, so a dropped player can take their slot back
+    private static final Map<String, ClientHandler> sessions = new ConcurrentHashMap<>();
+    private static final SecureRandom tokens = new SecureRandom();
+    private static final int DEFAULT_RESUME_GRACE_SECONDS = 15;
+    private static long resumeGraceMillis = DEFAULT_RESUME_GRACE_SECONDS * 1000L;
+
+    // Where every match is recorded for tools/MatchReplay, null when matches aren't recorded
+    private static Path recordDir;
+
+    // Read-only connections that watch every running match
+    private static final SpectatorFeed spectators = new SpectatorFeed();
+
+    // Clients may switch position updates to binary frames unless started with --protocol=text
+    private static boolean binaryProtocolAllowed = true;
+
+    // Position broadcasts go out on a fixed tick instead of once per key press
+    private static final int DEFAULT_TICK_RATE = 30;
+    private static final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "match-tick");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final LongAdder updatesReceived = new LongAdder();
+    private static final LongAdder updatesSent = new LongAdder();
+    private static final LongAdder snapshotsSent = new LongAdder();
+    private static final LongAdder slowClientsDropped = new LongAdder();
+    private static final LongAdder positionsRejected = new LongAdder();
+
     public static void main(String[] args) {
-        System.out.println("Game Server started on port " + PORT);
-        
-        try (ServerSocket serverSocket = new ServerSocket(PORT)) {
-            ExecutorService pool = Executors.newFixedThreadPool(2);
-            
-            while (clients.size() < 2) {
-                Socket clientSocket = serverSocket.accept();
-                System.out.println("Player " + (clients.size() + 1) + " connected");
-                
-                ClientHandler clientThread = new ClientHandler(clientSocket, clients.size() + 1);
-                clients.add(clientThread);
-                pool.execute(clientThread);
+        int port = PORT;
+        String transport = "nio";
+        int ioThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        int tickRate = DEFAULT_TICK_RATE;
+        Log.Level logLevel = Log.Level.INFO;
+        String logFile = "logs/server.log";
+        int metricsPort = 0;
+        boolean quiet = false;
+
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--transport=")) {
+                transport = arg.substring("--transport=".length());
+            } else if (arg.startsWith("--io-threads=")) {
+                ioThreads = Integer.parseInt(arg.substring("--io-threads=".length()));
+            } else if (arg.startsWith("--protocol=")) {
+                binaryProtocolAllowed = !arg.substring("--protocol=".length()).equals("text");
+            } else if (arg.startsWith("--tick-rate=")) {
+                tickRate = Integer.parseInt(arg.substring("--tick-rate=".length()));
+            } else if (arg.startsWith("--resume-grace=")) {
+                resumeGraceMillis = Long.parseLong(arg.substring("--resume-grace=".length())) * 1000L;
+            } else if (arg.startsWith("--log-level=")) {
+                logLevel = Log.parseLevel(arg.substring("--log-level=".length()));
+            } else if (arg.startsWith("--log-file=")) {
+                logFile = arg.substring("--log-file=".length());
+            } else if (arg.startsWith("--record=")) {
+                recordDir = Path.of(arg.substring("--record=".length()));
+            } else if (arg.equals("--quiet")) {
+                quiet = true;
+            } else if (arg.startsWith("--metrics-port=")) {
+                metricsPort = Integer.parseInt(arg.substring("--metrics-port=".length()));
+            } else {
+                System.err.println("Unknown option: " + arg);
+            }
+        }
+
+        Log.configure(Path.of(logFile), logLevel);
+        try {
+            // Movement is simulated here, so the floors have to be there before any match starts
+            MovementSimulation.floors();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not load the floor levels: " + e.getMessage()
+                    + " (put src on the class path or point -Dlevel.dir at compiled levels)");
+            log.error("Could not load the floor levels", e);
+            return;
+        }
+        if (!quiet) {
+            System.out.println("Game Server started on port " + port + " using " + transport + " transport, "
+                    + tickRate + " Hz tick, logging " + logLevel + " to " + logFile);
+        }
+        log.info("Started on port {} using {} transport, {} Hz tick", port, transport, tickRate);
+        startTicking(tickRate);
+        ServerMetrics.registerMBean();
+        if (metricsPort > 0) {
+            try {
+                ServerMetrics.serveHttp(metricsPort);
+            } catch (IOException e) {
+                System.err.println("Metrics endpoint not started: " + e.getMessage());
+                log.warn("Could not serve metrics on port {}: {}", metricsPort, e.getMessage());
+            }
+        }
+
+        try {
+            if (transport.equals("blocking")) {
+                runBlocking(port, Executors.newCachedThreadPool());
+            } else if (transport.equals("virtual")) {
+                // Same blocking reader per client, but parked virtual threads cost almost nothing
+                runBlocking(port, Executors.newVirtualThreadPerTaskExecutor());
+            } else {
+                new NioTransport(port, ioThreads).run();
             }
-            
-            System.out.println("Game starting with 2 players!");
-            startGameTimer();
-            broadcastToAll("START_GAME");
-            
         } catch (IOException e) {
-            e.printStackTrace();
+            System.err.println("Server stopped: " + e.getMessage());
+            log.error("Server stopped on port {}", port, e);
         }
     }
-    
-    private static void startGameTimer() {
-        gameTimer = new Timer(true);
-        gameTimer.schedule(new TimerTask() {
+
+    // Thread-per-client transport, one blocking reader per socket
+    private static void runBlocking(int port, ExecutorService pool) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port, 1024)) {
+            // Keep accepting forever, each pair of players gets its own match
+            while (true) {
+                Socket clientSocket = serverSocket.accept();
+                try {
+                    SocketConnection connection = new SocketConnection(clientSocket);
+                    ClientHandler handler = new ClientHandler(connection);
+                    connection.setHandler(handler);
+                    connected(handler);
+                    pool.execute(connection);
+                    pool.execute(connection.writer());
+                } catch (IOException e) {
+                    log.warn("Could not set up client connection: {}", e.getMessage());
+                    clientSocket.close();
+                }
+            }
+        }
+    }
+
+    private static void startTicking(int tickRate) {
+        long periodNanos = 1_000_000_000L / Math.max(1, tickRate);
+        ticker.scheduleAtFixedRate(() -> {
+            for (Match match : activeMatches.values()) {
+                try {
+                    long start = System.nanoTime();
+                    match.tick();
+                    ServerMetrics.tickFanout.record(System.nanoTime() - start);
+                } catch (Exception e) {
+                    log.error("Tick failed for match {}", match.getMatchId(), e);
+                }
+            }
+            spectators.flushTick();
+        }, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+
+        // Print how much the tick saved once a minute, only when there was traffic
+        scheduler.scheduleAtFixedRate(new TimerTask() {
+            private long lastReceived = 0;
+
             @Override
             public void run() {
-                handleTimeUp();
-            }
-        }, GAME_DURATION * 1000); // Convert to milliseconds
-    }
-    
-    private static void handleTimeUp() {
-        if (!gameCompleted) {
-            gameCompleted = true;
-            System.out.println("Time's up! No player found the IT room.");
-            
-            // Send defeat to all players
-            broadcastToAll("TIME_UP_DEFEAT");
-            
-            // Close all connections after a delay
-            new Timer().schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    closeAllConnections();
+                long received = updatesReceived.sum();
+                if (received != lastReceived) {
+                    lastReceived = received;
+                    log.info("Position updates received: {}, sent: {}, snapshots sent: {}",
+                            received, updatesSent.sum(), snapshotsSent.sum());
+                    reportOutboundQueues();
                 }
-            }, 5000);
-        }
+            }
+        }, 60_000, 60_000);
+    }
+
+    static void countUpdateReceived() {
+        updatesReceived.increment();
+    }
+
+    static void countUpdatesSent(int count) {
+        updatesSent.add(count);
     }
-    
-    public static void broadcastToAll(String message) {
-        System.out.println("Broadcasting: " + message);
-        if (gameCompleted && (message.startsWith("VICTORY") || message.startsWith("TIME_UP_DEFEAT"))) {
-            return; // Prevent multiple victory/time-up messages
+
+    // Queue depth per client, the deepest ones first since those are the players falling behind
+    private static void reportOutboundQueues() {
+        List<ClientHandler> clients = new ArrayList<>();
+        for (Match match : activeMatches.values()) {
+            clients.addAll(match.getClients());
         }
-        
-        Iterator<ClientHandler> iterator = clients.iterator();
-        while (iterator.hasNext()) {
-            ClientHandler client = iterator.next();
-            try {
-                client.sendMessage(message);
-            } catch (Exception e) {
-                System.err.println("Error sending to client " + client.getPlayerId() + ": " + e.getMessage());
-                iterator.remove();
-            }
+        clients.sort(Comparator.comparingInt(ClientHandler::getOutboundDepth).reversed());
+
+        StringBuilder report = new StringBuilder("Outbound queues (depth/max/coalesced):");
+        for (int i = 0; i < Math.min(5, clients.size()); i++) {
+            ClientHandler client = clients.get(i);
+            report.append(" match ").append(client.getMatchId()).append(" player ").append(client.getPlayerId())
+                    .append(' ').append(client.getOutboundDepth()).append('/').append(client.getOutboundMaxDepth())
+                    .append('/').append(client.getOutboundCoalesced());
         }
+        report.append(", spectators: ").append(spectators.size())
+                .append(", slow clients dropped: ").append(slowClientsDropped.sum())
+                .append(", positions rejected: ").append(positionsRejected.sum())
+                .append(", log entries dropped: ").append(Log.getDropped());
+        log.info("{}", report);
     }
-    
-    public static void updatePlayerPosition(int playerId, double x, double y) {
-        gameState.updatePlayerPosition(playerId, x, y);
-        broadcastToAll("PLAYER_POSITION:" + playerId + ":" + x + ":" + y);
-    }
-    
-    public static void playerCollectedItem(int playerId, String itemId) {
-        gameState.collectItem(itemId);
-        broadcastToAll("ITEM_COLLECTED:" + playerId + ":" + itemId);
-    }
-    
-    public static void playerVisitedRoom(int playerId, int roomId) {
-        gameState.visitRoom(roomId);
-        broadcastToAll("ROOM_VISITED:" + playerId + ":" + roomId);
-    }
-    
-    // FIXED: This method now properly handles victory by sending different messages to winner and loser
-    public static synchronized void handleVictory(int playerId) {
-        if (!gameCompleted) {
-            gameCompleted = true;
-            winnerId = playerId;
-            System.out.println("Player " + playerId + " won the game!");
-            
-            // Cancel the game timer since someone won
-            if (gameTimer != null) {
-                gameTimer.cancel();
-            }
-            
-            // FIXED: Send VICTORY to winner and DEFEAT to loser
-            for (ClientHandler client : clients) {
-                if (client.getPlayerId() == playerId) {
-                    System.out.println("Sending VICTORY to player " + playerId);
-                    client.sendMessage("VICTORY:" + playerId);
-                } else {
-                    System.out.println("Sending DEFEAT to player " + client.getPlayerId());
-                    client.sendMessage("DEFEAT:The other player reached IT room first!");
+
+    static void countSlowClientDropped() {
+        slowClientsDropped.increment();
+    }
+
+    static void countPositionRejected() {
+        positionsRejected.increment();
+    }
+
+    static void countSnapshotSent() {
+        snapshotsSent.increment();
+    }
+
+    public static long getSnapshotsSent() {
+        return snapshotsSent.sum();
+    }
+
+    public static long getUpdatesReceived() {
+        return updatesReceived.sum();
+    }
+
+    static long getSlowClientsDropped() {
+        return slowClientsDropped.sum();
+    }
+
+    static long getPositionsRejected() {
+        return positionsRejected.sum();
+    }
+
+    public static long getUpdatesSent() {
+        return updatesSent.sum();
+    }
+
+    /** A new connection: it joins the lobby once it asks to, or after HELLO_WAIT_MILLIS if it says nothing */
+    static void connected(ClientHandler client) {
+        ServerMetrics.connectionAccepted();
+        scheduler.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                if (!client.saidHello()) {
+                    client.enterLobby();
                 }
             }
-            
-            // Close all connections after a delay
-            new Timer().schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    closeAllConnections();
-                }
-            }, 5000);
+        }, HELLO_WAIT_MILLIS);
+    }
+
+    /** Place a new connection into the waiting match and start it once it is full */
+    static synchronized Match joinLobby(ClientHandler client) {
+        Match match = waitingMatch;
+        int playerId = match.addPlayer(client);
+        log.info("Player {} connected to match {} ({} matches running)",
+                playerId, match.getMatchId(), activeMatches.size());
+
+        // Send player ID to client before the match can announce START_GAME
+        client.sendMessage("PLAYER_ID:" + playerId);
+        if (client.usesResume()) {
+            client.sendMessage("SESSION:" + openSession(client));
+        }
+
+        if (match.isFull()) {
+            activeMatches.put(match.getMatchId(), match);
+            waitingMatch = new Match(nextMatchId.getAndIncrement());
+            match.start();
         }
+        return match;
     }
-    
-    public static void handleTimeUpMessage() {
-        handleTimeUp();
-    }
-    
-    public static void removeClient(ClientHandler client) {
-        clients.remove(client);
-        System.out.println("Player " + client.getPlayerId() + " disconnected");
-        
-        // If a player disconnects, the other player wins
-        if (clients.size() == 1 && !gameCompleted) {
-            ClientHandler remaining = clients.iterator().next();
-            handleVictory(remaining.getPlayerId());
+
+    private static String openSession(ClientHandler client) {
+        byte[] bytes = new byte[16];
+        tokens.nextBytes(bytes);
+        String token = HexFormat.of().formatHex(bytes);
+        client.setSessionToken(token);
+        sessions.put(token, client);
+        return token;
+    }
+
+    /** Hand a dropped player's slot to their new connection, false if the session is gone */
+    static boolean resume(String token, ClientHandler client) {
+        ClientHandler dropped = sessions.get(token);
+        if (dropped == null || !dropped.getMatch().resume(dropped, client)) {
+            return false;
         }
+        sessions.put(token, client);
+        return true;
     }
-    
-    private static void closeAllConnections() {
-        System.out.println("Closing all connections...");
-        for (ClientHandler client : clients) {
-            try {
-                client.closeConnection();
-            } catch (Exception e) {
-                System.err.println("Error closing client connection: " + e.getMessage());
-            }
+
+    /** A player left the lobby before their match started, nothing to resume */
+    static synchronized void closeSession(ClientHandler client) {
+        String token = client.getSessionToken();
+        if (token != null) {
+            sessions.remove(token, client);
         }
-        clients.clear();
     }
-    
-    public static boolean isGameCompleted() {
-        return gameCompleted;
+
+    static long getResumeGraceMillis() {
+        return resumeGraceMillis;
+    }
+
+    static void matchFinished(Match match) {
+        sessions.values().removeIf(client -> client.getMatch() == match);
+        if (activeMatches.remove(match.getMatchId()) != null) {
+            log.info("Match {} removed, {} matches running", match.getMatchId(), activeMatches.size());
+        }
+    }
+
+    static SpectatorFeed getSpectators() {
+        return spectators;
+    }
+
+    /** A spectator connection, it watches every running match and never joins one */
+    static void watch(ClientHandler spectator) {
+        log.info("Spectator {} connected ({} watching)", spectator.describe(), spectators.size() + 1);
+        spectators.add(spectator, activeMatches.values());
+    }
+
+    static Path getRecordDir() {
+        return recordDir;
+    }
+
+    static Timer getScheduler() {
+        return scheduler;
+    }
+
+    static boolean isBinaryProtocolAllowed() {
+        return binaryProtocolAllowed;
+    }
+
+    static Collection<Match> getActiveMatches() {
+        return activeMatches.values();
+    }
+
+    public static int getActiveMatchCount() {
+        return activeMatches.size();
     }
 }
 
-class ClientHandler implements Runnable {
-    private Socket socket;
-    private int playerId;
-    private PrintWriter out;
-    private BufferedReader in;
-    private boolean connected = true;
-    
-    public ClientHandler(Socket socket, int playerId) {
+/** Blocking socket transport: one thread reads lines and a second one drains the outbound queue */
+class SocketConnection implements Connection, Runnable {
+    private static final Log log = Log.get("SocketConnection");
+    private final Socket socket;
+    private final OutputStream out;
+    private final WireProtocol.FrameReader in;
+    private final OutboundQueue outbound = new OutboundQueue(OutboundQueue.DEFAULT_CAPACITY);
+    private volatile boolean connected = true;
+    private ClientHandler handler;
+
+    SocketConnection(Socket socket) throws IOException {
         this.socket = socket;
-        this.playerId = playerId;
+        // Open the streams up front so the match can message this player before run() starts
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+        this.in = new WireProtocol.FrameReader(new BufferedInputStream(socket.getInputStream()));
+    }
+
+    void setHandler(ClientHandler handler) {
+        this.handler = handler;
     }
-    
+
     @Override
     public void run() {
         try {
-            out = new PrintWriter(socket.getOutputStream(), true);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            
-            // Send player ID to client
-            sendMessage("PLAYER_ID:" + playerId);
-            
-            String inputLine;
-            while ((inputLine = in.readLine()) != null && connected) {
-                System.out.println("Received from Player " + playerId + ": " + inputLine);
-                handleMessage(inputLine);
+            int type;
+            while (connected && (type = in.next()) != WireProtocol.FrameReader.EOF) {
+                if (type == WireProtocol.FrameReader.POSITION) {
+                    handler.onPositionFrame(in.x(), in.y());
+                } else {
+                    handler.onMessage(in.text());
+                }
             }
         } catch (IOException e) {
-            System.out.println("Player " + playerId + " disconnected: " + e.getMessage());
+            log.info("Player {} disconnected: {}", handler.getPlayerId(), e.getMessage());
         } finally {
-            closeConnection();
-            GameServer.removeClient(this);
+            close();
         }
     }
-    
-    private void handleMessage(String message) {
-        if (GameServer.isGameCompleted()) {
-            return; // Ignore messages after game completion
-        }
-        
-        String[] parts = message.split(":");
-        switch (parts[0]) {
-            case "POSITION_UPDATE":
-                double x = Double.parseDouble(parts[1]);
-                double y = Double.parseDouble(parts[2]);
-                GameServer.updatePlayerPosition(playerId, x, y);
-                break;
-                
-            case "ITEM_COLLECTED":
-                GameServer.playerCollectedItem(playerId, parts[1]);
-                break;
-                
-            case "ROOM_VISITED":
-                int roomId = Integer.parseInt(parts[1]);
-                GameServer.playerVisitedRoom(playerId, roomId);
-                break;
-                
-            case "FLOOR_CHANGED":
-                GameServer.broadcastToAll("FLOOR_CHANGED:" + playerId + ":" + parts[1]);
-                break;
-                
-            // FIXED: When client reports victory, handle it on server
-            case "VICTORY":
-                int winningPlayerId = Integer.parseInt(parts[1]);
-                System.out.println("Player " + winningPlayerId + " reported victory to server");
-                GameServer.handleVictory(winningPlayerId);
-                break;
-                
-            case "TIME_UP":
-                GameServer.handleTimeUpMessage();
-                break;
-                
-            case "PLAYER_DISCONNECTING":
-                System.out.println("Player " + playerId + " is disconnecting gracefully");
-                connected = false;
-                break;
+
+    /** Writer loop: only this thread ever blocks on the socket's send buffer */
+    Runnable writer() {
+        return () -> {
+            try {
+                while (connected) {
+                    ByteBuffer frame = outbound.take(1, TimeUnit.SECONDS);
+                    // Write everything already waiting, then flush once
+                    while (frame != null) {
+                        write(frame);
+                        frame = outbound.poll();
+                    }
+                    out.flush();
+                }
+            } catch (IOException e) {
+                if (connected) {
+                    log.warn("Failed to send to {}: {}", describe(), e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+            }
+        };
+    }
+
+    private void write(ByteBuffer frame) throws IOException {
+        if (frame.hasArray()) {
+            out.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+        } else {
+            byte[] bytes = new byte[frame.remaining()];
+            frame.get(bytes);
+            out.write(bytes);
         }
     }
-    
-    public void sendMessage(String message) {
-        if (out != null && !socket.isClosed() && connected) {
+
+    @Override
+    public void send(ByteBuffer frame, OutboundQueue.Delivery delivery) {
+        if (!connected) return;
+        if (!outbound.offer(frame, delivery)) {
+            log.warn("Outbound queue full for {}, dropping slow client", describe());
+            GameServer.countSlowClientDropped();
+            // The reader thread sees the closed socket and runs the disconnect, not the broadcaster
             try {
-                out.println(message);
-                out.flush();
-                System.out.println("Sent to Player " + playerId + ": " + message);
-            } catch (Exception e) {
-                System.err.println("Failed to send message to player " + playerId + ": " + e.getMessage());
-                connected = false;
+                socket.close();
+            } catch (IOException e) {
+                log.warn("Error closing connection for {}: {}", describe(), e.getMessage());
             }
         }
     }
-    
-    public void closeConnection() {
+
+    @Override
+    public OutboundQueue outbound() {
+        return outbound;
+    }
+
+    @Override
+    public void close() {
         connected = false;
+        outbound.close();
         try {
-            if (out != null) out.close();
-            if (in != null) in.close();
-            if (socket != null) socket.close();
+            socket.close();
         } catch (IOException e) {
-            System.err.println("Error closing connection for player " + playerId + ": " + e.getMessage());
+            log.warn("Error closing connection for {}: {}", describe(), e.getMessage());
+        }
+        if (handler != null) {
+            handler.onDisconnect();
         }
     }
-    
-    public int getPlayerId() {
-        return playerId;
-    }
-}
 
-class GameState {
-    private Map<Integer, PlayerPosition> playerPositions = new ConcurrentHashMap<>();
-    private Set<String> collectedItems = ConcurrentHashMap.newKeySet();
-    private Set<Integer> visitedRooms = ConcurrentHashMap.newKeySet();
-    
-    public void updatePlayerPosition(int playerId, double x, double y) {
-        playerPositions.put(playerId, new PlayerPosition(x, y));
-    }
-    
-    public void collectItem(String itemId) {
-        collectedItems.add(itemId);
-    }
-    
-    public void visitRoom(int roomId) {
-        visitedRooms.add(roomId);
+    @Override
+    public boolean isOpen() {
+        return connected && !socket.isClosed();
     }
-}
 
-class PlayerPosition {
-    double x, y;
-    
-    PlayerPosition(double x, double y) {
-        this.x = x;
-        this.y = y;
+    @Override
+    public String describe() {
+        return String.valueOf(socket.getRemoteSocketAddress());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,114 @@
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Replicated state of one match. Every change gets the next version number, so the delta for a
+ * client is simply everything stamped after the last version that client acknowledged.
+ *
+ * Delta body: entries separated by ';'
+ *   P<player>,<x>,<y>     position
+ *   F<player>,<floor>     floor the player is on
+ *   I<player>,<item>      item collected
+ *   R<player>,<room>      room visited
+ */
+class GameState {
+    private long version = 0;
+    private final Map<Integer, PlayerPosition> playerPositions = new HashMap<>();
+    private final Map<Integer, StateEntry> playerFloors = new HashMap<>();
+    private final Map<String, StateEntry> collectedItems = new LinkedHashMap<>();
+    private final Map<String, StateEntry> visitedRooms = new LinkedHashMap<>();
+    
+    // Only the latest position per player is kept, the tick sends whatever is newest
+    public synchronized void updatePlayerPosition(int playerId, double x, double y) {
+        PlayerPosition position = playerPositions.computeIfAbsent(playerId, PlayerPosition::new);
+        position.x = x;
+        position.y = y;
+        position.version = ++version;
+    }
+    
+    public synchronized void changeFloor(int playerId, String floor) {
+        playerFloors.put(playerId, new StateEntry(playerId, floor, ++version));
+    }
+    
+    public synchronized void collectItem(int playerId, String itemId) {
+        if (!collectedItems.containsKey(itemId)) {
+            collectedItems.put(itemId, new StateEntry(playerId, itemId, ++version));
+        }
+    }
+    
+    public synchronized void visitRoom(int playerId, int roomId) {
+        String key = playerId + ":" + roomId;
+        if (!visitedRooms.containsKey(key)) {
+            visitedRooms.put(key, new StateEntry(playerId, String.valueOf(roomId), ++version));
+        }
+    }
+    
+    public synchronized long getVersion() {
+        return version;
+    }
+    
+    /** Copy the positions changed after the given version into the arrays, returns how many */
+    public synchronized int changedPositions(long since, int[] ids, double[] xs, double[] ys) {
+        int count = 0;
+        for (PlayerPosition position : playerPositions.values()) {
+            if (position.version > since && count < ids.length) {
+                ids[count] = position.playerId;
+                xs[count] = position.x;
+                ys[count] = position.y;
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /** Everything stamped after baseVersion, base 0 gives the full state */
+    public synchronized String encodeDelta(long baseVersion) {
+        StringBuilder delta = new StringBuilder();
+        for (PlayerPosition position : playerPositions.values()) {
+            if (position.version > baseVersion) {
+                appendEntry(delta, 'P', position.playerId, position.x + "," + position.y);
+            }
+        }
+        appendEntries(delta, 'F', playerFloors.values(), baseVersion);
+        appendEntries(delta, 'I', collectedItems.values(), baseVersion);
+        appendEntries(delta, 'R', visitedRooms.values(), baseVersion);
+        return delta.toString();
+    }
+    
+    private static void appendEntries(StringBuilder delta, char type, Collection<StateEntry> entries, long baseVersion) {
+        for (StateEntry entry : entries) {
+            if (entry.version > baseVersion) {
+                appendEntry(delta, type, entry.playerId, entry.value);
+            }
+        }
+    }
+    
+    private static void appendEntry(StringBuilder delta, char type, int playerId, String value) {
+        if (delta.length() > 0) delta.append(';');
+        delta.append(type).append(playerId).append(',').append(value);
+    }
+}
+
+class PlayerPosition {
+    final int playerId;
+    double x, y;
+    long version;
+    
+    PlayerPosition(int playerId) {
+        this.playerId = playerId;
+    }
+}
+
+class StateEntry {
+    final int playerId;
+    final String value;
+    final long version;
+    
+    StateEntry(int playerId, String value, long version) {
+        this.playerId = playerId;
+        this.value = value;
+        this.version = version;
+    }
+}
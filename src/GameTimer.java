@@ -1,20 +1,16 @@
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
-import javafx.application.Platform;
 import javafx.scene.control.Label;
-import javafx.util.Duration;
 
 public class GameTimer {
 
-    private static Timeline timer;
-    private static int remainingSeconds = 10 * 60; // 10 minutes shared across floors
+    // 10 minutes shared across floors, paused while a floor is swapped
+    private static final GameClock.Countdown clock = GameClock.countdown(10 * 60)
+            .onSecond(seconds -> updateLabel());
     private static boolean started = false;
     private static Label currentLabel;
 
     /** Reset the timer completely */
     public static void reset() {
-        stop();
-        remainingSeconds = 10 * 60; // Reset to 10 minutes
+        clock.reset();
         started = false;
         if (currentLabel != null) {
             updateLabel();
@@ -30,48 +26,33 @@ public class GameTimer {
     public static void start(Runnable onTimeUp) {
         if (started) return;
         started = true;
-
-        timer = new Timeline(new KeyFrame(Duration.seconds(1), e -> {
-            remainingSeconds--;
-            updateLabel();
-
-            if (remainingSeconds <= 0) {
-                timer.stop();
-                if (onTimeUp != null) {
-                    // Ensure UI updates happen on JavaFX thread
-                    Platform.runLater(onTimeUp);
-                }
-            }
-        }));
-        timer.setCycleCount(Timeline.INDEFINITE);
-        timer.play();
+        clock.onTimeUp(onTimeUp);
+        clock.start();
     }
 
     /** Resume timer after floor change */
     public static void resume() {
-        if (timer != null) timer.play();
+        if (started) clock.start();
         updateLabel();
     }
 
     /** Pause timer */
     public static void pause() {
-        if (timer != null) timer.pause();
+        clock.pause();
     }
 
     /** Stop timer completely */
     public static void stop() {
-        if (timer != null) timer.stop();
+        clock.pause();
     }
 
     private static void updateLabel() {
         if (currentLabel != null) {
-            int minutes = remainingSeconds / 60;
-            int seconds = remainingSeconds % 60;
-            currentLabel.setText(String.format("Time: %02d:%02d", minutes, seconds));
+            currentLabel.setText("Time: " + clock.format());
         }
     }
 
     public static int getRemainingSeconds() {
-        return remainingSeconds;
+        return clock.getRemainingSeconds();
     }
 }
@@ -0,0 +1,100 @@
+import javafx.event.EventHandler;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Which keys are held right now, fed by KEY_PRESSED and KEY_RELEASED of a node or scene. A
+ * GameLoop reads it once per frame, so the OS key repeat no longer decides how fast anyone walks.
+ *
+ * Arrow keys count as directions. With several held the one pressed last wins, so the player
+ * always moves along one axis like before. A press that is released again before the next frame
+ * is kept as a tap, a quick press still moves one step.
+ */
+final class InputState {
+    private final Set<KeyCode> held = EnumSet.noneOf(KeyCode.class);
+    // Held arrow keys, the newest last
+    private final ArrayDeque<KeyCode> directions = new ArrayDeque<>();
+    private KeyCode tap;
+    // When the tap's key went down, System.nanoTime()
+    private long tapNanos;
+    // Keys that run an action instead of being held, like the HUD toggle
+    private final Map<KeyCode, Runnable> shortcuts = new EnumMap<>(KeyCode.class);
+
+    private final EventHandler<KeyEvent> onPressed = event -> {
+        KeyCode code = event.getCode();
+        Runnable shortcut = shortcuts.get(code);
+        if (shortcut != null) {
+            shortcut.run();
+            event.consume();
+            return;
+        }
+        // Repeats of a key already held change nothing
+        if (held.add(code) && isDirection(code)) {
+            directions.addLast(code);
+            tap = code;
+            tapNanos = System.nanoTime();
+        }
+        if (isDirection(code)) {
+            event.consume(); // arrow keys walk, they don't move the focus around
+        }
+    };
+    private final EventHandler<KeyEvent> onReleased = event -> {
+        held.remove(event.getCode());
+        directions.remove(event.getCode());
+    };
+
+    void attach(Node node) {
+        node.addEventFilter(KeyEvent.KEY_PRESSED, onPressed);
+        node.addEventFilter(KeyEvent.KEY_RELEASED, onReleased);
+    }
+
+    void attach(Scene scene) {
+        scene.addEventFilter(KeyEvent.KEY_PRESSED, onPressed);
+        scene.addEventFilter(KeyEvent.KEY_RELEASED, onReleased);
+    }
+
+    /** Run action on every press of key, wherever this state is attached */
+    void onPress(KeyCode key, Runnable action) {
+        shortcuts.put(key, action);
+    }
+
+    static boolean isDirection(KeyCode code) {
+        return code == KeyCode.UP || code == KeyCode.DOWN || code == KeyCode.LEFT || code == KeyCode.RIGHT;
+    }
+
+    boolean isHeld(KeyCode code) {
+        return held.contains(code);
+    }
+
+    /** The arrow key to walk in, null when none is held */
+    KeyCode direction() {
+        return directions.peekLast();
+    }
+
+    /** The arrow key pressed since the last call, if any, held or already released */
+    KeyCode takeTap() {
+        KeyCode pressed = tap;
+        tap = null;
+        return pressed;
+    }
+
+    /** When the key takeTap() returned last was pressed, in System.nanoTime() */
+    long tapNanos() {
+        return tapNanos;
+    }
+
+    /** Forget every key, the window lost focus and won't see the releases */
+    void clear() {
+        held.clear();
+        directions.clear();
+        tap = null;
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Recent positions of a remote player, stamped with the System.nanoTime() they arrived at, so
+ * the opponent can be drawn a little in the past and glide between two known positions instead
+ * of jumping to each one as it comes in.
+ *
+ * The render delay follows the spacing of the updates: about two update intervals, so there is
+ * nearly always a newer position to move towards even when the server ticks slowly or an update
+ * arrives late. Not thread safe, add() and sample() both run on the FX thread.
+ */
+final class InterpolationBuffer {
+    private static final int CAPACITY = 32;
+    private static final long MIN_DELAY_NANOS = 50_000_000L;
+    private static final long MAX_DELAY_NANOS = 400_000_000L;
+    // Gaps longer than this are pauses in movement, not the server's update rate
+    private static final long MAX_INTERVAL_NANOS = 250_000_000L;
+
+    private final long[] times = new long[CAPACITY];
+    private final double[] xs = new double[CAPACITY];
+    private final double[] ys = new double[CAPACITY];
+    private int newest = -1;
+    private int count = 0;
+    private long interval = 33_000_000L; // the server's default 30 Hz until we have measured it
+
+    private double x;
+    private double y;
+
+    /** A position that arrived at time (System.nanoTime()) */
+    void add(long time, double x, double y) {
+        if (count > 0) {
+            long gap = time - times[newest];
+            if (gap <= 0) {
+                // Same batch (or a clock hiccup), the later position wins
+                xs[newest] = x;
+                ys[newest] = y;
+                return;
+            }
+            if (gap <= MAX_INTERVAL_NANOS) {
+                interval += (gap - interval) / 8;
+            } else {
+                // The player stood still: start this move one interval ago, not where they stopped
+                put(time - interval, xs[newest], ys[newest]);
+            }
+        }
+        put(time, x, y);
+    }
+
+    private void put(long time, double x, double y) {
+        newest = (newest + 1) % CAPACITY;
+        times[newest] = time;
+        xs[newest] = x;
+        ys[newest] = y;
+        count = Math.min(count + 1, CAPACITY);
+    }
+
+    /** Forget everything, the next position is shown as it is (the player changed floors) */
+    void clear() {
+        count = 0;
+        newest = -1;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    long delayNanos() {
+        return Math.max(MIN_DELAY_NANOS, Math.min(MAX_DELAY_NANOS, 2 * interval));
+    }
+
+    /**
+     * Work out where the player was delayNanos() before now, read it with getX() and getY().
+     * Before the oldest position that is the oldest one, after the newest the newest, there is
+     * no guessing ahead. Returns false if there is nothing to show.
+     */
+    boolean sample(long now) {
+        if (count == 0) return false;
+        long renderTime = now - delayNanos();
+
+        int later = newest;
+        for (int n = 1; n < count; n++) {
+            int earlier = (later - 1 + CAPACITY) % CAPACITY;
+            if (times[earlier] <= renderTime) {
+                double t = (double) (renderTime - times[earlier]) / (times[later] - times[earlier]);
+                t = Math.min(1, t);
+                x = xs[earlier] + (xs[later] - xs[earlier]) * t;
+                y = ys[earlier] + (ys[later] - ys[earlier]) * t;
+                return true;
+            }
+            later = earlier;
+        }
+        // Everything we have is newer than renderTime, or the newest is older: clamp to an end
+        int end = times[newest] <= renderTime ? newest : later;
+        x = xs[end];
+        y = ys[end];
+        return true;
+    }
+
+    double getX() {
+        return x;
+    }
+
+    double getY() {
+        return y;
+    }
+}
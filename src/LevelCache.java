@@ -0,0 +1,133 @@
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads level FXML ahead of time on a background thread, so a floor change or a Try Again only
+ * has to swap scenes instead of parsing FXML and building nodes while the timer runs.
+ *
+ * A loaded graph is shown once: a Parent belongs to one scene and playing a floor changes it
+ * (doors turn black, collectibles go away). take() therefore hands an entry out and removes it,
+ * prewarm the file again to have the next fresh copy ready. At most MAX_ENTRIES graphs are kept,
+ * the one prewarmed or asked for longest ago is dropped first.
+ *
+ * initialize() of a prewarmed controller runs on the loader thread before its scene exists, so
+ * controllers loaded here keep timers, popups and the network out of initialize() and do that in
+ * Controller.activate(), which the caller runs once the scene is showing.
+ */
+final class LevelCache {
+    private static final Log log = Log.get("LevelCache");
+    private static final int MAX_ENTRIES = 4;
+
+    /** A controller that starts playing only once its scene is showing */
+    interface Controller {
+        void activate();
+    }
+
+    record Loaded(Parent root, Object controller) {
+        /** Start the controller, call after the root is in the stage's scene */
+        void activate() {
+            if (controller instanceof Controller c) {
+                c.activate();
+            }
+        }
+    }
+
+    private static final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "level-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Access ordered, so the eldest entry is the least recently used one
+    private static final Map<String, Future<Loaded>> entries = new LinkedHashMap<>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Future<Loaded>> eldest) {
+            if (size() <= MAX_ENTRIES) return false;
+            eldest.getValue().cancel(false);
+            evictions++;
+            log.debug("Evicted {}", eldest.getKey());
+            return true;
+        }
+    };
+
+    private static long hits = 0;
+    private static long misses = 0;
+    private static long evictions = 0;
+
+    private LevelCache() {
+    }
+
+    /** Start loading fxml in the background unless a copy is already loaded or on its way */
+    static synchronized void prewarm(String fxml) {
+        if (fxml == null || entries.containsKey(fxml)) return;
+        entries.put(fxml, loader.submit(() -> load(fxml)));
+        log.debug("Prewarming {}", fxml);
+    }
+
+    /**
+     * The prewarmed copy of fxml, waiting for it if it is still loading, or a copy loaded now on
+     * the calling thread when there is none.
+     */
+    static Loaded take(String fxml) throws IOException {
+        Future<Loaded> pending;
+        synchronized (LevelCache.class) {
+            pending = entries.remove(fxml);
+        }
+        if (pending != null) {
+            try {
+                Loaded loaded = pending.get();
+                countHit(fxml);
+                return loaded;
+            } catch (ExecutionException e) {
+                log.warn("Prewarming {} failed, loading it again: {}", fxml, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while loading " + fxml, e);
+            }
+        }
+        countMiss(fxml);
+        return load(fxml);
+    }
+
+    private static Loaded load(String fxml) throws IOException {
+        long start = System.nanoTime();
+        FXMLLoader loader = new FXMLLoader(LevelCache.class.getResource(fxml));
+        Parent root = loader.load();
+        log.debug("Loaded {} in {} ms", fxml, (System.nanoTime() - start) / 1_000_000);
+        return new Loaded(root, loader.getController());
+    }
+
+    private static synchronized void countHit(String fxml) {
+        hits++;
+        log.info("{} from cache ({})", fxml, stats());
+    }
+
+    private static synchronized void countMiss(String fxml) {
+        misses++;
+        log.info("{} not cached, loading now ({})", fxml, stats());
+    }
+
+    private static String stats() {
+        return hits + " hits, " + misses + " misses, " + evictions + " evictions";
+    }
+
+    static synchronized long getHits() {
+        return hits;
+    }
+
+    static synchronized long getMisses() {
+        return misses;
+    }
+
+    static synchronized long getEvictions() {
+        return evictions;
+    }
+}
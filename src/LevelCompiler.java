@@ -0,0 +1,323 @@
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Turns a level's FXML into the binary format LevelData reads. The FXML is read as plain XML, so
+ * this runs without JavaFX: at build time for every map, or on the first run for a map that has
+ * no up to date level file yet.
+ *
+ *   java LevelCompiler levels src/fxml/game1.fxml src/fxml/library.fxml ...
+ *
+ * Nodes are sorted into entity tables by the same fill colours the controllers used to compare at
+ * load time. Which rules apply follows the fx:controller of the root, a map whose controller has
+ * no rules (the main menu) isn't a level.
+ */
+final class LevelCompiler {
+    private static final double DEFAULT_STROKE_WIDTH = 1.0;
+
+    // Only the named colours the maps use, as 0xRRGGBB
+    private static final Map<String, Integer> NAMED_COLORS = Map.ofEntries(
+            Map.entry("black", 0x000000),
+            Map.entry("white", 0xffffff),
+            Map.entry("red", 0xff0000),
+            Map.entry("lime", 0x00ff00),
+            Map.entry("blue", 0x0000ff),
+            Map.entry("yellow", 0xffff00),
+            Map.entry("gold", 0xffd700),
+            Map.entry("orange", 0xffa500),
+            Map.entry("magenta", 0xff00ff),
+            Map.entry("brown", 0xa52a2a),
+            Map.entry("dodgerblue", 0x1e90ff),
+            Map.entry("gray", 0x808080),
+            Map.entry("grey", 0x808080),
+            Map.entry("lightgray", 0xd3d3d3),
+            Map.entry("lightgrey", 0xd3d3d3),
+            Map.entry("green", 0x008000));
+
+    private static final int PLAYER_COLOR = 0xf20acf;
+    private static final int WASHROOM_COLOR = 0x1e2226;
+    private static final int COLLECTIBLE_COLOR = 0xf7eed3;
+
+    private LevelCompiler() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java LevelCompiler <output dir> <map.fxml>...");
+            System.exit(2);
+        }
+        Path outputDir = Path.of(args[0]);
+        for (int i = 1; i < args.length; i++) {
+            Path fxml = Path.of(args[i]);
+            byte[] source = Files.readAllBytes(fxml);
+            if (rulesFor(parse(source)) == null) {
+                System.out.println("Skipping " + fxml + ", not a level");
+                continue;
+            }
+            ByteBuffer compiled = compile(source);
+            Path file = outputDir.resolve(fxml.getFileName().toString().replace(".fxml", ".level"));
+            LevelData.write(compiled, file);
+
+            LevelData level = LevelData.wrap(compiled);
+            StringBuilder summary = new StringBuilder();
+            for (LevelData.Kind kind : LevelData.Kind.values()) {
+                if (level.count(kind) > 0) {
+                    summary.append(' ').append(kind.name().toLowerCase(Locale.ROOT)).append('=').append(level.count(kind));
+                }
+            }
+            System.out.println(fxml + " -> " + file + " (" + compiled.capacity() + " bytes," + summary + ")");
+        }
+    }
+
+    /** Compile one map; the buffer holds the whole level file */
+    static ByteBuffer compile(byte[] fxml) {
+        Element root = parse(fxml).getDocumentElement();
+        Rules rules = rulesFor(root.getOwnerDocument());
+        if (rules == null) {
+            throw new IllegalArgumentException("No level rules for controller " + root.getAttribute("fx:controller"));
+        }
+
+        List<Element> children = children(root);
+        List<List<Entity>> tables = new ArrayList<>();
+        for (int k = 0; k < LevelData.Kind.values().length; k++) {
+            tables.add(new ArrayList<>());
+        }
+        for (int index = 0; index < children.size(); index++) {
+            Element node = children.get(index);
+            LevelData.Kind kind = rules.classify(node);
+            if (kind == null) continue;
+
+            int id = numericId(node);
+            if (kind == LevelData.Kind.CLASSROOM_DOOR && id == LevelData.NO_ID) {
+                // The controllers never used doors they couldn't order
+                System.err.println("Classroom door at child " + index + " has no numeric id, skipped");
+                continue;
+            }
+            double[] box = boundsInParent(node);
+            if (box == null) continue;
+            tables.get(kind.ordinal()).add(new Entity(index, id, box));
+        }
+
+        int kinds = tables.size();
+        int records = tables.stream().mapToInt(List::size).sum();
+        ByteBuffer out = ByteBuffer.allocate(LevelData.HEADER_BYTES + kinds * LevelData.TABLE_BYTES
+                + records * LevelData.RECORD_BYTES);
+        out.putInt(LevelData.MAGIC);
+        out.putShort(LevelData.FORMAT);
+        out.putShort((short) kinds);
+        out.putInt(LevelData.crc32(fxml));
+        out.putInt(children.size());
+        out.putFloat((float) number(root, "prefWidth", -1));
+        out.putFloat((float) number(root, "prefHeight", -1));
+
+        int first = 0;
+        for (List<Entity> table : tables) {
+            out.putInt(first);
+            out.putInt(table.size());
+            first += table.size();
+        }
+        for (List<Entity> table : tables) {
+            for (Entity entity : table) {
+                out.putInt(entity.childIndex);
+                out.putInt(entity.id);
+                for (double value : entity.box) {
+                    out.putFloat((float) value);
+                }
+            }
+        }
+        return out.flip();
+    }
+
+    private record Entity(int childIndex, int id, double[] box) {
+    }
+
+    private interface Rules {
+        LevelData.Kind classify(Element node);
+    }
+
+    private static Rules rulesFor(Document document) {
+        return switch (document.getDocumentElement().getAttribute("fx:controller")) {
+            case "BFSController", "MultiplayerController" -> LevelCompiler::classifyFloor;
+            case "LibraryController" -> LevelCompiler::classifyLibrary;
+            case "CafeController" -> LevelCompiler::classifyCafe;
+            default -> null;
+        };
+    }
+
+    /** BFS and multiplayer floors */
+    private static LevelData.Kind classifyFloor(Element node) {
+        if (node.getTagName().equals("Line")) return LevelData.Kind.BARRIER;
+        if (!node.getTagName().equals("Rectangle")) return null;
+
+        int fill = fill(node);
+        if ("player".equals(node.getAttribute("fx:id")) || fill == PLAYER_COLOR) return LevelData.Kind.PLAYER;
+        switch (fill) {
+            case 0xffffff: return LevelData.Kind.CLASSROOM_DOOR;
+            case 0xffa500: return LevelData.Kind.WASHROOM_DOOR;
+            case 0x1e90ff, 0x808080: return LevelData.Kind.WALL;
+            case WASHROOM_COLOR, 0x000000: return LevelData.Kind.WASHROOM_BLOCK;
+            case COLLECTIBLE_COLOR: return LevelData.Kind.COLLECTIBLE;
+            default: break;
+        }
+        int id = numericId(node);
+        if (id >= 100 && id <= 600 && id % 100 == 0) return LevelData.Kind.COLLECTIBLE;
+        if (fill == 0xd3d3d3 || fill == 0xff0000) return LevelData.Kind.LIFT;
+        return null;
+    }
+
+    private static LevelData.Kind classifyLibrary(Element node) {
+        if (node.getTagName().equals("Line")) return LevelData.Kind.OBSTACLE;
+        if (!node.getTagName().equals("Rectangle")) return null;
+
+        return switch (fill(node)) {
+            case PLAYER_COLOR -> LevelData.Kind.PLAYER;
+            case 0xffff00, 0xffd700 -> LevelData.Kind.BOOK;
+            case 0x7b3f00, 0x966f33, 0x808080, 0xa52a2a -> LevelData.Kind.OBSTACLE; // shelves, tables, grey and brown objects
+            default -> null;
+        };
+    }
+
+    /** The cafe names its player and plates, every other rectangle is in the way */
+    private static LevelData.Kind classifyCafe(Element node) {
+        if (!node.getTagName().equals("Rectangle")) return null;
+
+        String fxId = node.getAttribute("fx:id");
+        if (fxId.equals("player")) return LevelData.Kind.PLAYER;
+        if (fxId.startsWith("player")) return LevelData.Kind.PLATE;
+        return LevelData.Kind.OBSTACLE;
+    }
+
+    /**
+     * The node's bounds in its parent, the same box getBoundsInParent gives: the shape, widened by
+     * the part of the stroke outside it, rotated about its centre and moved by layout and translate.
+     * Lines are widened by half the stroke on every side, exact for the straight walls the maps use.
+     */
+    private static double[] boundsInParent(Element node) {
+        double minX, minY, maxX, maxY, pad;
+        double strokeWidth = number(node, "strokeWidth", DEFAULT_STROKE_WIDTH);
+        if (node.getTagName().equals("Rectangle")) {
+            minX = number(node, "x", 0);
+            minY = number(node, "y", 0);
+            maxX = minX + number(node, "width", 0);
+            maxY = minY + number(node, "height", 0);
+            // Rectangles have no stroke unless one is set
+            String strokeType = node.getAttribute("strokeType");
+            if (!node.hasAttribute("stroke") || strokeType.equals("INSIDE")) {
+                pad = 0;
+            } else {
+                pad = strokeType.equals("OUTSIDE") ? strokeWidth : strokeWidth / 2;
+            }
+        } else if (node.getTagName().equals("Line")) {
+            double startX = number(node, "startX", 0), startY = number(node, "startY", 0);
+            double endX = number(node, "endX", 0), endY = number(node, "endY", 0);
+            minX = Math.min(startX, endX);
+            minY = Math.min(startY, endY);
+            maxX = Math.max(startX, endX);
+            maxY = Math.max(startY, endY);
+            pad = strokeWidth / 2;
+        } else {
+            return null;
+        }
+        minX -= pad;
+        minY -= pad;
+        maxX += pad;
+        maxY += pad;
+
+        double rotate = number(node, "rotate", 0);
+        if (rotate != 0) {
+            double centerX = (minX + maxX) / 2, centerY = (minY + maxY) / 2;
+            double cos = Math.cos(Math.toRadians(rotate)), sin = Math.sin(Math.toRadians(rotate));
+            double halfWidth = (maxX - minX) / 2, halfHeight = (maxY - minY) / 2;
+            double extentX = Math.abs(halfWidth * cos) + Math.abs(halfHeight * sin);
+            double extentY = Math.abs(halfWidth * sin) + Math.abs(halfHeight * cos);
+            minX = centerX - extentX;
+            maxX = centerX + extentX;
+            minY = centerY - extentY;
+            maxY = centerY + extentY;
+        }
+
+        double offsetX = number(node, "layoutX", 0) + number(node, "translateX", 0);
+        double offsetY = number(node, "layoutY", 0) + number(node, "translateY", 0);
+        return new double[] {minX + offsetX, minY + offsetY, maxX + offsetX, maxY + offsetY};
+    }
+
+    /** The root's nodes in the order they end up in getChildren(), with or without a children element */
+    private static List<Element> children(Element root) {
+        List<Element> nodes = new ArrayList<>();
+        for (Element element : elements(root)) {
+            if (element.getTagName().equals("children")) {
+                nodes.addAll(elements(element));
+            } else if (Character.isUpperCase(element.getTagName().charAt(0))) {
+                nodes.add(element);
+            }
+        }
+        return nodes;
+    }
+
+    private static List<Element> elements(Element parent) {
+        List<Element> elements = new ArrayList<>();
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element element) {
+                elements.add(element);
+            }
+        }
+        return elements;
+    }
+
+    /** Fill as 0xRRGGBB; Rectangle's default fill is black, a fill we can't read is -1 */
+    private static int fill(Element node) {
+        String fill = node.getAttribute("fill").trim().toLowerCase(Locale.ROOT);
+        if (fill.isEmpty()) return 0x000000;
+        if (fill.startsWith("#") || fill.startsWith("0x")) {
+            String hex = fill.substring(fill.startsWith("#") ? 1 : 2);
+            if (hex.length() == 3) {
+                hex = "" + hex.charAt(0) + hex.charAt(0) + hex.charAt(1) + hex.charAt(1) + hex.charAt(2) + hex.charAt(2);
+            }
+            try {
+                return Integer.parseInt(hex.substring(0, 6), 16);
+            } catch (RuntimeException e) {
+                return -1;
+            }
+        }
+        return NAMED_COLORS.getOrDefault(fill, -1);
+    }
+
+    /** The node id as the controllers parse it: id="" or else fx:id, when it is a number */
+    private static int numericId(Element node) {
+        String id = node.hasAttribute("id") ? node.getAttribute("id") : node.getAttribute("fx:id");
+        try {
+            return Integer.parseInt(id.trim());
+        } catch (NumberFormatException e) {
+            return LevelData.NO_ID;
+        }
+    }
+
+    private static double number(Element node, String attribute, double fallback) {
+        String value = node.getAttribute(attribute);
+        return value.isEmpty() ? fallback : Double.parseDouble(value);
+    }
+
+    private static Document parse(byte[] fxml) {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            return builder.parse(new ByteArrayInputStream(fxml));
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Unreadable FXML: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * A level compiled by LevelCompiler, read straight out of a memory mapped file. The controllers
+ * use it to find their walls, doors and books by child index instead of comparing fill colours,
+ * and it needs no JavaFX, so the server can read the same geometry.
+ *
+ * File layout, big endian:
+ *   header   int magic, short format, short kind count, int crc32 of the FXML,
+ *            int root child count, float width, float height
+ *   tables   int first record, int record count, for every Kind in declaration order
+ *   records  int child index, int id, float minX, minY, maxX, maxY
+ *
+ * Boxes are the nodes' bounds in parent as JavaFX computes them, rotation and stroke included.
+ * Ids are the numeric id="" attribute, NO_ID when a node has none.
+ */
+final class LevelData {
+    static final int MAGIC = 0x55494C56; // "UILV"
+    static final short FORMAT = 1;
+    static final int HEADER_BYTES = 24;
+    static final int TABLE_BYTES = 8;
+    static final int RECORD_BYTES = 24;
+    static final int NO_ID = Integer.MIN_VALUE;
+
+    private static final Log log = Log.get("LevelData");
+
+    /** Entity tables; which kinds a level has depends on the controller it was made for */
+    enum Kind {
+        PLAYER,
+        WALL,
+        WASHROOM_BLOCK,
+        BARRIER,
+        CLASSROOM_DOOR,
+        WASHROOM_DOOR,
+        LIFT,
+        COLLECTIBLE,
+        BOOK,
+        OBSTACLE,
+        PLATE
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private final ByteBuffer buffer;
+    private final int[] tableStart = new int[KINDS.length];
+    private final int[] tableCount = new int[KINDS.length];
+
+    private LevelData(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getShort(4) != FORMAT || buffer.getShort(6) != KINDS.length) {
+            throw new IllegalArgumentException("Not a level file of format " + FORMAT);
+        }
+        for (int k = 0; k < KINDS.length; k++) {
+            tableStart[k] = buffer.getInt(HEADER_BYTES + k * TABLE_BYTES);
+            tableCount[k] = buffer.getInt(HEADER_BYTES + k * TABLE_BYTES + 4);
+        }
+    }
+
+    /** Wrap an already compiled level, e.g. the buffer LevelCompiler.compile returned */
+    static LevelData wrap(ByteBuffer buffer) {
+        return new LevelData(buffer);
+    }
+
+    /** Memory map a compiled level file */
+    static LevelData map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new LevelData(mapped);
+        }
+    }
+
+    /**
+     * The level for an FXML file. The compiled copy in the level directory (system property
+     * level.dir, default "levels") is mapped when it was made from the same FXML bytes, otherwise
+     * the FXML is compiled now and the result written there for the next run.
+     */
+    static LevelData forFxml(URL fxml) throws IOException {
+        byte[] source;
+        try (InputStream in = fxml.openStream()) {
+            source = in.readAllBytes();
+        }
+        int crc = crc32(source);
+
+        String name = fxml.getPath().substring(fxml.getPath().lastIndexOf('/') + 1).replace(".fxml", ".level");
+        Path file = Path.of(System.getProperty("level.dir", "levels")).resolve(name);
+        if (Files.isRegularFile(file)) {
+            try {
+                LevelData cached = map(file);
+                if (cached.sourceCrc() == crc) {
+                    return cached;
+                }
+            } catch (IllegalArgumentException e) {
+                log.warn("Ignoring unreadable level file {}", file);
+            }
+        }
+
+        ByteBuffer compiled = LevelCompiler.compile(source);
+        try {
+            write(compiled, file);
+            log.info("Compiled {} into {}", name.replace(".level", ".fxml"), file);
+            return map(file);
+        } catch (IOException e) {
+            // A read-only install still gets the level, just compiled again next time
+            log.warn("Could not write level file {}: {}", file, e.getMessage());
+            return wrap(compiled);
+        }
+    }
+
+    /**
+     * The level for an FXML file on the class path, such as "/fxml/game1mul.fxml". Without the
+     * FXML (a server that only ships compiled levels) the level file is mapped as it is.
+     */
+    static LevelData forResource(String fxml) throws IOException {
+        URL url = LevelData.class.getResource(fxml);
+        if (url != null) {
+            return forFxml(url);
+        }
+        String name = fxml.substring(fxml.lastIndexOf('/') + 1).replace(".fxml", ".level");
+        Path file = Path.of(System.getProperty("level.dir", "levels")).resolve(name);
+        if (!Files.isRegularFile(file)) {
+            throw new IOException("Neither " + fxml + " on the class path nor " + file + " exists");
+        }
+        return map(file);
+    }
+
+    static void write(ByteBuffer compiled, Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        // A temp file of its own, levels may be compiled on the loader thread and the FX thread at once
+        Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            ByteBuffer data = compiled.duplicate().position(0);
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static int crc32(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+
+    int sourceCrc() {
+        return buffer.getInt(8);
+    }
+
+    /** How many children the root pane had, the child indexes refer to that list */
+    int childCount() {
+        return buffer.getInt(12);
+    }
+
+    double width() {
+        return buffer.getFloat(16);
+    }
+
+    double height() {
+        return buffer.getFloat(20);
+    }
+
+    int count(Kind kind) {
+        return tableCount[kind.ordinal()];
+    }
+
+    int childIndex(Kind kind, int i) {
+        return buffer.getInt(record(kind, i));
+    }
+
+    int id(Kind kind, int i) {
+        return buffer.getInt(record(kind, i) + 4);
+    }
+
+    double minX(Kind kind, int i) {
+        return buffer.getFloat(record(kind, i) + 8);
+    }
+
+    double minY(Kind kind, int i) {
+        return buffer.getFloat(record(kind, i) + 12);
+    }
+
+    double maxX(Kind kind, int i) {
+        return buffer.getFloat(record(kind, i) + 16);
+    }
+
+    double maxY(Kind kind, int i) {
+        return buffer.getFloat(record(kind, i) + 20);
+    }
+
+    /** Boxes of every entity of the given kinds, kind by kind, each table in child order */
+    StaticGeometry geometry(Kind... kinds) {
+        int total = 0;
+        for (Kind kind : kinds) {
+            total += count(kind);
+        }
+        StaticGeometry geometry = new StaticGeometry(total);
+        for (Kind kind : kinds) {
+            for (int i = 0; i < count(kind); i++) {
+                geometry.add(minX(kind, i), minY(kind, i), maxX(kind, i), maxY(kind, i));
+            }
+        }
+        return geometry;
+    }
+
+    private int record(Kind kind, int i) {
+        int k = kind.ordinal();
+        if (i < 0 || i >= tableCount[k]) {
+            throw new IndexOutOfBoundsException(kind + " " + i + " of " + tableCount[k]);
+        }
+        return HEADER_BYTES + KINDS.length * TABLE_BYTES + (tableStart[k] + i) * RECORD_BYTES;
+    }
+}
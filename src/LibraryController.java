@@ -1,27 +1,23 @@
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
-import javafx.scene.input.KeyEvent;
+import javafx.scene.input.KeyCode;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
-import javafx.scene.shape.Line;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.Node;
 import javafx.scene.Parent;
-import javafx.geometry.Bounds;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
-import javafx.animation.Animation;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.util.Duration;
 
 import java.io.IOException;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -32,19 +28,30 @@ public class LibraryController {
 
     @FXML
     private AnchorPane rootPane;
+    // Where the library's FXML came from, set by FXMLLoader; names the compiled level
+    @FXML
+    private URL location;
     @FXML
     private Label timerLabel;
 
     private Rectangle player;
     private final List<Node> collidableObjects = new ArrayList<>();
     private final List<Rectangle> books = new ArrayList<>();
+    // Bounds of the obstacles and books from the compiled level; book boxes follow the books list
+    private StaticGeometry obstacleGeometry = new StaticGeometry();
+    private StaticGeometry bookGeometry = new StaticGeometry();
     private final Set<Rectangle> touchedBooks = new HashSet<>();
     private Rectangle targetBook; // The book to search
 
-    private Timeline timer;
-    private int timeRemaining = 180; // 3 minutes in seconds
+    // 3 minutes on the shared GameClock
+    private final GameClock.Countdown timer = GameClock.countdown(180);
     private int popupCount = 0;
     private boolean gameInitialized = false;
+    // Held keys and the frame loop that walks the player with them
+    private final InputState input = new InputState();
+    private GameLoop loop;
+    // Toasts for wrong books, the player keeps searching while they show
+    private Notifications notifications;
 
     @FXML
 public void initialize() {
@@ -78,40 +85,27 @@ public void initialize() {
         books.clear();
         touchedBooks.clear();
 
-        // Identify all objects in the scene
-        for (Node node : rootPane.getChildren()) {
-            if (node instanceof Rectangle rect) {
-                Color color = (Color) rect.getFill();
-                String hex = color.toString().toLowerCase();
-
-                // Debug output for each rectangle
-                System.out.println("Rectangle found - ID: " + rect.getId() +
-                        ", Color: " + hex +
-                        ", Position: " + rect.getLayoutX() + ", " + rect.getLayoutY());
-
-                if (hex.equals("0xf20acfff") || hex.equals("#f20acf")) {
-                    player = rect; // Player (pink square)
-                    System.out.println("Player identified at: " + player.getLayoutX() + ", " + player.getLayoutY());
-                } else if (hex.equals("0xffff00ff") || hex.equals("0xffd700ff") || hex.equals("yellow")) {
-                    books.add(rect); // Books (yellow rectangles)
-
-                    // Check if this is the book with ID "1"
-                    if (rect.getId() != null && rect.getId().equals("1")) {
-                        targetBook = rect;
-                        System.out.println("Target book with ID '1' found at: " +
-                                targetBook.getLayoutX() + ", " + targetBook.getLayoutY());
-                    }
-                } else if (hex.equals("0x7b3f00ff") || hex.equals("#7b3f00") || // Brown shelves
-                        hex.equals("0x966f33ff") || hex.equals("#966f33") || // Brown tables
-                        hex.equals("0x808080ff") || hex.equals("grey") || // Grey objects
-                        hex.equals("0xa52a2aff") || hex.equals("brown")) { // Brown objects
-                    collidableObjects.add(rect); // Obstacles
-                }
-            } else if (node instanceof Line) {
-                collidableObjects.add(node); // Lines as obstacles
-                System.out.println("Line obstacle added");
+        // Identify all objects in the scene; the level compiler sorted them by color once:
+        // the pink player, yellow books, and shelves, tables and lines as obstacles
+        LevelData level = FxGeometry.level(location, rootPane);
+        if (level.count(LevelData.Kind.PLAYER) > 0) {
+            player = FxGeometry.node(level, LevelData.Kind.PLAYER, 0, rootPane, Rectangle.class);
+            System.out.println("Player identified at: " + player.getLayoutX() + ", " + player.getLayoutY());
+        }
+        for (int i = 0; i < level.count(LevelData.Kind.BOOK); i++) {
+            Rectangle book = FxGeometry.node(level, LevelData.Kind.BOOK, i, rootPane, Rectangle.class);
+            books.add(book);
+
+            // Check if this is the book with ID "1"
+            if (level.id(LevelData.Kind.BOOK, i) == 1) {
+                targetBook = book;
+                System.out.println("Target book with ID '1' found at: " +
+                        targetBook.getLayoutX() + ", " + targetBook.getLayoutY());
             }
         }
+        for (int i = 0; i < level.count(LevelData.Kind.OBSTACLE); i++) {
+            collidableObjects.add(FxGeometry.node(level, LevelData.Kind.OBSTACLE, i, rootPane, Node.class));
+        }
 
         // If target book wasn't found by ID, try to find it by position
         if (targetBook == null) {
@@ -150,6 +144,9 @@ public void initialize() {
             System.out.println("ERROR: Player not found!");
         }
 
+        obstacleGeometry = level.geometry(LevelData.Kind.OBSTACLE);
+        bookGeometry = level.geometry(LevelData.Kind.BOOK);
+
         System.out.println("Total books: " + books.size());
         System.out.println("Total obstacles: " + collidableObjects.size());
     }
@@ -196,75 +193,73 @@ public void initialize() {
         System.out.println("Starting game with timer...");
         gameInitialized = true;
         startTimer();
+        loop.start();
     }
 
     private void startTimer() {
         updateTimerDisplay();
 
-        timer = new Timeline(new KeyFrame(Duration.seconds(1), e -> {
-            timeRemaining--;
-            updateTimerDisplay();
-
-            if (timeRemaining <= 0) {
-                timer.stop();
-                loadLoseScene();
-            }
-        }));
-        timer.setCycleCount(Animation.INDEFINITE);
-        timer.play();
+        timer.onSecond(seconds -> updateTimerDisplay())
+                .onTimeUp(() -> {
+                    loop.stop();
+                    loadLoseScene();
+                });
+        timer.start();
     }
 
     private void updateTimerDisplay() {
-        int minutes = timeRemaining / 60;
-        int seconds = timeRemaining % 60;
-        timerLabel.setText(String.format("%02d:%02d", minutes, seconds));
+        timerLabel.setText(timer.format());
 
         // Change color to red when time is running out
-        if (timeRemaining <= 30) {
+        if (timer.getRemainingSeconds() <= 30) {
             timerLabel.setStyle(
                     "-fx-font-size: 16px; -fx-font-weight: bold; -fx-text-fill: red; -fx-background-color: white; -fx-padding: 5px;");
         }
     }
 
     private void setupKeyListener() {
+        notifications = new Notifications(rootPane);
+        loop = new GameLoop("Library", rootPane, input, GameLoop.DEFAULT_STEPS_PER_SECOND,
+                this::handleMovement, this::checkBookCollisions);
+
         // Direct approach - get the current scene and add listener
         Scene scene = rootPane.getScene();
         if (scene != null) {
-            scene.addEventFilter(KeyEvent.KEY_PRESSED, this::handleMovement);
+            input.attach(scene);
             System.out.println("Key listener attached to scene directly");
         } else {
             // Fallback: wait for scene to be set
             rootPane.sceneProperty().addListener((obs, oldScene, newScene) -> {
                 if (newScene != null) {
-                    newScene.addEventFilter(KeyEvent.KEY_PRESSED, this::handleMovement);
+                    input.attach(newScene);
                     System.out.println("Key listener attached to scene via property listener");
                 }
             });
         }
     }
 
-    private void handleMovement(KeyEvent event) {
+    /** One step of the frame loop, false if an obstacle was in the way */
+    private boolean handleMovement(KeyCode direction) {
         if (player == null) {
             System.out.println("Player is null, cannot move");
-            return;
+            return false;
         }
 
         // Only allow movement after game is initialized (popups finished)
         if (!gameInitialized) {
-            System.out.println("Game not initialized yet - waiting for popups to finish");
-            return;
+            return false;
         }
 
         double step = 3; // Increased step for better movement
         double dx = 0, dy = 0;
 
-        switch (event.getCode()) {
+        switch (direction) {
             case UP -> dy = -step;
             case DOWN -> dy = step;
             case LEFT -> dx = -step;
             case RIGHT -> dx = step;
             default -> {
-                return;
+                return false;
             } // Ignore other keys
         }
 
@@ -277,65 +272,45 @@ public void initialize() {
         player.setLayoutY(originalY + dy);
 
         // Check collision with obstacles
-        boolean collisionDetected = false;
-        for (Node obstacle : collidableObjects) {
-            if (checkCollision(player, obstacle)) {
-                collisionDetected = true;
-                System.out.println("Collision detected with obstacle");
-                break;
-            }
+        boolean collisionDetected = FxGeometry.firstIntersecting(obstacleGeometry, player) >= 0;
+        if (collisionDetected) {
+            System.out.println("Collision detected with obstacle");
         }
 
-        // If collision with obstacle, revert movement
+        // If collision with obstacle, revert movement; books are checked once per frame if we moved
         if (collisionDetected) {
             player.setLayoutX(originalX);
             player.setLayoutY(originalY);
-        } else {
-            // Only check book collisions if we actually moved
-            checkBookCollisions();
+            return false;
         }
-
-        event.consume(); // Prevent further processing of the key event
+        return true;
     }
 
     private void checkBookCollisions() {
-        if (targetBook == null)
+        if (targetBook == null || !loop.isRunning())
             return;
 
-        for (Rectangle book : books) {
-            if (checkCollision(player, book)) {
-                if (book == targetBook) {
-                    System.out.println("Target book found! Loading win scene...");
-                    timer.stop(); // Stop the timer when game is won
-                    loadWinScene();
-                } else if (!touchedBooks.contains(book)) {
-                    touchedBooks.add(book);
-                    book.setFill(Color.RED); // Mark book as checked
-                    System.out.println("Wrong book touched at: " + book.getLayoutX() + ", " + book.getLayoutY());
-                    showNotBookAlert();
-                }
-                break; // Only process one book collision per movement
-            }
-        }
-    }
+        // Only process one book collision per movement
+        int index = FxGeometry.firstIntersecting(bookGeometry, player);
+        if (index < 0)
+            return;
 
-    private boolean checkCollision(Node a, Node b) {
-        try {
-            Bounds boundsA = a.localToParent(a.getBoundsInLocal());
-            Bounds boundsB = b.localToParent(b.getBoundsInLocal());
-            return boundsA.intersects(boundsB);
-        } catch (Exception e) {
-            System.err.println("Error checking collision: " + e.getMessage());
-            return false;
+        Rectangle book = books.get(index);
+        if (book == targetBook) {
+            System.out.println("Target book found! Loading win scene...");
+            timer.pause(); // Stop the timer when game is won
+            loop.stop();
+            loadWinScene();
+        } else if (!touchedBooks.contains(book)) {
+            touchedBooks.add(book);
+            book.setFill(Color.RED); // Mark book as checked
+            System.out.println("Wrong book touched at: " + book.getLayoutX() + ", " + book.getLayoutY());
+            showNotBookAlert();
         }
     }
 
     private void showNotBookAlert() {
-        Alert alert = new Alert(AlertType.INFORMATION);
-        alert.setTitle("Not the book!");
-        alert.setHeaderText(null);
-        alert.setContentText("Ah! That's not the book");
-        alert.showAndWait();
+        notifications.show("Not the book!", "Ah! That's not the book");
     }
 
     private void loadWinScene() {
@@ -473,7 +448,7 @@ private void loadLoseScene() {
                 + (targetBook != null ? "at " + targetBook.getLayoutX() + ", " + targetBook.getLayoutY() : "null"));
         System.out.println("Books found: " + books.size());
         System.out.println("Books touched: " + touchedBooks.size());
-        System.out.println("Time remaining: " + timeRemaining + " seconds");
+        System.out.println("Time remaining: " + timer.getRemainingSeconds() + " seconds");
         System.out.println("Game initialized: " + gameInitialized);
         System.out.println("=================");
     }
@@ -0,0 +1,311 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous logger for the server and the multiplayer client.
+ *
+ * Callers only fill a slot of a preallocated ring buffer; one background thread formats the
+ * entries and appends them to a rolling file, so a log call never waits on disk or console I/O.
+ * Messages use {} placeholders and are only formatted on that thread. A call below the configured
+ * level returns before touching anything, and when the buffer is full the entry is dropped and
+ * counted rather than making the game wait.
+ *
+ * Lines look like: 2026-01-01T12:00:00.000Z INFO  [nio-loop-0] Match: [Match 3] Player 1 joined
+ *
+ * The level defaults to the log.level system property (INFO when unset).
+ */
+public final class Log {
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR, OFF
+    }
+
+    private static final int BUFFER_SIZE = 8192; // power of two
+    private static final long MAX_FILE_BYTES = 10L * 1024 * 1024;
+    private static final int MAX_FILES = 5;
+
+    private static volatile Level level = parseLevel(System.getProperty("log.level", "INFO"));
+    private static volatile Path file = Path.of("logs", "game.log");
+    private static volatile Thread writerThread;
+
+    // Multi-producer ring: a producer claims a sequence from head, fills the slot, then publishes
+    // it by storing the sequence in published. The single writer consumes in order.
+    private static final Entry[] entries = new Entry[BUFFER_SIZE];
+    private static final AtomicLongArray published = new AtomicLongArray(BUFFER_SIZE);
+    private static final AtomicLong head = new AtomicLong();
+    private static volatile long tail = 0;
+    private static final AtomicLong dropped = new AtomicLong();
+
+    static {
+        for (int i = 0; i < BUFFER_SIZE; i++) {
+            entries[i] = new Entry();
+            published.set(i, -1);
+        }
+    }
+
+    private final String name;
+
+    private Log(String name) {
+        this.name = name;
+    }
+
+    public static Log get(String name) {
+        return new Log(name);
+    }
+
+    /** Choose the file and level, call before the first message to avoid writing to the default file */
+    public static void configure(Path logFile, Level minimumLevel) {
+        file = logFile;
+        level = minimumLevel;
+    }
+
+    public static Level parseLevel(String value) {
+        return Level.valueOf(value.trim().toUpperCase());
+    }
+
+    public static long getDropped() {
+        return dropped.get();
+    }
+
+    public boolean isDebugEnabled() {
+        return level == Level.DEBUG;
+    }
+
+    public void debug(String message) {
+        log(Level.DEBUG, message, null, null, null, null);
+    }
+
+    public void debug(String message, Object a) {
+        log(Level.DEBUG, message, a, null, null, null);
+    }
+
+    public void debug(String message, Object a, Object b) {
+        log(Level.DEBUG, message, a, b, null, null);
+    }
+
+    public void debug(String message, Object a, Object b, Object c) {
+        log(Level.DEBUG, message, a, b, c, null);
+    }
+
+    public void info(String message) {
+        log(Level.INFO, message, null, null, null, null);
+    }
+
+    public void info(String message, Object a) {
+        log(Level.INFO, message, a, null, null, null);
+    }
+
+    public void info(String message, Object a, Object b) {
+        log(Level.INFO, message, a, b, null, null);
+    }
+
+    public void info(String message, Object a, Object b, Object c) {
+        log(Level.INFO, message, a, b, c, null);
+    }
+
+    public void warn(String message) {
+        log(Level.WARN, message, null, null, null, null);
+    }
+
+    public void warn(String message, Object a) {
+        log(Level.WARN, message, a, null, null, null);
+    }
+
+    public void warn(String message, Object a, Object b) {
+        log(Level.WARN, message, a, b, null, null);
+    }
+
+    public void warn(String message, Object a, Object b, Object c) {
+        log(Level.WARN, message, a, b, c, null);
+    }
+
+    public void error(String message, Object a) {
+        log(Level.ERROR, message, a, null, null, null);
+    }
+
+    public void error(String message, Throwable error) {
+        log(Level.ERROR, message, null, null, null, error);
+    }
+
+    public void error(String message, Object a, Throwable error) {
+        log(Level.ERROR, message, a, null, null, error);
+    }
+
+    private void log(Level messageLevel, String message, Object a, Object b, Object c, Throwable error) {
+        if (messageLevel.ordinal() < level.ordinal()) {
+            return;
+        }
+        startWriter();
+
+        long sequence;
+        do {
+            sequence = head.get();
+            if (sequence - tail >= BUFFER_SIZE) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!head.compareAndSet(sequence, sequence + 1));
+
+        int index = (int) (sequence & (BUFFER_SIZE - 1));
+        Entry entry = entries[index];
+        entry.time = System.currentTimeMillis();
+        entry.level = messageLevel;
+        entry.thread = Thread.currentThread().getName();
+        entry.logger = name;
+        entry.message = message;
+        entry.a = a;
+        entry.b = b;
+        entry.c = c;
+        entry.error = error;
+        published.set(index, sequence);
+    }
+
+    private static void startWriter() {
+        if (writerThread != null) return;
+        synchronized (Log.class) {
+            if (writerThread != null) return;
+            Thread thread = new Thread(Log::drain, "log-writer");
+            thread.setDaemon(true);
+            thread.start();
+            // Whatever is still in the ring when the JVM exits gets written out
+            Runtime.getRuntime().addShutdownHook(new Thread(Log::flushRemaining, "log-flush"));
+            writerThread = thread;
+        }
+    }
+
+    // Writer thread state, only touched by drain() or the shutdown hook after it
+    private static Writer out;
+    private static long fileBytes;
+    private static final StringBuilder line = new StringBuilder(256);
+
+    private static void drain() {
+        while (true) {
+            synchronized (Log.class) {
+                if (!writeAvailable()) {
+                    flushQuietly();
+                }
+            }
+            LockSupport.parkNanos(2_000_000L);
+        }
+    }
+
+    private static void flushRemaining() {
+        synchronized (Log.class) {
+            writeAvailable();
+            flushQuietly();
+        }
+    }
+
+    // Write every published entry, returns whether anything was written. Caller holds Log.class
+    private static boolean writeAvailable() {
+        boolean wrote = false;
+        long sequence = tail;
+        while (true) {
+            int index = (int) (sequence & (BUFFER_SIZE - 1));
+            if (published.get(index) != sequence) break;
+            Entry entry = entries[index];
+            format(entry);
+            entry.clear();
+            tail = ++sequence;
+            write();
+            wrote = true;
+        }
+        return wrote;
+    }
+
+    private static void format(Entry entry) {
+        line.setLength(0);
+        line.append(Instant.ofEpochMilli(entry.time)).append(' ');
+        String levelName = entry.level.name();
+        line.append(levelName);
+        for (int i = levelName.length(); i < 5; i++) line.append(' ');
+        line.append(" [").append(entry.thread).append("] ").append(entry.logger).append(": ");
+
+        Object[] args = {entry.a, entry.b, entry.c};
+        int arg = 0;
+        String message = entry.message;
+        for (int i = 0; i < message.length(); i++) {
+            char ch = message.charAt(i);
+            if (ch == '{' && i + 1 < message.length() && message.charAt(i + 1) == '}' && arg < args.length) {
+                line.append(args[arg++]);
+                i++;
+            } else {
+                line.append(ch);
+            }
+        }
+        if (entry.error != null) {
+            line.append(" error=").append(entry.error);
+        }
+        line.append('\n');
+    }
+
+    private static void write() {
+        try {
+            if (out == null || fileBytes >= MAX_FILE_BYTES) {
+                roll();
+            }
+            out.append(line);
+            fileBytes += line.length();
+        } catch (IOException e) {
+            // Nowhere better to report it, fall back to the console for this line
+            System.err.print(line);
+        }
+    }
+
+    // Start a fresh file, keeping game.log.1 .. game.log.N-1 as the previous ones
+    private static void roll() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        Path current = file;
+        if (current.getParent() != null) {
+            Files.createDirectories(current.getParent());
+        }
+        if (Files.exists(current) && Files.size(current) > 0) {
+            for (int i = MAX_FILES - 1; i >= 1; i--) {
+                Path older = Path.of(current + "." + i);
+                Path source = i == 1 ? current : Path.of(current + "." + (i - 1));
+                if (Files.exists(source)) {
+                    Files.move(source, older, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+        out = new BufferedWriter(Files.newBufferedWriter(current, StandardCharsets.UTF_8), 64 * 1024);
+        fileBytes = 0;
+    }
+
+    private static void flushQuietly() {
+        if (out == null) return;
+        try {
+            out.flush();
+        } catch (IOException e) {
+            // keep going, the next write reports it
+        }
+    }
+
+    private static class Entry {
+        long time;
+        Level level;
+        String thread;
+        String logger;
+        String message;
+        Object a, b, c;
+        Throwable error;
+
+        void clear() {
+            thread = null;
+            message = null;
+            a = b = c = null;
+            error = null;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 import javafx.application.Application;
 import javafx.stage.Stage;
 
+import java.nio.file.Path;
+
 public class MainApplication extends Application {
     
     private static Stage primaryStage;
@@ -38,6 +40,7 @@ public class MainApplication extends Application {
     }
     
     public static void main(String[] args) {
+        Log.configure(Path.of("logs", "client.log"), Log.parseLevel(System.getProperty("log.level", "INFO")));
         launch(args);
     }
 }
\ No newline at end of file
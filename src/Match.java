@@ -0,0 +1,569 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+
+/** One BFS race hosted by the GameServer: its own players, state, timer and result */
+public class Match {
+    private static final Log log = Log.get("Match");
+    private final int matchId;
+    private final Set<ClientHandler> clients = ConcurrentHashMap.newKeySet();
+    private final GameState gameState = new GameState();
+    // Every player's position, rooms and floor as the server simulates them, by player id
+    private final Map<Integer, MovementSimulation> movement = new ConcurrentHashMap<>();
+    private volatile boolean started = false;
+    private volatile boolean gameCompleted = false;
+    private boolean finished = false;
+    private int winnerId = -1;
+    private long startedAt;
+    // Match start and end in System.nanoTime(), sent to the clients with START_GAME
+    private long startNanos;
+    private long deadlineNanos;
+
+    // Everything the match sees, for replaying it later; null unless the server records matches
+    private volatile MatchRecorder recorder;
+
+    // Deadline task scheduled on the server's shared timer
+    private TimerTask timeUpTask;
+    // Players whose connection dropped, with the task that gives up their slot after the grace period
+    private final Map<ClientHandler, TimerTask> away = new HashMap<>();
+
+    // Scratch space for the tick thread, one slot per player
+    private final int[] tickIds = new int[GameServer.PLAYERS_PER_MATCH];
+    private final double[] tickXs = new double[GameServer.PLAYERS_PER_MATCH];
+    private final double[] tickYs = new double[GameServer.PLAYERS_PER_MATCH];
+    // State version the last tick's position broadcast covered
+    private long lastTickVersion = 0;
+    // Snapshots encoded this tick, keyed by the base version they were built on
+    private final Map<Long, ByteBuffer> tickSnapshots = new HashMap<>();
+
+    public Match(int matchId) {
+        this.matchId = matchId;
+    }
+
+    /** Add a player to a match that has not started yet, returns the assigned player id or -1 if full */
+    public synchronized int addPlayer(ClientHandler client) {
+        if (started || clients.size() >= GameServer.PLAYERS_PER_MATCH) {
+            return -1;
+        }
+
+        // Reuse the lowest free id so a player who left the lobby doesn't leave a gap
+        int playerId = 1;
+        boolean taken = true;
+        while (taken) {
+            taken = false;
+            for (ClientHandler c : clients) {
+                if (c.getPlayerId() == playerId) {
+                    taken = true;
+                    playerId++;
+                    break;
+                }
+            }
+        }
+
+        client.joinMatch(this, playerId);
+        clients.add(client);
+        log.info("[Match {}] Player {} joined", matchId, playerId);
+        return playerId;
+    }
+
+    public synchronized boolean isFull() {
+        return clients.size() >= GameServer.PLAYERS_PER_MATCH;
+    }
+
+    public synchronized void start() {
+        if (started) return;
+        started = true;
+        startedAt = System.currentTimeMillis();
+        MovementSimulation.Floor[] floors;
+        try {
+            floors = MovementSimulation.floors();
+        } catch (java.io.IOException e) {
+            throw new IllegalStateException("Floor levels not available", e);
+        }
+        for (ClientHandler client : clients) {
+            movement.put(client.getPlayerId(), new MovementSimulation(floors));
+        }
+        log.info("[Match {}] Game starting with {} players!", matchId, clients.size());
+        startRecording();
+        startNanos = System.nanoTime();
+        deadlineNanos = startNanos + GameServer.GAME_DURATION * 1_000_000_000L;
+        startGameTimer();
+        broadcastToAll("START_GAME:" + startNanos + ":" + deadlineNanos);
+    }
+
+    private void startRecording() {
+        if (GameServer.getRecordDir() == null) return;
+        try {
+            MatchRecorder opened = MatchRecorder.open(GameServer.getRecordDir(), matchId);
+            for (ClientHandler client : clients) {
+                opened.player(client.getPlayerId(), (client.usesBinaryProtocol() ? MatchRecorder.FLAG_BINARY : 0)
+                        | (client.usesSnapshots() ? MatchRecorder.FLAG_SNAPSHOT : 0)
+                        | (client.usesInput() ? MatchRecorder.FLAG_INPUT : 0));
+            }
+            recorder = opened;
+        } catch (IOException e) {
+            log.warn("[Match {}] Not recorded: {}", matchId, e.getMessage());
+        }
+    }
+
+    /** A text line from a player, recorded before the match acts on it */
+    void recordReceived(int playerId, String line) {
+        MatchRecorder r = recorder;
+        if (r != null) r.received(playerId, line);
+    }
+
+    void recordFrame(int playerId, float x, float y) {
+        MatchRecorder r = recorder;
+        if (r != null) r.frame(playerId, x, y);
+    }
+
+    private void startGameTimer() {
+        timeUpTask = new TimerTask() {
+            @Override
+            public void run() {
+                handleTimeUp();
+            }
+        };
+        // Fires at the deadline the clients count down to
+        long delayMillis = Math.max(0, (deadlineNanos - System.nanoTime()) / 1_000_000L);
+        GameServer.getScheduler().schedule(timeUpTask, delayMillis);
+    }
+
+    private synchronized void handleTimeUp() {
+        if (!gameCompleted) {
+            gameCompleted = true;
+            log.info("[Match {}] Time's up! No player found the IT room.", matchId);
+
+            // Send defeat to all players
+            sendToAll("TIME_UP_DEFEAT", OutboundQueue.Delivery.RELIABLE);
+            scheduleClose();
+        }
+    }
+
+    public void broadcastToAll(String message) {
+        if (gameCompleted && (message.startsWith("VICTORY") || message.startsWith("TIME_UP_DEFEAT"))) {
+            return; // Prevent multiple victory/time-up messages
+        }
+        sendToAll(message, OutboundQueue.Delivery.NORMAL);
+    }
+
+    private void sendToAll(String message, OutboundQueue.Delivery delivery) {
+        if (log.isDebugEnabled()) {
+            log.debug("[Match {}] Broadcasting: {}", matchId, message);
+        }
+        long start = System.nanoTime();
+        MatchRecorder r = recorder;
+        if (r != null) r.broadcast(message);
+        GameServer.getSpectators().publish(matchId, message, delivery);
+        // Encode once, every recipient gets a view of the same bytes
+        ByteBuffer frame = WireProtocol.encodeText(message);
+        Iterator<ClientHandler> iterator = clients.iterator();
+        while (iterator.hasNext()) {
+            ClientHandler client = iterator.next();
+            try {
+                client.sendFrame(frame, delivery);
+            } catch (Exception e) {
+                log.warn("Error sending to client {}: {}", client.getPlayerId(), e.getMessage());
+                iterator.remove();
+            }
+        }
+        ServerMetrics.eventFanout.record(System.nanoTime() - start);
+    }
+
+    /** A key press from a client that sends inputs, the resulting position goes out with the next tick */
+    public void playerMoved(int playerId, char direction, long input) {
+        GameServer.countUpdateReceived();
+        MovementSimulation player = movement.get(playerId);
+        if (player != null) {
+            applyMove(playerId, player, player.move(direction, input));
+        }
+    }
+
+    /**
+     * A position from a client that moves itself. It only counts as one legal step from where the
+     * server has the player, anything else is rejected.
+     */
+    public void updatePlayerPosition(int playerId, double x, double y) {
+        GameServer.countUpdateReceived();
+        MovementSimulation player = movement.get(playerId);
+        if (player == null) return;
+        MovementSimulation.Outcome outcome = player.moveTo(x, y);
+        if (outcome == MovementSimulation.Outcome.BLOCKED) {
+            GameServer.countPositionRejected();
+            if (log.isDebugEnabled()) {
+                log.debug("[Match {}] Rejected position {} from player {}", matchId, x + ", " + y, playerId);
+            }
+        }
+        applyMove(playerId, player, outcome);
+    }
+
+    private void applyMove(int playerId, MovementSimulation player, MovementSimulation.Outcome outcome) {
+        if (outcome == MovementSimulation.Outcome.BLOCKED) return;
+        gameState.updatePlayerPosition(playerId, player.getX(), player.getY());
+        if (outcome == MovementSimulation.Outcome.MOVED) return;
+
+        for (int room = player.getFirstRoom(); room <= player.getLastRoom(); room++) {
+            roomVisited(playerId, room);
+        }
+        if (outcome == MovementSimulation.Outcome.WON) {
+            handleVictory(playerId);
+        }
+    }
+
+    /**
+     * Snapshot clients get the delta since the version they last acknowledged, everyone else
+     * gets every player's position as one batch whenever one of them changed since the last tick.
+     * Input clients also get a MOVE_ACK with their newest applied key press.
+     */
+    void tick() {
+        if (!started || gameCompleted) return;
+
+        long version = gameState.getVersion();
+        int count = 0;
+        if (version > lastTickVersion) {
+            int changed = gameState.changedPositions(lastTickVersion, tickIds, tickXs, tickYs);
+            lastTickVersion = version;
+            GameServer.getSpectators().positions(matchId, changed, tickIds, tickXs, tickYs);
+            MatchRecorder r = recorder;
+            if (r != null) r.positions(changed, tickIds, tickXs, tickYs);
+            // A batch replaces the one still queued, so it has to carry the players that didn't move too
+            if (changed > 0) {
+                count = gameState.changedPositions(0, tickIds, tickXs, tickYs);
+            }
+        }
+
+        long now = System.nanoTime();
+        tickSnapshots.clear();
+        // Binary clients get the frames, the rest the text lines, each batch encoded at most once
+        ByteBuffer binaryBatch = null;
+        ByteBuffer textBatch = null;
+        int recipients = 0;
+        for (ClientHandler client : clients) {
+            ByteBuffer frame = null;
+            if (client.usesSnapshots()) {
+                if (client.snapshotDue(version, now)) {
+                    long base = client.getAckedVersion();
+                    frame = tickSnapshots.get(base);
+                    if (frame == null) {
+                        frame = WireProtocol.encodeText("SNAPSHOT:" + version + ":" + base + ":" + gameState.encodeDelta(base));
+                        tickSnapshots.put(base, frame);
+                    }
+                    client.snapshotSent(version, now);
+                    GameServer.countSnapshotSent();
+                }
+            } else if (count > 0) {
+                if (client.usesBinaryProtocol()) {
+                    if (binaryBatch == null) {
+                        binaryBatch = ByteBuffer.allocate(count * WireProtocol.POSITION_FRAME_LENGTH);
+                        for (int i = 0; i < count; i++) {
+                            WireProtocol.encodePosition(binaryBatch, tickIds[i], (float) tickXs[i], (float) tickYs[i]);
+                        }
+                        binaryBatch.flip();
+                    }
+                    frame = binaryBatch;
+                } else {
+                    if (textBatch == null) {
+                        StringBuilder lines = new StringBuilder();
+                        for (int i = 0; i < count; i++) {
+                            if (i > 0) lines.append('\n');
+                            lines.append("PLAYER_POSITION:").append(tickIds[i])
+                                    .append(':').append(tickXs[i]).append(':').append(tickYs[i]);
+                        }
+                        textBatch = WireProtocol.encodeText(lines.toString());
+                    }
+                    frame = textBatch;
+                }
+                recipients++;
+            }
+
+            // Not part of the LATEST frame, a newer batch without an ack would replace it unsent
+            ByteBuffer ack = client.usesInput() ? moveAck(client) : null;
+            if (ack != null) {
+                client.sendFrame(ack, OutboundQueue.Delivery.NORMAL);
+            }
+            if (frame != null) {
+                client.sendFrame(frame, OutboundQueue.Delivery.LATEST);
+            }
+        }
+        GameServer.countUpdatesSent(count * recipients);
+    }
+
+    /**
+     * MOVE_ACK:<input>:<x>:<y>, the newest key press the server applied for this client and where
+     * it left the player. Null when nothing was applied since the last one.
+     */
+    private ByteBuffer moveAck(ClientHandler client) {
+        MovementSimulation player = movement.get(client.getPlayerId());
+        if (player == null) return null;
+        long input;
+        double x, y;
+        synchronized (player) {
+            input = player.getLastInput();
+            x = player.getX();
+            y = player.getY();
+        }
+        if (input == client.getSentInputAck()) return null;
+        client.inputAckSent(input);
+        return WireProtocol.encodeText("MOVE_ACK:" + input + ":" + x + ":" + y);
+    }
+
+    // Snapshot clients learn about these from their next snapshot, the rest get the event itself
+    public void playerCollectedItem(int playerId, String itemId) {
+        gameState.collectItem(playerId, itemId);
+        sendToLegacyClients("ITEM_COLLECTED:" + playerId + ":" + itemId);
+    }
+
+    private void roomVisited(int playerId, int roomId) {
+        gameState.visitRoom(playerId, roomId);
+        sendToLegacyClients("ROOM_VISITED:" + playerId + ":" + roomId);
+    }
+
+    /** The player took a lift, only allowed when the simulation has them on an unlocked one */
+    public void playerChangedFloor(int playerId, String floor) {
+        MovementSimulation player = movement.get(playerId);
+        if (player == null || !player.changeFloor(floor)) {
+            log.warn("[Match {}] Player {} can't go to {} from here", matchId, playerId, floor);
+            return;
+        }
+        gameState.changeFloor(playerId, floor);
+        gameState.updatePlayerPosition(playerId, player.getX(), player.getY());
+        sendToLegacyClients("FLOOR_CHANGED:" + playerId + ":" + floor);
+    }
+
+    private void sendToLegacyClients(String message) {
+        if (log.isDebugEnabled()) {
+            log.debug("[Match {}] Event: {}", matchId, message);
+        }
+        MatchRecorder r = recorder;
+        if (r != null) r.broadcast(message);
+        GameServer.getSpectators().publish(matchId, message, OutboundQueue.Delivery.NORMAL);
+        ByteBuffer frame = null;
+        for (ClientHandler client : clients) {
+            if (!client.usesSnapshots()) {
+                if (frame == null) frame = WireProtocol.encodeText(message);
+                client.sendFrame(frame);
+            }
+        }
+    }
+
+    // Send VICTORY to the winner and DEFEAT to everyone else in this match
+    public synchronized void handleVictory(int playerId) {
+        if (!gameCompleted) {
+            gameCompleted = true;
+            winnerId = playerId;
+            log.info("[Match {}] Player {} won the game!", matchId, playerId);
+
+            // Cancel the game timer since someone won
+            if (timeUpTask != null) {
+                timeUpTask.cancel();
+            }
+
+            MatchRecorder r = recorder;
+            if (r != null) r.broadcast("VICTORY:" + playerId);
+            GameServer.getSpectators().publish(matchId, "VICTORY:" + playerId, OutboundQueue.Delivery.RELIABLE);
+            for (ClientHandler client : clients) {
+                if (client.getPlayerId() == playerId) {
+                    client.sendReliable("VICTORY:" + playerId);
+                } else {
+                    client.sendReliable("DEFEAT:The other player reached IT room first!");
+                }
+            }
+
+            scheduleClose();
+        }
+    }
+
+    public void removeClient(ClientHandler client) {
+        MatchRecorder r = recorder;
+        if (r != null && clients.contains(client)) r.disconnect(client.getPlayerId());
+        if (holdSlot(client)) {
+            return;
+        }
+        dropClient(client);
+    }
+
+    // A player with a session who drops mid-match keeps their slot for a while, they may come back
+    private boolean holdSlot(ClientHandler client) {
+        synchronized (this) {
+            if (!started || gameCompleted || client.getSessionToken() == null || !clients.contains(client)
+                    || away.containsKey(client)) {
+                return false;
+            }
+            TimerTask giveUp = new TimerTask() {
+                @Override
+                public void run() {
+                    slotExpired(client);
+                }
+            };
+            away.put(client, giveUp);
+            GameServer.getScheduler().schedule(giveUp, GameServer.getResumeGraceMillis());
+        }
+        log.info("[Match {}] Player {} dropped, holding the slot for {} ms", matchId, client.getPlayerId(),
+                GameServer.getResumeGraceMillis());
+        sendToResumable("PLAYER_AWAY:" + client.getPlayerId());
+        return true;
+    }
+
+    private void slotExpired(ClientHandler client) {
+        synchronized (this) {
+            if (away.remove(client) == null) return;
+        }
+        log.info("[Match {}] Player {} did not come back", matchId, client.getPlayerId());
+        dropClient(client);
+    }
+
+    /**
+     * A player is back on a new connection: it takes the old one's place, gets its own position and
+     * the whole state. Also works before the old connection was noticed to be gone, which is then
+     * closed. Returns false when the match has ended or the player already left it.
+     */
+    boolean resume(ClientHandler dropped, ClientHandler back) {
+        synchronized (this) {
+            if (gameCompleted || !clients.contains(dropped)) {
+                return false;
+            }
+            TimerTask giveUp = away.remove(dropped);
+            if (giveUp != null) {
+                giveUp.cancel();
+            }
+            back.resumeFrom(dropped);
+            clients.remove(dropped);
+            clients.add(back);
+        }
+        dropped.closeConnection(); // already closed, or half open and never heard from again
+
+        int playerId = back.getPlayerId();
+        log.info("[Match {}] Player {} resumed", matchId, playerId);
+        MovementSimulation player = movement.get(playerId);
+        back.sendReliable("RESUMED:" + playerId + ":" + player.getX() + ":" + player.getY());
+        if (back.usesSnapshots()) {
+            long version = gameState.getVersion();
+            back.sendReliable("SNAPSHOT:" + version + ":0:" + gameState.encodeDelta(0));
+            back.snapshotSent(version, System.nanoTime());
+        }
+        sendToResumable("PLAYER_BACK:" + playerId);
+        return true;
+    }
+
+    // Only clients that know about resuming understand these
+    private void sendToResumable(String message) {
+        for (ClientHandler client : clients) {
+            if (client.usesResume()) {
+                client.sendMessage(message);
+            }
+        }
+    }
+
+    private void dropClient(ClientHandler client) {
+        ClientHandler remaining = null;
+        boolean lobby = false;
+        boolean abandoned = false;
+        synchronized (this) {
+            if (!clients.remove(client)) return;
+            log.info("[Match {}] Player {} disconnected", matchId, client.getPlayerId());
+
+            if (!started) {
+                lobby = true;
+            } else if (clients.size() == 1 && !gameCompleted) {
+                remaining = clients.iterator().next();
+                // Dropped too and still inside its grace period, nobody is left to win
+                abandoned = away.containsKey(remaining);
+            }
+        }
+
+        if (lobby) {
+            // Still in the lobby, the slot simply opens up again and the session goes with it
+            GameServer.closeSession(client);
+            return;
+        }
+
+        if (abandoned) {
+            log.info("[Match {}] Both players gone, match abandoned", matchId);
+            finish();
+        } else if (remaining != null) {
+            // If a player disconnects, the other player wins
+            handleVictory(remaining.getPlayerId());
+        } else if (clients.isEmpty()) {
+            finish();
+        }
+    }
+
+    // Close all connections after a delay so the result messages get through
+    private void scheduleClose() {
+        GameServer.getScheduler().schedule(new TimerTask() {
+            @Override
+            public void run() {
+                closeAllConnections();
+            }
+        }, 5000);
+    }
+
+    private void closeAllConnections() {
+        log.info("[Match {}] Closing all connections...", matchId);
+        for (ClientHandler client : clients) {
+            try {
+                client.closeConnection();
+            } catch (Exception e) {
+                log.warn("Error closing client connection: {}", e.getMessage());
+            }
+        }
+        clients.clear();
+        finish();
+    }
+
+    private void finish() {
+        synchronized (this) {
+            if (finished) return; // the last drop and the delayed close can both get here
+            finished = true;
+        }
+        if (timeUpTask != null) {
+            timeUpTask.cancel();
+        }
+        synchronized (this) {
+            away.values().forEach(TimerTask::cancel);
+            away.clear();
+        }
+        gameCompleted = true;
+        GameServer.matchFinished(this);
+        MatchRecorder r = recorder;
+        if (r != null) {
+            r.close();
+            log.info("[Match {}] Recorded to {}", matchId, r.getFile());
+        }
+        if (started) {
+            ServerMetrics.matchDuration.record(System.nanoTime() - startNanos);
+            long seconds = (System.currentTimeMillis() - startedAt) / 1000;
+            log.info("[Match {}] Finished after {}s, winner: {}", matchId, seconds,
+                    winnerId == -1 ? "none" : "Player " + winnerId);
+        }
+    }
+
+    /** Catch a spectator up with a running match: its start and deadline, then the whole state */
+    void describeTo(ClientHandler spectator) {
+        if (!started || gameCompleted) return;
+        spectator.sendMessage(SpectatorFeed.line(matchId, "START_GAME:" + startNanos + ":" + deadlineNanos));
+        spectator.sendMessage(SpectatorFeed.line(matchId,
+                "SNAPSHOT:" + gameState.getVersion() + ":0:" + gameState.encodeDelta(0)));
+    }
+
+    public boolean isGameCompleted() {
+        return gameCompleted;
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    public int getMatchId() {
+        return matchId;
+    }
+
+    Collection<ClientHandler> getClients() {
+        return Collections.unmodifiableSet(clients);
+    }
+
+    public int getPlayerCount() {
+        return clients.size();
+    }
+}
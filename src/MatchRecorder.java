@@ -0,0 +1,253 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Append-only binary log of one match, for replaying it later (tools/MatchReplay): what every
+ * player sent, what the match broadcast and where the players were after each tick.
+ *
+ * File: header, then records until the end of the file.
+ *   header    int magic "BFSR", short format, int match id, long start (epoch millis)
+ *   record    byte type, byte player, varint micros since the previous record, body
+ *
+ *   PLAYER      body: byte flags (1 binary, 2 snapshot, 4 input), a player of the match
+ *   RECEIVED    body: varint length, ASCII bytes; a text line from the player
+ *   FRAME       body: float x, float y; a binary position frame from the player
+ *   BROADCAST   body: varint length, ASCII bytes; an event of the match, as spectators see it
+ *   POSITIONS   body: byte count, then byte player, float x, float y each; after a tick
+ *   DISCONNECT  body: none; the player's connection dropped
+ *
+ * Recording never waits for the disk. Records go into a heap buffer under the recorder's lock,
+ * and a full buffer is handed to one writer thread shared by all matches.
+ */
+final class MatchRecorder {
+    private static final Log log = Log.get("MatchRecorder");
+    static final int MAGIC = 0x42465352; // "BFSR"
+    static final short FORMAT = 1;
+    static final byte PLAYER = 1;
+    static final byte RECEIVED = 2;
+    static final byte FRAME = 3;
+    static final byte BROADCAST = 4;
+    static final byte POSITIONS = 5;
+    static final byte DISCONNECT = 6;
+    static final int FLAG_BINARY = 1;
+    static final int FLAG_SNAPSHOT = 2;
+    static final int FLAG_INPUT = 4;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Longest record header: type, player, a 10 byte varint, a 5 byte length
+    private static final int RECORD_HEADER = 17;
+
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "match-recorder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path file;
+    private final FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long lastNanos = System.nanoTime();
+    private boolean closed = false;
+
+    private MatchRecorder(Path file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    /** A new recording in dir, named after the match and the time it started */
+    static MatchRecorder open(Path dir, int matchId) throws IOException {
+        Files.createDirectories(dir);
+        long started = System.currentTimeMillis();
+        Path file = dir.resolve("match-" + matchId + "-" + started + ".rec");
+        MatchRecorder recorder = new MatchRecorder(file, FileChannel.open(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+        recorder.buffer.putInt(MAGIC).putShort(FORMAT).putInt(matchId).putLong(started);
+        return recorder;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    synchronized void player(int playerId, int flags) {
+        if (!begin(PLAYER, playerId, 1)) return;
+        buffer.put((byte) flags);
+    }
+
+    synchronized void received(int playerId, String line) {
+        text(RECEIVED, playerId, line);
+    }
+
+    synchronized void frame(int playerId, float x, float y) {
+        if (!begin(FRAME, playerId, 8)) return;
+        buffer.putFloat(x).putFloat(y);
+    }
+
+    synchronized void broadcast(String message) {
+        text(BROADCAST, 0, message);
+    }
+
+    synchronized void positions(int count, int[] ids, double[] xs, double[] ys) {
+        if (count == 0 || !begin(POSITIONS, 0, 1 + count * 9)) return;
+        buffer.put((byte) count);
+        for (int i = 0; i < count; i++) {
+            buffer.put((byte) ids[i]).putFloat((float) xs[i]).putFloat((float) ys[i]);
+        }
+    }
+
+    synchronized void disconnect(int playerId) {
+        begin(DISCONNECT, playerId, 0);
+    }
+
+    /** Write what is left and close the file, later records are ignored */
+    synchronized void close() {
+        if (closed) return;
+        closed = true;
+        ByteBuffer last = buffer.flip();
+        buffer = null;
+        writer.execute(() -> {
+            write(last);
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Could not close recording {}: {}", file, e.getMessage());
+            }
+        });
+    }
+
+    // Protocol lines are ASCII, anything else is stored as '?'
+    private void text(byte type, int playerId, String line) {
+        int length = line.length();
+        if (!begin(type, playerId, 5 + length)) return;
+        putVarint(length);
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            buffer.put(c < 0x80 ? (byte) c : (byte) '?');
+        }
+    }
+
+    /** Record header, with room for a body of up to bodyBytes; false once closed */
+    private boolean begin(byte type, int playerId, int bodyBytes) {
+        if (closed) return false;
+        int needed = RECORD_HEADER + bodyBytes;
+        if (buffer.remaining() < needed) {
+            ByteBuffer full = buffer.flip();
+            writer.execute(() -> write(full));
+            buffer = ByteBuffer.allocate(Math.max(BUFFER_SIZE, needed));
+        }
+        long now = System.nanoTime();
+        long micros = (now - lastNanos) / 1000;
+        // Keep the remainder, so rounding doesn't make a long recording drift
+        lastNanos += micros * 1000;
+        buffer.put(type).put((byte) playerId);
+        putVarint(micros);
+        return true;
+    }
+
+    private void putVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    // Only the writer thread gets here
+    private void write(ByteBuffer data) {
+        try {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        } catch (IOException e) {
+            log.warn("Could not write recording {}: {}", file, e.getMessage());
+        }
+    }
+
+    /** Reads a recording back one record at a time */
+    static final class Reader {
+        private final ByteBuffer data;
+        final int matchId;
+        final long startedMillis;
+
+        // The current record
+        byte type;
+        int player;
+        long micros; // since the start of the recording
+        String text;
+        float x;
+        float y;
+        int flags;
+        int count;
+        final int[] ids = new int[256];
+        final float[] xs = new float[256];
+        final float[] ys = new float[256];
+
+        Reader(Path file) throws IOException {
+            data = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (data.remaining() < 18 || data.getInt() != MAGIC) {
+                throw new IOException(file + " is not a match recording");
+            }
+            short format = data.getShort();
+            if (format != FORMAT) {
+                throw new IOException(file + " has recording format " + format + ", expected " + FORMAT);
+            }
+            matchId = data.getInt();
+            startedMillis = data.getLong();
+        }
+
+        /** Move to the next record, false at the end of the file or a record cut short */
+        boolean next() {
+            if (data.remaining() < 3) return false;
+            try {
+                type = data.get();
+                player = data.get() & 0xFF;
+                micros += getVarint();
+                switch (type) {
+                    case PLAYER -> flags = data.get();
+                    case RECEIVED, BROADCAST -> {
+                        byte[] bytes = new byte[(int) getVarint()];
+                        data.get(bytes);
+                        text = new String(bytes, StandardCharsets.US_ASCII);
+                    }
+                    case FRAME -> {
+                        x = data.getFloat();
+                        y = data.getFloat();
+                    }
+                    case POSITIONS -> {
+                        count = data.get() & 0xFF;
+                        for (int i = 0; i < count; i++) {
+                            ids[i] = data.get() & 0xFF;
+                            xs[i] = data.getFloat();
+                            ys[i] = data.getFloat();
+                        }
+                    }
+                    case DISCONNECT -> {
+                    }
+                    default -> {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (BufferUnderflowException e) {
+                return false; // the server stopped in the middle of writing it
+            }
+        }
+
+        private long getVarint() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data.get();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * One player's movement through the multiplayer floors, simulated on the server with the same
+ * rules MultiplayerController.handleKeyPress applies: a fixed step per key, blocked by walls,
+ * line barriers and washroom blocks, classroom doors visited in id order, lifts unlocked once every
+ * door of the floor is visited, and the IT room (door 22 on the top floor) wins.
+ *
+ * Geometry comes from the compiled levels (LevelData), nothing here touches JavaFX. A simulation
+ * is only driven by its own player's connection, the methods are synchronized for the odd
+ * message that arrives on another thread.
+ */
+final class MovementSimulation {
+    static final double STEP = 5;
+    static final String[] FLOOR_NAMES = {"Ground Floor", "First Floor", "Top Floor"};
+    static final String[] FLOOR_FXML = {"/fxml/game1mul.fxml", "/fxml/game2mul.fxml", "/fxml/game3mul.fxml"};
+    static final int IT_ROOM = 22;
+
+    /** What a move led to */
+    enum Outcome {
+        BLOCKED,
+        MOVED,
+        ROOM_VISITED,
+        WON
+    }
+
+    /** The static layout of one floor, shared by every simulation */
+    static final class Floor {
+        final String name;
+        final double width;
+        final double height;
+        final double spawnX;
+        final double spawnY;
+        final double playerWidth;
+        final double playerHeight;
+        final StaticGeometry walls;
+        final StaticGeometry barriers;
+        final StaticGeometry washroomBlocks;
+        final StaticGeometry lifts;
+        // Classroom doors sorted by id, ids[i] belongs to box i of doors
+        final StaticGeometry doors;
+        final int[] doorIds;
+
+        Floor(String name, LevelData level) {
+            this.name = name;
+            this.width = level.width() > 0 ? level.width() : 600;
+            this.height = level.height() > 0 ? level.height() : 400;
+            if (level.count(LevelData.Kind.PLAYER) == 0) {
+                throw new IllegalArgumentException(name + " has no player");
+            }
+            spawnX = level.minX(LevelData.Kind.PLAYER, 0);
+            spawnY = level.minY(LevelData.Kind.PLAYER, 0);
+            playerWidth = level.maxX(LevelData.Kind.PLAYER, 0) - spawnX;
+            playerHeight = level.maxY(LevelData.Kind.PLAYER, 0) - spawnY;
+            walls = level.geometry(LevelData.Kind.WALL);
+            barriers = level.geometry(LevelData.Kind.BARRIER);
+            washroomBlocks = level.geometry(LevelData.Kind.WASHROOM_BLOCK);
+            lifts = level.geometry(LevelData.Kind.LIFT);
+
+            LevelData.Kind door = LevelData.Kind.CLASSROOM_DOOR;
+            Integer[] order = new Integer[level.count(door)];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(level.id(door, a), level.id(door, b)));
+            doors = new StaticGeometry(order.length);
+            doorIds = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                int d = order[i];
+                doors.add(level.minX(door, d), level.minY(door, d), level.maxX(door, d), level.maxY(door, d));
+                doorIds[i] = level.id(door, d);
+            }
+        }
+    }
+
+    private static volatile Floor[] floors;
+
+    /** The three floors, compiled or mapped on first use */
+    static Floor[] floors() throws IOException {
+        Floor[] loaded = floors;
+        if (loaded == null) {
+            synchronized (MovementSimulation.class) {
+                loaded = floors;
+                if (loaded == null) {
+                    loaded = new Floor[FLOOR_FXML.length];
+                    for (int i = 0; i < loaded.length; i++) {
+                        loaded[i] = new Floor(FLOOR_NAMES[i], LevelData.forResource(FLOOR_FXML[i]));
+                    }
+                    floors = loaded;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    private final Floor[] building;
+    private int floorIndex = 0;
+    private Floor floor;
+    private double x;
+    private double y;
+    private int nextDoor;
+    private boolean[] visited;
+    private int visitedCount;
+    private int firstRoom = -1;
+    private int lastRoom = -1;
+    // Sequence number of the newest key press applied, the client replays the ones after it
+    private long lastInput = 0;
+
+    MovementSimulation(Floor[] building) {
+        this.building = building;
+        enterFloor(0);
+    }
+
+    private void enterFloor(int index) {
+        floorIndex = index;
+        floor = building[index];
+        x = floor.spawnX;
+        y = floor.spawnY;
+        nextDoor = 1;
+        visited = new boolean[floor.doorIds.length];
+        visitedCount = 0;
+    }
+
+    /** One key press: U, D, L or R, numbered by the client (0 if it doesn't number them) */
+    synchronized Outcome move(char direction, long input) {
+        lastInput = Math.max(lastInput, input);
+        double dx = 0, dy = 0;
+        switch (direction) {
+            case 'U' -> dy = -STEP;
+            case 'D' -> dy = STEP;
+            case 'L' -> dx = -STEP;
+            case 'R' -> dx = STEP;
+            default -> throw new IllegalArgumentException("Unknown direction " + direction);
+        }
+        return step(x + dx, y + dy);
+    }
+
+    /**
+     * A client that reports positions instead of keys: accepted when the position is exactly one
+     * step away along one axis, then simulated like that key press. Anything else is a jump the
+     * client couldn't have made and is BLOCKED.
+     */
+    synchronized Outcome moveTo(double toX, double toY) {
+        double dx = Math.abs(toX - x), dy = Math.abs(toY - y);
+        boolean oneStep = (near(dx, STEP) && near(dy, 0)) || (near(dx, 0) && near(dy, STEP));
+        if (!oneStep) {
+            return Outcome.BLOCKED;
+        }
+        return step(x + Math.signum(toX - x) * dx, y + Math.signum(toY - y) * dy);
+    }
+
+    private static boolean near(double a, double b) {
+        return Math.abs(a - b) < 1e-3;
+    }
+
+    private Outcome step(double toX, double toY) {
+        double maxX = toX + floor.playerWidth, maxY = toY + floor.playerHeight;
+        if (toX < 0 || maxX > floor.width || toY < 0 || maxY > floor.height) {
+            return Outcome.BLOCKED;
+        }
+        if (floor.walls.firstIntersecting(toX, toY, maxX, maxY) >= 0
+                || floor.barriers.firstIntersecting(toX, toY, maxX, maxY) >= 0
+                // Washroom blocks may be touched, only real overlap blocks
+                || floor.washroomBlocks.firstOverlapping(toX, toY, maxX, maxY) >= 0) {
+            return Outcome.BLOCKED;
+        }
+        x = toX;
+        y = toY;
+
+        // Doors in id order, the next one in line is visited, the others are out of order
+        Outcome outcome = Outcome.MOVED;
+        firstRoom = -1;
+        for (int i = 0; i < floor.doorIds.length; i++) {
+            if (visited[i] || !floor.doors.intersects(i, x, y, maxX, maxY)) continue;
+            int id = floor.doorIds[i];
+            if (id != nextDoor) continue;
+
+            visited[i] = true;
+            visitedCount++;
+            nextDoor++;
+            if (firstRoom < 0) firstRoom = id;
+            lastRoom = id;
+            outcome = Outcome.ROOM_VISITED;
+            if (floorIndex == building.length - 1 && id == IT_ROOM) {
+                return Outcome.WON;
+            }
+        }
+        return outcome;
+    }
+
+    /**
+     * The player took the lift to the named floor. Only the floor right above is reachable, and
+     * only from a lift once every classroom of this floor was visited. Returns false otherwise.
+     */
+    synchronized boolean changeFloor(String name) {
+        if (floorIndex + 1 >= building.length || !building[floorIndex + 1].name.equals(name)) {
+            return false;
+        }
+        if (!liftsUnlocked() || floor.lifts.firstIntersecting(x, y, x + floor.playerWidth, y + floor.playerHeight) < 0) {
+            return false;
+        }
+        enterFloor(floorIndex + 1);
+        return true;
+    }
+
+    synchronized boolean liftsUnlocked() {
+        return visitedCount == floor.doorIds.length;
+    }
+
+    synchronized long getLastInput() {
+        return lastInput;
+    }
+
+    synchronized double getX() {
+        return x;
+    }
+
+    synchronized double getY() {
+        return y;
+    }
+
+    synchronized String getFloorName() {
+        return floor.name;
+    }
+
+    /**
+     * Rooms the last ROOM_VISITED or WON outcome was about. A step can cross more than one door,
+     * those are always consecutive ids: getFirstRoom() up to getLastRoom().
+     */
+    synchronized int getFirstRoom() {
+        return firstRoom;
+    }
+
+    synchronized int getLastRoom() {
+        return lastRoom;
+    }
+}
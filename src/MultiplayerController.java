@@ -1,7 +1,7 @@
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
-import javafx.scene.Parent;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
@@ -16,13 +16,19 @@ import javafx.stage.Stage;
 
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
-public class MultiplayerController {
+public class MultiplayerController implements LevelCache.Controller {
+    private static final Log log = Log.get("MultiplayerController");
 
     @FXML
     private AnchorPane rootPane;
 
+    // Where this floor's FXML came from, set by FXMLLoader; names the compiled level
+    @FXML
+    private URL location;
+
     @FXML
     private Rectangle player;
 
@@ -30,14 +36,48 @@ public class MultiplayerController {
     private Label timerLabel;
 
     private Circle opponentPlayer;
+    // Opponent positions as they arrived, drawn slightly in the past so the circle glides between them
+    private final InterpolationBuffer opponentTrack = new InterpolationBuffer();
     private static Socket socket;
-    private static PrintWriter out;
-    private static BufferedReader in;
+    private static OutputStream out;
+    private static WireProtocol.FrameReader in;
+    // Switched on by the capabilities the server lists in its PROTOCOL answer to our HELLO
+    private static boolean binaryProtocol = false;
+    private static boolean snapshotProtocol = false;
+    // The server simulates our movement from MOVE inputs and decides rooms and victory itself
+    private static boolean inputProtocol = false;
+    // The server keeps the match clock: we ping it to learn its time and count down to its deadline
+    private static boolean clockProtocol = false;
+    private static ClockSync clockSync = new ClockSync();
+    // Match deadline in the server's System.nanoTime(), 0 until START_GAME
+    private static long matchDeadline = 0;
+    private static final long CLOCK_PING_MILLIS = 2000;
+    // With pings going, this long without a word from the server means the connection is gone
+    private static final int SILENCE_MILLIS = 6000;
+    // Given by the server for a running match, lets a dropped connection take its slot back
+    private static volatile String sessionToken;
+    private static final long RECONNECT_WINDOW_NANOS = 15_000_000_000L;
+    private static final long RECONNECT_RETRY_MILLIS = 1000;
+    private static final String SERVER_HOST = System.getProperty("server.host", "localhost");
+    private static final int SERVER_PORT = Integer.getInteger("server.port", 12345);
+    // Newest snapshot version applied, acknowledged back to the server
+    private static long snapshotVersion = 0;
+    private static final byte[] positionFrame = new byte[WireProtocol.POSITION_FRAME_LENGTH];
+    // Numbers our MOVE inputs; the ones the server hasn't confirmed yet are replayed on a MOVE_ACK
+    private static long inputSequence = 0;
+    private final ArrayDeque<PendingMove> pendingMoves = new ArrayDeque<>();
+    // MOVE_ACKs for inputs before this one belong to the floor below
+    private long firstInputOnFloor = 1;
     private static int playerId;
     private static boolean gameStarted = false;
     private static boolean connectedToServer = false;
 
     private double step = 5;
+    // Held keys and the frame loop that walks the player with them
+    private final InputState input = new InputState();
+    private GameLoop loop;
+    // Toasts for doors, washrooms and lifts, the player keeps walking while they show
+    private Notifications notifications;
     private List<Rectangle> walls = new ArrayList<>();
     private List<Line> barriers = new ArrayList<>();
     private List<Rectangle> collectibles = new ArrayList<>();
@@ -45,6 +85,10 @@ public class MultiplayerController {
     private List<Rectangle> washroomDoors = new ArrayList<>();
     private List<Rectangle> lifts = new ArrayList<>();
     private List<Rectangle> blackRectangles = new ArrayList<>(); // For washroom collision
+    // Boxes of the static obstacles above, from the floor's compiled level
+    private StaticGeometry wallGeometry = new StaticGeometry();
+    private StaticGeometry barrierGeometry = new StaticGeometry();
+    private StaticGeometry washroomGeometry = new StaticGeometry();
 
     private Map<Rectangle, Integer> doorIDs = new HashMap<>();
     private int nextDoorID = 1;
@@ -62,17 +106,27 @@ public class MultiplayerController {
 
     @FXML
 public void initialize() {
-    System.out.println("Initializing MultiplayerController for " + currentFloor + "...");
-    currentInstance = this;
-
-    // Initialize the global timer with callbacks
-    MultiplayerGameTimer.initialize(this::updateTimerDisplay, this::handleTimeUp);
+    log.info("Initializing MultiplayerController for {}...", currentFloor);
 
     // FIRST: Set up focus and key listeners BEFORE anything else
     setupFocusAndKeyHandling();
 
     // THEN: Initialize game elements
     initializeGameElements();
+}
+
+    private record PendingMove(long input, KeyCode key) {
+    }
+
+    /** The floor is showing: take over the timer and the network, load the floor above in the background */
+    @Override
+    public void activate() {
+    currentInstance = this;
+    firstInputOnFloor = inputSequence + 1;
+    loop.start();
+
+    // Initialize the global timer with callbacks
+    MultiplayerGameTimer.initialize(this::updateTimerDisplay, this::handleTimeUp);
 
     // Initialize network connection only if not already connected
     if (!connectedToServer) {
@@ -87,12 +141,11 @@ public void initialize() {
     // Initialize timer display
     initializeTimer();
 
-    System.out.println(
-            "Controller initialized for " + currentFloor + ". Timer: " + MultiplayerGameTimer.getFormattedTime()
-                    + ", running: " + MultiplayerGameTimer.isRunning());
+    log.info("Controller initialized for {}. Timer: {}, running: {}", currentFloor,
+            MultiplayerGameTimer.getFormattedTime(), MultiplayerGameTimer.isRunning());
 
     // DEBUG: Print all classroom door IDs
-    System.out.println("Classroom door IDs: " + doorIDs.values());
+    log.info("Classroom door IDs: {}", doorIDs.values());
 
     // Set fixed window size
     Platform.runLater(() -> {
@@ -103,6 +156,10 @@ public void initialize() {
         stage.setMaxHeight(440);
         stage.setResizable(false);
     });
+
+    if (!currentFloor.equals("Top Floor")) {
+        LevelCache.prewarm(floorMap.get(currentFloor));
+    }
 }
 
     private void initializeTimer() {
@@ -130,13 +187,16 @@ public void initialize() {
     }
 
     private void handleTimeUp() {
-        System.out.println("Time's up! Game over.");
+        log.info("Time's up! Game over.");
 
         // Check if any player has won before time ran out
         if (gameStarted) {
             // Game was running but time ran out - check server for winner
-            if (out != null && connectedToServer) {
-                out.println("TIME_UP");
+            if (out != null && connectedToServer && clockProtocol) {
+                // Its own deadline passing ends the match on the server, TIME_UP_DEFEAT follows
+                log.info("Waiting for the server to end the match");
+            } else if (out != null && connectedToServer) {
+                sendToServer("TIME_UP");
             } else {
                 // Single player mode - player loses
                 showTimeUpDefeatScreen();
@@ -152,7 +212,7 @@ public void initialize() {
 
     // This method handles the TIME_UP_DEFEAT message from server
     private void handleTimeUpDefeat() {
-        System.out.println("Handling time up defeat from server");
+        log.info("Handling time up defeat from server");
         Platform.runLater(() -> {
             showProgrammaticLoseScreen("Time's up! Neither player found the IT room in time.");
         });
@@ -162,142 +222,68 @@ public void initialize() {
         // Make the rootPane focus traversable and request focus
         rootPane.setFocusTraversable(true);
 
-        // Add event filter to capture key events
-        rootPane.addEventFilter(javafx.scene.input.KeyEvent.KEY_PRESSED, event -> {
-            handleKeyPress(event.getCode());
-            event.consume(); // Consume the event to prevent further propagation
-        });
+        // Held keys are read by the frame loop, one step per interval while an arrow is down
+        input.attach(rootPane);
+        notifications = new Notifications(rootPane);
+        loop = new GameLoop("Multiplayer " + location, rootPane, input, GameLoop.DEFAULT_STEPS_PER_SECOND,
+                this::handleKeyPress, this::checkInteractions);
+        loop.onFrame(this::renderOpponent);
+        // Measured by the CLOCK pings, unknown on servers that don't answer them
+        loop.showRoundTrip(() -> clockSync.isSynced() ? clockSync.rttNanos() : -1);
 
         // Set mouse click to force focus
         rootPane.setOnMouseClicked(event -> {
             rootPane.requestFocus();
-            System.out.println("RootPane focused by mouse click");
+            log.info("RootPane focused by mouse click");
         });
 
         // Request focus after a short delay to ensure scene is shown
         Platform.runLater(() -> {
             rootPane.requestFocus();
-            System.out.println("Focus requested on rootPane");
+            log.info("Focus requested on rootPane");
         });
     }
 
-    private void handleKeyPress(KeyCode code) {
+    /** One step of the frame loop: move, and tell the server about it */
+    private boolean handleKeyPress(KeyCode code) {
         if (!gameStarted) {
-            System.out.println("Game not started yet. Waiting for server...");
-            return;
+            return false;
         }
 
         if (MultiplayerGameTimer.getTimeRemaining() <= 0) {
-            System.out.println("Game over - time's up!");
-            return;
+            return false;
         }
 
-        System.out.println("Key pressed: " + code);
-
-        double oldX = player.getLayoutX();
-        double oldY = player.getLayoutY();
-        boolean moved = false;
-
-        switch (code) {
-            case UP:
-                player.setLayoutY(player.getLayoutY() - step);
-                moved = true;
-                break;
-            case DOWN:
-                player.setLayoutY(player.getLayoutY() + step);
-                moved = true;
-                break;
-            case LEFT:
-                player.setLayoutX(player.getLayoutX() - step);
-                moved = true;
-                break;
-            case RIGHT:
-                player.setLayoutX(player.getLayoutX() + step);
-                moved = true;
-                break;
-            default:
-                // Ignore other keys
-                return;
+        log.debug("Key pressed: {}", code);
+        if (!tryStep(code)) {
+            return false;
         }
-
-        if (!moved)
-            return;
-
-        System.out.println("Attempting move from (" + oldX + ", " + oldY + ") to (" +
-                player.getLayoutX() + ", " + player.getLayoutY() + ")");
-
-        // Check boundaries
-        if (player.getLayoutX() < 0 || player.getLayoutX() + player.getWidth() > rootPane.getWidth()
-                || player.getLayoutY() < 0 || player.getLayoutY() + player.getHeight() > rootPane.getHeight()) {
-            player.setLayoutX(oldX);
-            player.setLayoutY(oldY);
-            System.out.println("Movement blocked: out of bounds");
-            return;
+        if (log.isDebugEnabled()) {
+            log.debug("Movement successful to: {}, {}", player.getLayoutX(), player.getLayoutY());
         }
 
-        // Wall collisions
-        for (Rectangle wall : walls) {
-            if (player.getBoundsInParent().intersects(wall.getBoundsInParent())) {
-                player.setLayoutX(oldX);
-                player.setLayoutY(oldY);
-                System.out.println("Movement blocked: wall collision");
-                return;
-            }
-        }
-
-        // Line barriers collisions
-        for (Line line : barriers) {
-            if (player.getBoundsInParent().intersects(line.getBoundsInParent())) {
-                player.setLayoutX(oldX);
-                player.setLayoutY(oldY);
-                System.out.println("Movement blocked: barrier collision");
-                return;
-            }
+        // Send the key (the server moves us) or the position (older servers) to the server
+        if (inputProtocol) {
+            sendMove(code);
+        } else {
+            sendPositionUpdate();
         }
+        return true;
+    }
 
-        // Black rectangles (washrooms) collisions - FIXED COLLISION DETECTION
-        for (Rectangle blackRect : blackRectangles) {
-            if (checkCollision(player, blackRect)) {
-                player.setLayoutX(oldX);
-                player.setLayoutY(oldY);
-                System.out.println("Movement blocked: washroom collision");
-                return;
-            }
+    /** Doors, items and lifts under the player, once per frame in which they moved */
+    private void checkInteractions() {
+        if (!loop.isRunning()) {
+            return;
         }
-
-        // If we reached here, movement is valid
-        System.out.println("Movement successful to: " + player.getLayoutX() + ", " + player.getLayoutY());
-
-        // Send position update to server
-        sendPositionUpdate();
-
-        // Check interactions
         handleCollectibles();
         handleClassroomDoors();
         handleWashroomDoors();
         handleLiftInteractions();
     }
 
-    // Improved collision detection method
-    private boolean checkCollision(Rectangle player, Rectangle obstacle) {
-        double playerLeft = player.getLayoutX();
-        double playerRight = player.getLayoutX() + player.getWidth();
-        double playerTop = player.getLayoutY();
-        double playerBottom = player.getLayoutY() + player.getHeight();
-
-        double obstacleLeft = obstacle.getLayoutX();
-        double obstacleRight = obstacle.getLayoutX() + obstacle.getWidth();
-        double obstacleTop = obstacle.getLayoutY();
-        double obstacleBottom = obstacle.getLayoutY() + obstacle.getHeight();
-
-        return playerRight > obstacleLeft &&
-                playerLeft < obstacleRight &&
-                playerBottom > obstacleTop &&
-                playerTop < obstacleBottom;
-    }
-
     private void initializeGameElements() {
-        System.out.println("Initializing game elements for " + currentFloor + "...");
+        log.info("Initializing game elements for {}...", currentFloor);
 
         // Clear previous collections
         walls.clear();
@@ -309,62 +295,22 @@ public void initialize() {
         blackRectangles.clear();
         doorIDs.clear();
 
-        for (var node : rootPane.getChildren()) {
-            if (node instanceof Rectangle r) {
-                // Handle color comparison safely
-                Color fillColor = null;
-                if (r.getFill() instanceof Color) {
-                    fillColor = (Color) r.getFill();
-                }
-
-                if (fillColor != null) {
-                    if (fillColor.equals(Color.WHITE)) {
-                        classroomDoors.add(r);
-                        try {
-                            if (r.getId() != null) {
-                                int id = Integer.parseInt(r.getId());
-                                doorIDs.put(r, id);
-                                System.out.println("Found classroom door with ID: " + id + " at position: "
-                                        + r.getLayoutX() + ", " + r.getLayoutY());
-                            }
-                        } catch (Exception e) {
-                            System.out.println("Invalid ID for classroom door: " + r.getId());
-                        }
-
-                    } else if (fillColor.equals(Color.ORANGE)) {
-                        washroomDoors.add(r);
-                        System.out.println("Found washroom door at: " + r.getLayoutX() + ", " + r.getLayoutY());
-
-                    } else if (fillColor.equals(Color.DODGERBLUE)
-                            || fillColor.equals(Color.GRAY)) {
-                        walls.add(r);
-
-                    } else if (isWashroomColor(fillColor)) {
-                        // FIXED: Properly identify washroom rectangles (#1e2226 color)
-                        blackRectangles.add(r);
-                        System.out.println("Found washroom collision rectangle at: " + r.getLayoutX() + ", "
-                                + r.getLayoutY() + " with color: " + fillColor);
-
-                    } else if (r.getId() != null && (r.getId().equals("100") || r.getId().equals("200") ||
-                            r.getId().equals("300") || r.getId().equals("400") ||
-                            r.getId().equals("500") || r.getId().equals("600"))) {
-                        collectibles.add(r);
-
-                    } else if (fillColor.equals(Color.LIGHTGRAY) || fillColor.equals(Color.RED)) {
-                        lifts.add(r);
-                    }
-                }
-            } else if (node instanceof Line line) {
-                barriers.add(line);
-            }
+        // The level compiler already sorted the nodes by color/type, only doors with a numeric id made it
+        LevelData level = FxGeometry.level(location, rootPane);
+        collect(level, LevelData.Kind.WALL, Rectangle.class, walls);
+        collect(level, LevelData.Kind.WASHROOM_BLOCK, Rectangle.class, blackRectangles);
+        collect(level, LevelData.Kind.BARRIER, Line.class, barriers);
+        collect(level, LevelData.Kind.COLLECTIBLE, Rectangle.class, collectibles);
+        collect(level, LevelData.Kind.CLASSROOM_DOOR, Rectangle.class, classroomDoors);
+        collect(level, LevelData.Kind.WASHROOM_DOOR, Rectangle.class, washroomDoors);
+        collect(level, LevelData.Kind.LIFT, Rectangle.class, lifts);
+        for (int i = 0; i < classroomDoors.size(); i++) {
+            doorIDs.put(classroomDoors.get(i), level.id(LevelData.Kind.CLASSROOM_DOOR, i));
         }
 
-        // Remove doors without valid IDs
-        classroomDoors.removeIf(d -> doorIDs.get(d) == null);
-
         // Sort doors by ID
         classroomDoors.sort(Comparator.comparingInt(doorIDs::get));
-        System.out.println("Sorted classroom doors: " + doorIDs.values());
+        log.info("Sorted classroom doors: {}", doorIDs.values());
 
         // Create opponent player visualization
         if (opponentPlayer == null) {
@@ -373,50 +319,37 @@ public void initialize() {
             rootPane.getChildren().add(opponentPlayer);
         }
 
-        System.out.println("Game elements initialized. Walls: " + walls.size() +
-                ", Barriers: " + barriers.size() +
-                ", Washroom collision rectangles: " + blackRectangles.size() +
-                ", Classroom doors: " + classroomDoors.size() +
-                ", Washroom doors: " + washroomDoors.size());
+        wallGeometry = level.geometry(LevelData.Kind.WALL);
+        barrierGeometry = level.geometry(LevelData.Kind.BARRIER);
+        washroomGeometry = level.geometry(LevelData.Kind.WASHROOM_BLOCK);
+
+        log.info("Game elements initialized. Walls: {}, Barriers: {}, Washroom collision rectangles: {}",
+                walls.size(), barriers.size(), blackRectangles.size());
+        log.info("Classroom doors: {}, Washroom doors: {}", classroomDoors.size(), washroomDoors.size());
 
         // DEBUG: Check if room 22 exists for victory condition
         boolean hasRoom22 = doorIDs.containsValue(22);
-        System.out.println("Room 22 exists for victory condition: " + hasRoom22);
+        log.info("Room 22 exists for victory condition: {}", hasRoom22);
         if (!hasRoom22) {
-            System.out.println("WARNING: Room 22 not found! Available rooms: " + doorIDs.values());
+            log.warn("Room 22 not found! Available rooms: {}", doorIDs.values());
         }
     }
 
-    // Helper method to identify washroom collision rectangles (#1e2226 color)
-    private boolean isWashroomColor(Color color) {
-        // Check for black color
-        if (color.equals(Color.BLACK)) {
-            return true;
+    // Nodes of one kind from the compiled level, in child order
+    private <T extends Node> void collect(LevelData level, LevelData.Kind kind, Class<T> type, List<? super T> nodes) {
+        for (int i = 0; i < level.count(kind); i++) {
+            nodes.add(FxGeometry.node(level, kind, i, rootPane, type));
         }
-
-        // Check for #1e2226 color (dark gray/black used for washrooms)
-        // #1e2226 in RGB: R=0.1176, G=0.1333, B=0.1490
-        double red = color.getRed();
-        double green = color.getGreen();
-        double blue = color.getBlue();
-
-        // Allow some tolerance for color comparison
-        boolean isDarkGray = Math.abs(red - 0.1176) < 0.01 &&
-                Math.abs(green - 0.1333) < 0.01 &&
-                Math.abs(blue - 0.1490) < 0.01;
-
-        return isDarkGray;
     }
 
     private void setupNetwork() {
         try {
-            socket = new Socket("localhost", 12345);
-            out = new PrintWriter(socket.getOutputStream(), true);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            openConnection();
             connectedToServer = true;
-            System.out.println("Connected to game server successfully");
+            sendToServer("JOIN");
+            log.info("Connected to game server successfully");
         } catch (IOException e) {
-            System.err.println("Cannot connect to game server: " + e.getMessage());
+            log.warn("Cannot connect to game server: {}", e.getMessage());
             showAlert("Connection Error", "Cannot connect to game server. Starting in single-player mode.");
             // Allow single player mode
             gameStarted = true;
@@ -424,19 +357,47 @@ public void initialize() {
         }
     }
 
+    // Connect and say HELLO, the caller goes on with JOIN or RESUME:<token>
+    private static synchronized void openConnection() throws IOException {
+        socket = new Socket(SERVER_HOST, SERVER_PORT);
+        socket.setTcpNoDelay(true);
+        out = new BufferedOutputStream(socket.getOutputStream());
+        in = new WireProtocol.FrameReader(new BufferedInputStream(socket.getInputStream()));
+        // Old servers ignore this and keep talking text
+        sendToServer(WireProtocol.HELLO + ":" + WireProtocol.CAP_BINARY + "," + WireProtocol.CAP_SNAPSHOT
+                + "," + WireProtocol.CAP_INPUT + "," + WireProtocol.CAP_CLOCK + "," + WireProtocol.CAP_RESUME);
+    }
+
     private void startNetworkListener() {
         if (!connectedToServer)
             return;
 
         Thread networkThread = new Thread(() -> {
+            WireProtocol.FrameReader reader = in;
+            boolean failed = false;
             try {
-                String message;
-                while ((message = in.readLine()) != null) {
-                    System.out.println("Received from server: " + message);
-                    handleNetworkMessage(message);
+                int type;
+                while ((type = reader.next()) != WireProtocol.FrameReader.EOF) {
+                    if (type == WireProtocol.FrameReader.POSITION) {
+                        handleNetworkPosition(reader.playerId(), reader.x(), reader.y());
+                    } else {
+                        String message = reader.text();
+                        log.debug("Received from server: {}", message);
+                        handleNetworkMessage(message);
+                    }
                 }
             } catch (IOException e) {
-                System.out.println("Disconnected from server: " + e.getMessage());
+                log.info("Disconnected from server: {}", e.getMessage());
+                failed = true;
+            }
+            if (sessionToken != null) {
+                // The match holds our slot for a while, take it back without leaving the floor
+                if (reconnect()) {
+                    return;
+                }
+                failed = true;
+            }
+            if (failed) {
                 Platform.runLater(() -> {
                     if (gameStarted) { // Only show alert if game was actually running
                         showAlert("Disconnected", "Lost connection to the game server.");
@@ -449,23 +410,148 @@ public void initialize() {
         networkThread.start();
     }
 
+    // Runs on the listener thread of the dropped connection, returns false once the match is lost
+    private boolean reconnect() {
+        showInfo("Connection Lost", "Reconnecting to the game server...");
+        try {
+            socket.close();
+        } catch (IOException e) {
+            log.debug("Closing the dropped socket: {}", e.getMessage());
+        }
+        long giveUp = System.nanoTime() + RECONNECT_WINDOW_NANOS;
+        while (sessionToken != null && System.nanoTime() < giveUp) {
+            try {
+                openConnection();
+                sendToServer("RESUME:" + sessionToken);
+                startNetworkListener();
+                return true;
+            } catch (IOException e) {
+                log.info("Reconnect failed: {}", e.getMessage());
+                try {
+                    Thread.sleep(RECONNECT_RETRY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    // A few quick CLOCK pings for a first estimate, then one every CLOCK_PING_MILLIS to follow drift
+    private static void startClockSync() {
+        Socket connection = socket;
+        Thread pinger = new Thread(() -> {
+            try {
+                for (int sent = 0; !connection.isClosed(); sent++) {
+                    sendToServer("CLOCK:" + System.nanoTime());
+                    Thread.sleep(sent < 5 ? 100 : CLOCK_PING_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "clock-sync");
+        pinger.setDaemon(true);
+        pinger.start();
+    }
+
+    // Binary position frame, decoded by the reader without building a message string
+    private void handleNetworkPosition(int otherPlayerId, float x, float y) {
+        if (otherPlayerId == playerId) {
+            return;
+        }
+        long received = System.nanoTime();
+        Platform.runLater(() -> updateOpponentPosition(received, x, y));
+    }
+
     private void handleNetworkMessage(String message) {
+        // Stamped here rather than on the FX thread, whose queue may be a frame or two behind
+        long received = System.nanoTime();
         Platform.runLater(() -> {
             try {
                 String[] parts = message.split(":");
                 switch (parts[0]) {
+                    case "PROTOCOL":
+                        List<String> capabilities = parts.length > 1 ? Arrays.asList(parts[1].split(",")) : List.of();
+                        binaryProtocol = capabilities.contains(WireProtocol.CAP_BINARY);
+                        snapshotProtocol = capabilities.contains(WireProtocol.CAP_SNAPSHOT);
+                        inputProtocol = capabilities.contains(WireProtocol.CAP_INPUT);
+                        clockProtocol = capabilities.contains(WireProtocol.CAP_CLOCK);
+                        log.info("Server protocol: {}{}{}", binaryProtocol ? "binary positions" : "text",
+                                snapshotProtocol ? ", snapshots" : "",
+                                (inputProtocol ? ", inputs" : "") + (clockProtocol ? ", clock" : ""));
+                        if (clockProtocol) {
+                            socket.setSoTimeout(SILENCE_MILLIS);
+                            startClockSync();
+                        }
+                        break;
+
+                    case "SESSION":
+                        sessionToken = parts[1];
+                        break;
+
+                    case "RESUMED":
+                        // Same player, same floor, only the position may have moved on without us
+                        if (currentInstance != null) {
+                            currentInstance.resumeAt(Double.parseDouble(parts[2]), Double.parseDouble(parts[3]));
+                        }
+                        log.info("Resumed the match as player {}", parts[1]);
+                        showInfo("Reconnected", "Back in the game.");
+                        break;
+
+                    case "RESUME_FAILED":
+                        sessionToken = null;
+                        connectedToServer = false;
+                        showAlert("Disconnected", "Lost connection to the game server.");
+                        break;
+
+                    case "PLAYER_AWAY":
+                        showInfo("Opponent", "Lost their connection, waiting for them to come back.");
+                        break;
+
+                    case "PLAYER_BACK":
+                        showInfo("Opponent", "Back in the game.");
+                        break;
+
+                    case "CLOCK":
+                        clockSync.add(Long.parseLong(parts[1]), Long.parseLong(parts[2]), received);
+                        // A better estimate moves the deadline, and with it the countdown
+                        if (matchDeadline != 0 && MultiplayerGameTimer.isRunning()) {
+                            MultiplayerGameTimer.runUntil(clockSync.toLocal(matchDeadline));
+                        }
+                        break;
+
+                    case "SNAPSHOT":
+                        applySnapshot(message, received);
+                        break;
+
+                    case "MOVE_ACK":
+                        if (currentInstance != null) {
+                            currentInstance.reconcile(Long.parseLong(parts[1]), Double.parseDouble(parts[2]),
+                                    Double.parseDouble(parts[3]));
+                        }
+                        break;
+
                     case "PLAYER_ID":
                         playerId = Integer.parseInt(parts[1]);
-                        System.out.println("Assigned player ID: " + playerId);
+                        log.info("Assigned player ID: {}", playerId);
                         updatePlayerColor();
                         break;
 
                     case "START_GAME":
                         gameStarted = true;
-                        System.out.println("Game started! Both players connected. Timer starting now!");
+                        log.info("Game started! Both players connected. Timer starting now!");
                         showInfo("Game Started", "Competition begins! Find the IT room first! You have 10 minutes.");
-                        // Start the timer when both players are connected and game starts
-                        MultiplayerGameTimer.startTimer();
+                        if (parts.length > 2) {
+                            // START_GAME:<start>:<deadline>, both on the server's clock
+                            long start = Long.parseLong(parts[1]);
+                            matchDeadline = Long.parseLong(parts[2]);
+                            MultiplayerGameTimer.runUntil(clockSync.isSynced() ? clockSync.toLocal(matchDeadline)
+                                    : received + (matchDeadline - start));
+                        } else {
+                            // Start the timer when both players are connected and game starts
+                            MultiplayerGameTimer.startTimer();
+                        }
                         // Ensure focus after game start
                         rootPane.requestFocus();
                         break;
@@ -475,8 +561,10 @@ public void initialize() {
                         if (otherPlayerId != playerId) {
                             double x = Double.parseDouble(parts[2]);
                             double y = Double.parseDouble(parts[3]);
-                            System.out.println("Updating opponent position: " + x + ", " + y);
-                            updateOpponentPosition(x, y);
+                            if (log.isDebugEnabled()) {
+                                log.debug("Updating opponent position: {}, {}", x, y);
+                            }
+                            updateOpponentPosition(received, x, y);
                         }
                         break;
 
@@ -502,52 +590,111 @@ public void initialize() {
 
                     // FIXED: Handle victory message properly
                     case "VICTORY":
+                        sessionToken = null; // the match is over, nothing to come back to
                         int winnerId = Integer.parseInt(parts[1]);
-                        System.out.println(
-                                "Received VICTORY message for player: " + winnerId + ", I am player: " + playerId);
+                        log.info("Received VICTORY message for player: {}, I am player: {}", winnerId, playerId);
                         if (winnerId == playerId) {
-                            System.out.println("I am the winner! Showing victory screen.");
+                            log.info("I am the winner! Showing victory screen.");
                             showProgrammaticWinScreen(
                                     "Congratulations Player " + playerId + "! You found the IT Room!");
                         } else {
-                            System.out.println("I am the loser! Showing defeat screen.");
+                            log.info("I am the loser! Showing defeat screen.");
                             showProgrammaticLoseScreen("The other player reached the IT room first!");
                         }
                         break;
 
                     case "DEFEAT":
+                        sessionToken = null;
                         String defeatMessage = parts.length > 1 ? parts[1] : "The other player won!";
-                        System.out.println("Received DEFEAT message: " + defeatMessage);
+                        log.info("Received DEFEAT message: {}", defeatMessage);
                         showProgrammaticLoseScreen(defeatMessage);
                         break;
 
                     case "TIME_UP_DEFEAT":
+                        sessionToken = null;
                         handleTimeUpDefeat();
                         break;
 
                     default:
-                        System.out.println("Unknown message: " + message);
+                        log.warn("Unknown message: {}", message);
                 }
             } catch (Exception e) {
-                System.err.println("Error handling network message: " + e.getMessage());
+                log.warn("Error handling network message: {}", e.getMessage());
             }
         });
     }
 
+    // SNAPSHOT:<version>:<base>:<entries>, see GameState on the server for the entry format
+    private void applySnapshot(String message, long received) {
+        String[] parts = message.split(":", 4);
+        long version = Long.parseLong(parts[1]);
+        long base = Long.parseLong(parts[2]);
+        if (base > snapshotVersion) {
+            // Built on a version we never saw, ask for everything again
+            snapshotVersion = 0;
+            sendToServer("RESYNC");
+            return;
+        }
+        if (version <= snapshotVersion) {
+            // A resend of something we already applied, or the full state after a resume
+            sendToServer("SNAPSHOT_ACK:" + version);
+            return;
+        }
+
+        if (parts.length > 3 && !parts[3].isEmpty()) {
+            for (String entry : parts[3].split(";")) {
+                String[] fields = entry.substring(1).split(",", 3);
+                int entryPlayerId = Integer.parseInt(fields[0]);
+                switch (entry.charAt(0)) {
+                    case 'P':
+                        if (entryPlayerId != playerId) {
+                            updateOpponentPosition(received, Double.parseDouble(fields[1]), Double.parseDouble(fields[2]));
+                        }
+                        break;
+                    case 'I':
+                        handleRemoteItemCollection(entryPlayerId, fields[1]);
+                        break;
+                    case 'R':
+                        handleRemoteRoomVisit(entryPlayerId, Integer.parseInt(fields[1]));
+                        break;
+                    case 'F':
+                        if (entryPlayerId != playerId) {
+                            handleRemoteFloorChange(fields[1]);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        snapshotVersion = version;
+        sendToServer("SNAPSHOT_ACK:" + version);
+    }
+
     private void updatePlayerColor() {
         if (playerId == 1) {
             player.setFill(Color.BLUE);
         } else {
             player.setFill(Color.GREEN);
         }
-        System.out.println("Player color updated for player " + playerId);
+        log.debug("Player color updated for player {}", playerId);
+    }
+
+    // The listener thread belongs to the first floor's controller, positions go to the floor showing now
+    private void updateOpponentPosition(long received, double x, double y) {
+        MultiplayerController shown = currentInstance != null ? currentInstance : this;
+        if (shown.opponentPlayer != null) {
+            shown.opponentTrack.add(received, x, y);
+            shown.opponentPlayer.setVisible(true);
+        }
     }
 
-    private void updateOpponentPosition(double x, double y) {
-        if (opponentPlayer != null) {
-            opponentPlayer.setCenterX(x + 3.5);
-            opponentPlayer.setCenterY(y + 3.5);
-            opponentPlayer.setVisible(true);
+    // Every frame: put the opponent where the buffered positions say it was a moment ago
+    private void renderOpponent(long now) {
+        if (opponentPlayer != null && opponentTrack.sample(now)) {
+            opponentPlayer.setCenterX(opponentTrack.getX() + 3.5);
+            opponentPlayer.setCenterY(opponentTrack.getY() + 3.5);
         }
     }
 
@@ -568,12 +715,12 @@ public void initialize() {
         }
 
         // Don't show popup for opponent's actions to avoid interruption
-        System.out.println("Player " + collectorId + " collected item " + itemId);
+        log.debug("Player {} collected item {}", collectorId, itemId);
     }
 
     private void handleRemoteRoomVisit(int visitorId, int roomId) {
         // Don't show popup for opponent's room visits
-        System.out.println("Player " + visitorId + " visited room " + roomId);
+        log.debug("Player {} visited room {}", visitorId, roomId);
 
         // Only update visual if it's the current player's action
         if (visitorId == playerId && currentInstance != null) {
@@ -590,18 +737,156 @@ public void initialize() {
     private void handleRemoteFloorChange(String floor) {
         currentFloor = floor;
         // Don't show popup for opponent's floor changes
-        System.out.println("Opponent moved to " + floor);
+        log.debug("Opponent moved to {}", floor);
 
-        // Hide opponent when they change floors
-        if (opponentPlayer != null) {
-            opponentPlayer.setVisible(false);
+        // Hide opponent when they change floors, and don't glide them across from the old one
+        MultiplayerController shown = currentInstance != null ? currentInstance : this;
+        shown.opponentTrack.clear();
+        if (shown.opponentPlayer != null) {
+            shown.opponentPlayer.setVisible(false);
+        }
+    }
+
+    private void sendMove(KeyCode code) {
+        if (out != null && connectedToServer) {
+            long input = ++inputSequence;
+            pendingMoves.add(new PendingMove(input, code));
+            sendToServer("MOVE:" + code.name().charAt(0) + ":" + input);
+        }
+    }
+
+    /**
+     * Move the player one step for this key unless a wall, barrier, washroom or the edge is in the
+     * way, in which case it stays put. Also used to replay unconfirmed moves on a MOVE_ACK.
+     */
+    private boolean tryStep(KeyCode code) {
+        double oldX = player.getLayoutX();
+        double oldY = player.getLayoutY();
+        boolean moved = false;
+
+        switch (code) {
+            case UP:
+                player.setLayoutY(player.getLayoutY() - step);
+                moved = true;
+                break;
+            case DOWN:
+                player.setLayoutY(player.getLayoutY() + step);
+                moved = true;
+                break;
+            case LEFT:
+                player.setLayoutX(player.getLayoutX() - step);
+                moved = true;
+                break;
+            case RIGHT:
+                player.setLayoutX(player.getLayoutX() + step);
+                moved = true;
+                break;
+            default:
+                // Ignore other keys
+                return false;
+        }
+
+        if (!moved)
+            return false;
+
+        if (log.isDebugEnabled()) {
+            log.debug("Attempting move from ({}, {}) to ({})", oldX, oldY,
+                    player.getLayoutX() + ", " + player.getLayoutY());
+        }
+
+        // Check boundaries
+        if (player.getLayoutX() < 0 || player.getLayoutX() + player.getWidth() > rootPane.getWidth()
+                || player.getLayoutY() < 0 || player.getLayoutY() + player.getHeight() > rootPane.getHeight()) {
+            player.setLayoutX(oldX);
+            player.setLayoutY(oldY);
+            log.debug("Movement blocked: out of bounds");
+            return false;
+        }
+
+        // Wall collisions
+        if (FxGeometry.firstIntersecting(wallGeometry, player) >= 0) {
+            player.setLayoutX(oldX);
+            player.setLayoutY(oldY);
+            log.debug("Movement blocked: wall collision");
+            return false;
         }
+
+        // Line barriers collisions
+        if (FxGeometry.firstIntersecting(barrierGeometry, player) >= 0) {
+            player.setLayoutX(oldX);
+            player.setLayoutY(oldY);
+            log.debug("Movement blocked: barrier collision");
+            return false;
+        }
+
+        // Black rectangles (washrooms) collisions - layout boxes that must really overlap, touching is allowed
+        double playerLeft = player.getLayoutX();
+        double playerTop = player.getLayoutY();
+        if (washroomGeometry.firstOverlapping(playerLeft, playerTop,
+                playerLeft + player.getWidth(), playerTop + player.getHeight()) >= 0) {
+            player.setLayoutX(oldX);
+            player.setLayoutY(oldY);
+            log.debug("Movement blocked: washroom collision");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The server applied our inputs up to this one and has us at x, y. Start from there and replay
+     * the moves it hasn't seen yet; if the local prediction was right nothing visibly changes.
+     */
+    private void reconcile(long input, double x, double y) {
+        if (input < firstInputOnFloor) {
+            return; // an ack for the floor we just left
+        }
+        while (!pendingMoves.isEmpty() && pendingMoves.peek().input() <= input) {
+            pendingMoves.poll();
+        }
+
+        double predictedX = player.getLayoutX();
+        double predictedY = player.getLayoutY();
+        player.setLayoutX(x);
+        player.setLayoutY(y);
+        for (PendingMove move : pendingMoves) {
+            tryStep(move.key());
+        }
+        if ((player.getLayoutX() != predictedX || player.getLayoutY() != predictedY) && log.isDebugEnabled()) {
+            log.debug("Corrected prediction from ({}) to ({})", predictedX + ", " + predictedY,
+                    player.getLayoutX() + ", " + player.getLayoutY());
+        }
+    }
+
+    // Moves sent while the connection was down never arrived, the server's position stands
+    private void resumeAt(double x, double y) {
+        pendingMoves.clear();
+        player.setLayoutX(x);
+        player.setLayoutY(y);
     }
 
     private void sendPositionUpdate() {
         if (out != null && connectedToServer) {
-            String message = "POSITION_UPDATE:" + player.getLayoutX() + ":" + player.getLayoutY();
-            out.println(message);
+            if (binaryProtocol) {
+                WireProtocol.encodePosition(positionFrame, 0, (float) player.getLayoutX(), (float) player.getLayoutY());
+                sendToServer(positionFrame);
+            } else {
+                String message = "POSITION_UPDATE:" + player.getLayoutX() + ":" + player.getLayoutY();
+                sendToServer(message);
+            }
+        }
+    }
+
+    private static void sendToServer(String message) {
+        sendToServer((message + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    // The FX thread and the clock sync thread both send
+    private static synchronized void sendToServer(byte[] data) {
+        try {
+            out.write(data);
+            out.flush();
+        } catch (IOException e) {
+            log.warn("Failed to send to server: {}", e.getMessage());
         }
     }
 
@@ -611,7 +896,7 @@ public void initialize() {
             Rectangle item = iterator.next();
             if (player.getBoundsInParent().intersects(item.getBoundsInParent())) {
                 if (out != null && connectedToServer && item.getId() != null) {
-                    out.println("ITEM_COLLECTED:" + item.getId());
+                    sendToServer("ITEM_COLLECTED:" + item.getId());
                 }
                 Platform.runLater(() -> {
                     if (rootPane.getChildren().contains(item)) {
@@ -636,22 +921,25 @@ public void initialize() {
                     nextDoorID++;
                     checkAllClassroomsVisited();
 
-                    if (out != null && connectedToServer) {
-                        out.println("ROOM_VISITED:" + id);
+                    if (out != null && connectedToServer && !inputProtocol) {
+                        sendToServer("ROOM_VISITED:" + id);
                     }
 
                     // FIXED: VICTORY CONDITION - Top Floor AND door ID 22
                     boolean isITRoom = currentFloor.equals("Top Floor") && id == 22;
 
                     if (isITRoom) {
-                        System.out.println("=== VICTORY ACHIEVED ===");
-                        System.out.println("IT Room reached! Player " + playerId + " wins!");
-                        System.out.println("Floor: " + currentFloor + ", Door ID: " + id);
-
-                        if (out != null && connectedToServer) {
+                        log.info("=== VICTORY ACHIEVED ===");
+                        log.info("IT Room reached! Player {} wins!", playerId);
+                        log.info("Floor: {}, Door ID: {}", currentFloor, id);
+
+                        if (out != null && connectedToServer && inputProtocol) {
+                            // The server saw us reach the IT room too, its VICTORY shows the win screen
+                            log.info("Waiting for the server to confirm the victory");
+                        } else if (out != null && connectedToServer) {
                             // Send victory message to server
-                            out.println("VICTORY:" + playerId);
-                            System.out.println("Sent VICTORY message to server for player " + playerId);
+                            sendToServer("VICTORY:" + playerId);
+                            log.info("Sent VICTORY message to server for player {}", playerId);
                             showProgrammaticWinScreen(
                                     "Congratulations Player " + playerId + "! You found the IT Room!");
 
@@ -676,14 +964,14 @@ public void initialize() {
         boolean isITRoom = currentFloor.equals("Top Floor") && doorId == 22;
 
         if (isITRoom) {
-            System.out.println("=== VICTORY CONDITION MET ===");
-            System.out.println("Player " + playerId + " reached IT Room!");
-            System.out.println("Floor: " + currentFloor + ", Door ID: " + doorId);
-            System.out.println("=== ===================== ===");
+            log.info("=== VICTORY CONDITION MET ===");
+            log.info("Player {} reached IT Room!", playerId);
+            log.info("Floor: {}, Door ID: {}", currentFloor, doorId);
+            log.info("=== ===================== ===");
         } else if (currentFloor.equals("Top Floor") && doorId != 22) {
-            System.out.println("On Top Floor but wrong door. Door ID: " + doorId + " (need 22)");
+            log.info("On Top Floor but wrong door. Door ID: {} (need 22)", doorId);
         } else if (doorId == 22 && !currentFloor.equals("Top Floor")) {
-            System.out.println("Found door 22 but wrong floor. Current floor: " + currentFloor + " (need Top Floor)");
+            log.info("Found door 22 but wrong floor. Current floor: {} (need Top Floor)", currentFloor);
         }
 
         return isITRoom;
@@ -698,7 +986,7 @@ public void initialize() {
                         id = Integer.parseInt(washroom.getId());
                     }
                 } catch (Exception e) {
-                    System.out.println("Washroom ID parsing error: " + e.getMessage());
+                    log.warn("Washroom ID parsing error: {}", e.getMessage());
                 }
 
                 String message;
@@ -769,16 +1057,17 @@ public void initialize() {
 
                         // Send floor change to server
                         if (out != null && connectedToServer) {
-                            out.println("FLOOR_CHANGED:" + currentFloor);
+                            sendToServer("FLOOR_CHANGED:" + currentFloor);
                         }
 
-                        // Load next floor
-                        FXMLLoader loader = new FXMLLoader(getClass().getResource(nextFxml));
-                        Parent root = loader.load();
+                        // Load next floor, usually prewarmed while this one was played
+                        loop.stop();
+                        LevelCache.Loaded next = LevelCache.take(nextFxml);
                         Stage stage = (Stage) rootPane.getScene().getWindow();
-                        Scene scene = new Scene(root);
+                        Scene scene = new Scene(next.root());
                         stage.setScene(scene);
                         stage.show();
+                        next.activate();
 
                     } catch (IOException e) {
                         e.printStackTrace();
@@ -790,15 +1079,15 @@ public void initialize() {
     }
 
     private void showProgrammaticWinScreen(String message) {
-        System.out.println("=== VICTORY ACHIEVED ===");
-        System.out.println("Showing victory screen for player " + playerId);
+        log.info("=== VICTORY ACHIEVED ===");
+        log.info("Showing victory screen for player {}", playerId);
 
         // Stop the timer
         MultiplayerGameTimer.stopTimer();
 
         Platform.runLater(() -> {
             try {
-                System.out.println("Creating win screen programmatically...");
+                log.info("Creating win screen programmatically...");
 
                 // Create win screen programmatically
                 javafx.scene.layout.VBox vbox = new javafx.scene.layout.VBox(20);
@@ -819,7 +1108,7 @@ public void initialize() {
                 mainMenuBtn.setStyle(
                         "-fx-background-color: #FF9800; -fx-text-fill: white; -fx-font-size: 16px; -fx-font-weight: bold; -fx-pref-width: 150; -fx-pref-height: 40;");
                 mainMenuBtn.setOnAction(e -> {
-                    System.out.println("Main Menu clicked");
+                    log.info("Main Menu clicked");
                     try {
                         cleanup();
                         FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/MainMenu.fxml"));
@@ -839,24 +1128,24 @@ public void initialize() {
                 stage.setScene(scene);
                 stage.show();
 
-                System.out.println("Win screen created successfully!");
+                log.info("Win screen created successfully!");
 
             } catch (Exception e) {
-                System.err.println("Error creating win screen: " + e.getMessage());
+                log.warn("Error creating win screen: {}", e.getMessage());
                 e.printStackTrace();
             }
         });
     }
 
     private void showProgrammaticLoseScreen(String message) {
-        System.out.println("Handling defeat: " + message);
+        log.info("Handling defeat: {}", message);
 
         // Stop the timer when game ends
         MultiplayerGameTimer.stopTimer();
 
         Platform.runLater(() -> {
             try {
-                System.out.println("Creating lose screen programmatically...");
+                log.info("Creating lose screen programmatically...");
 
                 // Create lose screen programmatically
                 javafx.scene.layout.VBox vbox = new javafx.scene.layout.VBox(20);
@@ -877,7 +1166,7 @@ public void initialize() {
                 mainMenuBtn.setStyle(
                         "-fx-background-color: #FF9800; -fx-text-fill: white; -fx-font-size: 16px; -fx-font-weight: bold; -fx-pref-width: 150; -fx-pref-height: 40;");
                 mainMenuBtn.setOnAction(e -> {
-                    System.out.println("Main Menu clicked");
+                    log.info("Main Menu clicked");
                     try {
                         cleanup();
                         FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/MainMenu.fxml"));
@@ -897,10 +1186,10 @@ public void initialize() {
                 stage.setScene(scene);
                 stage.show();
 
-                System.out.println("Lose screen created successfully!");
+                log.info("Lose screen created successfully!");
 
             } catch (Exception e) {
-                System.err.println("Error creating lose screen: " + e.getMessage());
+                log.warn("Error creating lose screen: {}", e.getMessage());
                 e.printStackTrace();
             }
         });
@@ -916,14 +1205,10 @@ public void initialize() {
         });
     }
 
+    // On the floor showing now, network messages arrive through the first floor's controller
     private void showInfo(String title, String message) {
-        Platform.runLater(() -> {
-            Alert alert = new Alert(Alert.AlertType.INFORMATION);
-            alert.setTitle(title);
-            alert.setHeaderText(null);
-            alert.setContentText(message);
-            alert.showAndWait();
-        });
+        MultiplayerController shown = currentInstance != null ? currentInstance : this;
+        shown.notifications.show(title, message);
     }
 
     // Static method to get current floor
@@ -933,24 +1218,32 @@ public void initialize() {
 
     // Static cleanup method
     public static void cleanup() {
+        sessionToken = null; // leaving on purpose, don't reconnect
         try {
             MultiplayerGameTimer.stopTimer();
+            if (currentInstance != null) {
+                currentInstance.loop.stop();
+            }
 
             if (out != null) {
-                out.println("PLAYER_DISCONNECTING");
+                sendToServer("PLAYER_DISCONNECTING");
                 out.close();
             }
-            if (in != null) {
-                in.close();
-            }
             if (socket != null) {
                 socket.close();
             }
             connectedToServer = false;
             gameStarted = false;
-            System.out.println("Network connection closed properly");
+            binaryProtocol = false;
+            snapshotProtocol = false;
+            inputProtocol = false;
+            clockProtocol = false;
+            clockSync = new ClockSync();
+            matchDeadline = 0;
+            snapshotVersion = 0;
+            log.info("Network connection closed properly");
         } catch (IOException e) {
-            System.err.println("Error closing network connection: " + e.getMessage());
+            log.warn("Error closing network connection: {}", e.getMessage());
         }
     }
 
@@ -1,13 +1,20 @@
-import javafx.animation.AnimationTimer;
-import javafx.application.Platform;
-
 public class MultiplayerGameTimer {
-    private static AnimationTimer timer;
-    private static int timeRemaining = 600; // 10 minutes in seconds
-    private static boolean timerRunning = false;
-    private static long lastUpdateTime = 0;
+    private static final Log log = Log.get("MultiplayerGameTimer");
     private static Runnable onTimeUpdate;
     private static Runnable onTimeUp;
+    // 10 minutes, counted on the shared GameClock
+    private static final GameClock.Countdown clock = GameClock.countdown(600)
+            .onSecond(seconds -> {
+                if (onTimeUpdate != null) {
+                    onTimeUpdate.run();
+                }
+            })
+            .onTimeUp(() -> {
+                stopTimer();
+                if (onTimeUp != null) {
+                    onTimeUp.run();
+                }
+            });
 
     public static void initialize(Runnable updateCallback, Runnable timeUpCallback) {
         onTimeUpdate = updateCallback;
@@ -15,68 +22,40 @@ public class MultiplayerGameTimer {
     }
 
     public static void startTimer() {
-        if (timerRunning) return;
-        
-        timerRunning = true;
-        lastUpdateTime = System.nanoTime();
-        
-        timer = new AnimationTimer() {
-            @Override
-            public void handle(long now) {
-                long elapsedNanos = now - lastUpdateTime;
-                long elapsedSeconds = elapsedNanos / 1_000_000_000;
-                
-                if (elapsedSeconds >= 1) {
-                    timeRemaining--;
-                    lastUpdateTime = now;
-                    
-                    Platform.runLater(() -> {
-                        if (onTimeUpdate != null) {
-                            onTimeUpdate.run();
-                        }
-                        
-                        if (timeRemaining <= 0) {
-                            stopTimer();
-                            if (onTimeUp != null) {
-                                onTimeUp.run();
-                            }
-                        }
-                    });
-                }
-            }
-        };
-        
-        timer.start();
-        System.out.println("Game timer started! Time remaining: " + timeRemaining + "s");
+        if (clock.isRunning()) return;
+
+        clock.start();
+        log.info("Game timer started! Time remaining: {}s", getTimeRemaining());
     }
 
-    public static void stopTimer() {
-        if (timer != null) {
-            timer.stop();
-            timer = null;
+    /** Count down to the match deadline (System.nanoTime()), again later to correct it */
+    public static void runUntil(long deadline) {
+        boolean wasRunning = clock.isRunning();
+        clock.runUntil(deadline);
+        if (!wasRunning) {
+            log.info("Game timer started! Time remaining: {}s", getTimeRemaining());
         }
-        timerRunning = false;
-        System.out.println("Game timer stopped");
+    }
+
+    public static void stopTimer() {
+        clock.pause();
+        log.info("Game timer stopped");
     }
 
     public static int getTimeRemaining() {
-        return timeRemaining;
+        return clock.getRemainingSeconds();
     }
 
     public static String getFormattedTime() {
-        int minutes = timeRemaining / 60;
-        int seconds = timeRemaining % 60;
-        return String.format("%02d:%02d", minutes, seconds);
+        return clock.format();
     }
 
     public static boolean isRunning() {
-        return timerRunning;
+        return clock.isRunning();
     }
 
     public static void reset() {
-        stopTimer();
-        timeRemaining = 600;
-        lastUpdateTime = 0;
-        System.out.println("Game timer reset to 10:00");
+        clock.reset();
+        log.info("Game timer reset to 10:00");
     }
 }
\ No newline at end of file
@@ -0,0 +1,302 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking transport for the GameServer. One acceptor thread hands new sockets
+ * to a small set of selector event loops, each of which serves many connections.
+ * The wire format is the same as the blocking sockets: text lines mixed with the binary
+ * frames described in WireProtocol.
+ */
+public class NioTransport {
+    private static final Log log = Log.get("NioTransport");
+    private static final int READ_BUFFER_SIZE = 4096;
+
+    private final int port;
+    private final EventLoop[] loops;
+    private int nextLoop = 0;
+
+    public NioTransport(int port, int ioThreads) {
+        this.port = port;
+        this.loops = new EventLoop[Math.max(1, ioThreads)];
+    }
+
+    /** Start the event loops and accept connections forever on the calling thread */
+    public void run() throws IOException {
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop();
+            Thread thread = new Thread(loops[i], "nio-loop-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(port), 1024);
+            log.info("NIO transport listening with {} event loop(s)", loops.length);
+
+            while (true) {
+                SocketChannel channel = serverChannel.accept();
+                try {
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                    NioConnection connection = new NioConnection(channel, loops[nextLoop]);
+                    nextLoop = (nextLoop + 1) % loops.length;
+
+                    ClientHandler handler = new ClientHandler(connection);
+                    connection.handler = handler;
+                    GameServer.connected(handler);
+                    connection.loop.register(connection);
+                } catch (IOException e) {
+                    log.warn("Could not set up client connection: {}", e.getMessage());
+                    channel.close();
+                }
+            }
+        }
+    }
+
+    /** A selector thread that owns the reads and deferred writes of its connections */
+    private static class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        EventLoop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        void register(NioConnection connection) {
+            execute(() -> {
+                try {
+                    synchronized (connection) {
+                        connection.key = connection.channel.register(selector, SelectionKey.OP_READ, connection);
+                        // Frames queued, or partly written, before registration still need to go out
+                        if (connection.writing != null || !connection.outbound.isEmpty()) {
+                            connection.writeInterest = true;
+                            connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        }
+                    }
+                } catch (IOException | CancelledKeyException e) {
+                    connection.close();
+                }
+            });
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select();
+
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        NioConnection connection = (NioConnection) key.attachment();
+                        if (!key.isValid()) {
+                            connection.close();
+                            continue;
+                        }
+                        if (key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    }
+                } catch (Exception e) {
+                    log.error("Event loop error", e);
+                }
+            }
+        }
+    }
+
+    /** One client socket, reading into a direct buffer and splitting it into lines and frames */
+    static class NioConnection implements Connection {
+        private final SocketChannel channel;
+        private final EventLoop loop;
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        private final byte[] lineBytes = new byte[WireProtocol.MAX_LINE_LENGTH];
+        private int lineLength = 0;
+        // Length of the binary frame being collected in lineBytes, 0 while reading text
+        private int frameLength = 0;
+
+        private final OutboundQueue outbound = new OutboundQueue(OutboundQueue.DEFAULT_CAPACITY);
+        // Frame the socket only took part of, finished before the next one is taken from the queue
+        private ByteBuffer writing;
+        private boolean writeInterest = false;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+
+        private SelectionKey key;
+        private ClientHandler handler;
+
+        NioConnection(SocketChannel channel, EventLoop loop) {
+            this.channel = channel;
+            this.loop = loop;
+        }
+
+        private void onReadable() {
+            try {
+                int read = channel.read(readBuffer);
+                if (read < 0) {
+                    close();
+                    return;
+                }
+                readBuffer.flip();
+                while (readBuffer.hasRemaining()) {
+                    byte b = readBuffer.get();
+                    if (frameLength > 0) {
+                        lineBytes[lineLength++] = b;
+                        if (lineLength == frameLength) {
+                            frameLength = 0;
+                            lineLength = 0;
+                            // Decoded straight from the byte array, no objects created
+                            handler.onPositionFrame(WireProtocol.positionX(lineBytes), WireProtocol.positionY(lineBytes));
+                            if (closed.get()) return;
+                        }
+                    } else if (lineLength == 0 && WireProtocol.isBinaryOpcode(b)) {
+                        frameLength = WireProtocol.frameLength(b & 0xff);
+                        if (frameLength < 0) {
+                            log.warn("Unknown frame opcode from {}, closing", describe());
+                            close();
+                            return;
+                        }
+                        lineBytes[lineLength++] = b;
+                    } else if (b == '\n') {
+                        int end = lineLength;
+                        if (end > 0 && lineBytes[end - 1] == '\r') end--;
+                        String line = new String(lineBytes, 0, end, StandardCharsets.UTF_8);
+                        lineLength = 0;
+                        handler.onMessage(line);
+                        if (closed.get()) return;
+                    } else if (lineLength < WireProtocol.MAX_LINE_LENGTH) {
+                        lineBytes[lineLength++] = b;
+                    } else {
+                        log.warn("Line too long from {}, closing", describe());
+                        close();
+                        return;
+                    }
+                }
+                readBuffer.clear();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void onWritable() {
+            synchronized (this) {
+                try {
+                    flushPending();
+                } catch (IOException e) {
+                    closeLater();
+                    return;
+                }
+                if (writing == null && outbound.isEmpty() && writeInterest) {
+                    writeInterest = false;
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            }
+        }
+
+        // Caller holds the lock, returns true once everything queued has been written
+        private boolean flushPending() throws IOException {
+            while (true) {
+                if (writing == null) {
+                    writing = outbound.poll();
+                    if (writing == null) return true;
+                }
+                channel.write(writing);
+                if (writing.hasRemaining()) {
+                    return false; // socket buffer full, wait for OP_WRITE
+                }
+                writing = null;
+            }
+        }
+
+        @Override
+        public void send(ByteBuffer frame, OutboundQueue.Delivery delivery) {
+            if (closed.get()) return;
+            if (!outbound.offer(frame, delivery)) {
+                log.warn("Outbound queue full for {}, dropping slow client", describe());
+                GameServer.countSlowClientDropped();
+                closeLater();
+                return;
+            }
+            synchronized (this) {
+                if (writeInterest) {
+                    return; // the loop will drain it
+                }
+                boolean flushed;
+                try {
+                    // Fast path: write straight away from the calling thread
+                    flushed = flushPending();
+                } catch (IOException e) {
+                    closeLater();
+                    return;
+                }
+                if (!flushed && key != null) {
+                    try {
+                        writeInterest = true;
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        loop.selector.wakeup();
+                    } catch (CancelledKeyException e) {
+                        closeLater();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public OutboundQueue outbound() {
+            return outbound;
+        }
+
+        // Closing runs the disconnect callback, keep that off the sender's lock
+        private void closeLater() {
+            loop.execute(this::close);
+        }
+
+        @Override
+        public void close() {
+            if (!closed.compareAndSet(false, true)) return;
+            outbound.close();
+            try {
+                if (key != null) key.cancel();
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Error closing channel: {}", e.getMessage());
+            }
+            if (handler != null) {
+                handler.onDisconnect();
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !closed.get() && channel.isOpen();
+        }
+
+        @Override
+        public String describe() {
+            try {
+                return String.valueOf(channel.getRemoteAddress());
+            } catch (IOException e) {
+                return "closed channel";
+            }
+        }
+    }
+}
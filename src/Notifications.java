@@ -0,0 +1,113 @@
+import javafx.animation.FadeTransition;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.VBox;
+import javafx.util.Duration;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Short messages ("Wrong Order", "Locked", ...) shown as toasts over the top of a level instead of
+ * modal Alerts. Nothing waits for them: the player keeps walking and the timer keeps counting
+ * while a toast shows, and it fades away by itself.
+ *
+ * At most MAX_VISIBLE toasts show at once, later ones queue. A message that is already showing or
+ * queued is not added again, a repeat only keeps the toast up longer and counts how often it came,
+ * so walking over the same washroom door again and again keeps one toast on screen.
+ */
+final class Notifications {
+    private static final int MAX_VISIBLE = 3;
+    private static final Duration SHOW_FOR = Duration.seconds(2.5);
+    private static final Duration FADE_OUT = Duration.millis(300);
+
+    private final Pane root;
+    private final VBox box = new VBox(6);
+    // Showing toasts by their text, and the texts still waiting for a free slot
+    private final Map<String, Toast> showing = new HashMap<>();
+    private final ArrayDeque<String> queued = new ArrayDeque<>();
+
+    private static final class Toast {
+        final Label label;
+        final PauseTransition timer = new PauseTransition(SHOW_FOR);
+        final FadeTransition fade;
+        int repeats = 1;
+
+        Toast(Label label) {
+            this.label = label;
+            this.fade = new FadeTransition(FADE_OUT, label);
+        }
+    }
+
+    Notifications(Pane root) {
+        this.root = root;
+        box.setAlignment(Pos.TOP_CENTER);
+        box.setLayoutX(10);
+        box.setLayoutY(10);
+        box.prefWidthProperty().bind(root.widthProperty().subtract(20));
+        box.setMouseTransparent(true); // clicks still reach the level to give it focus
+    }
+
+    /** Show a toast, from any thread */
+    void show(String title, String message) {
+        if (!Platform.isFxApplicationThread()) {
+            Platform.runLater(() -> show(title, message));
+            return;
+        }
+        String text = title + ": " + message;
+        Toast toast = showing.get(text);
+        if (toast != null) {
+            toast.repeats++;
+            toast.label.setText(text + " (x" + toast.repeats + ")");
+            toast.fade.stop();
+            toast.label.setOpacity(1);
+            toast.timer.playFromStart();
+            return;
+        }
+        if (queued.contains(text)) {
+            return;
+        }
+        if (showing.size() >= MAX_VISIBLE) {
+            queued.add(text);
+            return;
+        }
+        display(text);
+    }
+
+    private void display(String text) {
+        if (box.getParent() == null) {
+            root.getChildren().add(box);
+        }
+        box.toFront();
+
+        Label label = new Label(text);
+        label.setWrapText(true);
+        label.setMaxWidth(420);
+        label.setStyle("-fx-background-color: rgba(30, 34, 38, 0.85); -fx-text-fill: white; -fx-font-size: 13px;"
+                + " -fx-padding: 6 12 6 12; -fx-background-radius: 6;");
+        Toast toast = new Toast(label);
+        showing.put(text, toast);
+        box.getChildren().add(label);
+
+        toast.timer.setOnFinished(e -> {
+            toast.fade.setFromValue(1);
+            toast.fade.setToValue(0);
+            toast.fade.setOnFinished(done -> remove(text, toast));
+            toast.fade.playFromStart();
+        });
+        toast.timer.play();
+    }
+
+    private void remove(String text, Toast toast) {
+        box.getChildren().remove(toast.label);
+        showing.remove(text);
+        String next = queued.poll();
+        if (next != null) {
+            display(next);
+        }
+    }
+}
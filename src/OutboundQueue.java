@@ -0,0 +1,170 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Frames waiting to be written to one client. Broadcasting only ever adds to this queue, so a
+ * player with a full TCP window holds up nobody but themselves.
+ *
+ *   LATEST   - position batches and snapshots, a newer one replaces the one still waiting
+ *   NORMAL   - game events, limited by the capacity; a client that falls that far behind is dropped
+ *   RELIABLE - match results, queued whatever the depth so they are never lost to the limit
+ */
+class OutboundQueue {
+    static final int DEFAULT_CAPACITY = 256;
+
+    enum Delivery {
+        LATEST, NORMAL, RELIABLE
+    }
+
+    private final int capacity;
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    // The LATEST entry still waiting, a newer one takes its place in the line
+    private Entry latest;
+    private boolean closed = false;
+
+    // A lock rather than synchronized so a writer parked in take() doesn't pin a virtual thread
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    private int maxDepth = 0;
+    private long coalesced = 0;
+
+    OutboundQueue(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Queue a frame, returns false if the queue is over capacity and the client should be dropped.
+     * That happens once, the queue closes itself and ignores everything after it.
+     */
+    boolean offer(ByteBuffer frame, Delivery delivery) {
+        lock.lock();
+        try {
+            if (closed) return true;
+
+            if (delivery == Delivery.LATEST && latest != null) {
+                latest.frame = frame.duplicate();
+                coalesced++;
+                return true;
+            }
+            if (delivery == Delivery.NORMAL && entries.size() >= capacity) {
+                closeLocked();
+                return false;
+            }
+
+            Entry entry = new Entry(frame.duplicate());
+            if (delivery == Delivery.LATEST) {
+                latest = entry;
+            }
+            entries.add(entry);
+            maxDepth = Math.max(maxDepth, entries.size());
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Next frame to write, or null if there is none */
+    ByteBuffer poll() {
+        lock.lock();
+        try {
+            return next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Wait up to the timeout for a frame, null if none arrived or the queue was closed */
+    ByteBuffer take(long timeout, TimeUnit unit) throws InterruptedException {
+        lock.lock();
+        try {
+            long nanos = unit.toNanos(timeout);
+            while (entries.isEmpty() && !closed && nanos > 0) {
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the lock
+    private ByteBuffer next() {
+        Entry entry = entries.poll();
+        if (entry == null) return null;
+        if (entry == latest) {
+            latest = null;
+        }
+        return entry.frame;
+    }
+
+    /** Drop everything still waiting and wake the writer so it can exit */
+    void close() {
+        lock.lock();
+        try {
+            closeLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeLocked() {
+        closed = true;
+        entries.clear();
+        latest = null;
+        notEmpty.signalAll();
+    }
+
+    boolean isEmpty() {
+        lock.lock();
+        try {
+            return entries.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int depth() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int maxDepth() {
+        lock.lock();
+        try {
+            return maxDepth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** How many LATEST frames were replaced before they could be written */
+    long coalesced() {
+        lock.lock();
+        try {
+            return coalesced;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    private static class Entry {
+        ByteBuffer frame;
+
+        Entry(ByteBuffer frame) {
+            this.frame = frame;
+        }
+    }
+}
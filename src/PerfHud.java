@@ -0,0 +1,97 @@
+import javafx.scene.Node;
+import javafx.scene.control.Label;
+import javafx.scene.input.KeyCode;
+import javafx.scene.layout.Pane;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Performance overlay of a GameLoop, shown and hidden with F3 (the loop binds it on its InputState,
+ * which a level attaches to its focused node or to the scene). It tells client lag from network
+ * lag: frame time, how long a key press takes to move the player, how long a step's collision
+ * checks take and, in multiplayer, the round trip to the server.
+ *
+ * The loop records into plain long fields every frame; the label is only rewritten a few times a
+ * second while it is showing, so a hidden HUD costs a few additions per frame and allocates nothing.
+ */
+final class PerfHud {
+    static final KeyCode TOGGLE_KEY = KeyCode.F3;
+    private static final long REFRESH_NANOS = 250_000_000L;
+
+    private final Node view;
+    private Label label;
+    private boolean visible = false;
+    private long lastRefresh = 0;
+    // Round trip to the server in nanoseconds, negative while unknown; null outside multiplayer
+    private LongSupplier roundTrip;
+
+    // Recorded by the loop, all in nanoseconds; the worst values are since the last refresh
+    private long averageInput = 0;
+    private long worstInput = 0;
+    private long inputs = 0;
+    private long averageStep = 0;
+    private long worstStep = 0;
+    private long steps = 0;
+    private long worstFrame = 0;
+
+    PerfHud(Node view) {
+        this.view = view;
+    }
+
+    void showRoundTrip(LongSupplier roundTripNanos) {
+        this.roundTrip = roundTripNanos;
+    }
+
+    void toggle() {
+        if (label == null) {
+            if (!(view instanceof Pane pane)) return;
+            label = new Label();
+            label.setMouseTransparent(true);
+            label.setLayoutX(4);
+            label.setLayoutY(4);
+            label.setStyle("-fx-background-color: rgba(0,0,0,0.65); -fx-text-fill: #7CFC00;"
+                    + " -fx-font-family: monospace; -fx-font-size: 11px; -fx-padding: 3 6 3 6;");
+            pane.getChildren().add(label);
+        }
+        visible = !visible;
+        label.setVisible(visible);
+        if (visible) {
+            label.toFront();
+            lastRefresh = 0;
+        }
+    }
+
+    /** A key press moved the player, pressed nanos ago */
+    void recordInput(long nanos) {
+        inputs++;
+        averageInput = inputs == 1 ? nanos : averageInput + (nanos - averageInput) / 8;
+        worstInput = Math.max(worstInput, nanos);
+    }
+
+    /** One step of the player, its move and collision checks */
+    void recordStep(long nanos) {
+        steps++;
+        averageStep = steps == 1 ? nanos : averageStep + (nanos - averageStep) / 16;
+        worstStep = Math.max(worstStep, nanos);
+    }
+
+    /** Once per frame, after the loop's own frame metrics were updated */
+    void frame(long now, long frame, GameLoop loop) {
+        worstFrame = Math.max(worstFrame, frame);
+        if (!visible || now - lastRefresh < REFRESH_NANOS) return;
+        lastRefresh = now;
+
+        String rtt = "";
+        if (roundTrip != null) {
+            long nanos = roundTrip.getAsLong();
+            rtt = nanos < 0 ? "\nrtt        n/a" : String.format("%nrtt        %6.1f ms", nanos / 1e6);
+        }
+        label.setText(String.format("%5.1f fps%nframe      %6.2f ms  worst %6.2f%n"
+                        + "key->move  %6.2f ms  worst %6.2f%ncollision  %6.3f ms  worst %6.3f%s",
+                loop.getFps(), loop.getAverageFrameMillis(), worstFrame / 1e6,
+                averageInput / 1e6, worstInput / 1e6, averageStep / 1e6, worstStep / 1e6, rtt));
+        worstFrame = 0;
+        worstInput = 0;
+        worstStep = 0;
+    }
+}
@@ -0,0 +1,325 @@
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live numbers of a running GameServer: connections, messages received per type, how long
+ * broadcasts take to fan out, outbound queue depths and how long matches last. Published as the
+ * JMX bean GameServer:type=Metrics and, with --metrics-port, as Prometheus text on
+ * http://127.0.0.1:<port>/metrics.
+ *
+ * Recording is a LongAdder increment, plus a short bucket scan and a nanoTime pair for the
+ * timings; nothing allocates or locks. Queue depths aren't recorded at all, they are read from
+ * the queues when someone asks.
+ */
+final class ServerMetrics {
+    private static final Log log = Log.get("ServerMetrics");
+
+    // Message types the server understands, anything else counts as OTHER
+    private static final String[] MESSAGE_TYPES = {
+            "POSITION_UPDATE", "MOVE", "SNAPSHOT_ACK", "CLOCK", "ITEM_COLLECTED", "FLOOR_CHANGED",
+            "ROOM_VISITED", "RESYNC", "HELLO", "JOIN", "RESUME", "VICTORY", "TIME_UP", "PLAYER_DISCONNECTING"};
+    private static final int POSITION_FRAME = MESSAGE_TYPES.length;
+    private static final int OTHER = MESSAGE_TYPES.length + 1;
+
+    private static final LongAdder connectionsAccepted = new LongAdder();
+    private static final AtomicInteger connectionsOpen = new AtomicInteger();
+    private static final LongAdder[] messagesReceived = new LongAdder[MESSAGE_TYPES.length + 2];
+    static {
+        for (int i = 0; i < messagesReceived.length; i++) {
+            messagesReceived[i] = new LongAdder();
+        }
+    }
+
+    // Buckets in nanoseconds: a broadcast takes microseconds, a match up to GAME_DURATION plus the close
+    static final Histogram eventFanout = new Histogram("gameserver_broadcast_fanout_seconds", "kind=\"event\"",
+            1_000, 5_000, 10_000, 50_000, 100_000, 500_000, 1_000_000, 5_000_000, 10_000_000, 50_000_000);
+    static final Histogram tickFanout = new Histogram("gameserver_broadcast_fanout_seconds", "kind=\"tick\"",
+            1_000, 5_000, 10_000, 50_000, 100_000, 500_000, 1_000_000, 5_000_000, 10_000_000, 50_000_000);
+    static final Histogram matchDuration = new Histogram("gameserver_match_duration_seconds", "",
+            30_000_000_000L, 60_000_000_000L, 120_000_000_000L, 300_000_000_000L, 600_000_000_000L, 700_000_000_000L);
+
+    private ServerMetrics() {
+    }
+
+    /**
+     * Counts into fixed buckets, each an upper bound in nanoseconds, with a last one for everything
+     * above. Also keeps the sum and the largest value seen.
+     */
+    static final class Histogram {
+        private final String name;
+        private final String labels;
+        private final long[] bounds;
+        private final LongAdder[] buckets;
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        Histogram(String name, String labels, long... bounds) {
+            this.name = name;
+            this.labels = labels;
+            this.bounds = bounds;
+            this.buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            int bucket = 0;
+            while (bucket < bounds.length && nanos > bounds[bucket]) bucket++;
+            buckets[bucket].increment();
+            sum.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        long count() {
+            long count = 0;
+            for (LongAdder bucket : buckets) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+
+        double meanMillis() {
+            long count = count();
+            return count == 0 ? 0 : sum.sum() / 1e6 / count;
+        }
+
+        double maxMillis() {
+            return max.get() / 1e6;
+        }
+
+        /** _bucket lines with cumulative counts, then _sum and _count */
+        void writeTo(StringBuilder out) {
+            String prefix = labels.isEmpty() ? "{" : "{" + labels + ",";
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += buckets[i].sum();
+                String le = i < bounds.length ? Double.toString(bounds[i] / 1e9) : "+Inf";
+                out.append(name).append("_bucket").append(prefix).append("le=\"").append(le).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            String suffix = labels.isEmpty() ? " " : "{" + labels + "} ";
+            out.append(name).append("_sum").append(suffix).append(sum.sum() / 1e9).append('\n');
+            out.append(name).append("_count").append(suffix).append(cumulative).append('\n');
+        }
+    }
+
+    static void connectionAccepted() {
+        connectionsAccepted.increment();
+        connectionsOpen.incrementAndGet();
+    }
+
+    static void connectionClosed() {
+        connectionsOpen.decrementAndGet();
+    }
+
+    /** A text line from a client, counted by the type before its first ':' */
+    static void messageReceived(String line) {
+        int end = line.indexOf(':');
+        if (end < 0) end = line.length();
+        for (int i = 0; i < MESSAGE_TYPES.length; i++) {
+            String type = MESSAGE_TYPES[i];
+            if (type.length() == end && line.startsWith(type)) {
+                messagesReceived[i].increment();
+                return;
+            }
+        }
+        messagesReceived[OTHER].increment();
+    }
+
+    static void positionFrameReceived() {
+        messagesReceived[POSITION_FRAME].increment();
+    }
+
+    private static String messageType(int index) {
+        return index < MESSAGE_TYPES.length ? MESSAGE_TYPES[index] : index == POSITION_FRAME ? "POSITION_FRAME" : "OTHER";
+    }
+
+    /** Everything in the Prometheus text format, version 0.0.4 */
+    static String prometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        counter(out, "gameserver_connections_accepted_total", "Client connections accepted", connectionsAccepted.sum());
+        gauge(out, "gameserver_connections_open", "Client connections open now", connectionsOpen.get());
+        gauge(out, "gameserver_matches_active", "Matches running", GameServer.getActiveMatchCount());
+        gauge(out, "gameserver_spectators", "Spectator connections", GameServer.getSpectators().size());
+
+        out.append("# HELP gameserver_messages_received_total Messages received from clients, by type\n");
+        out.append("# TYPE gameserver_messages_received_total counter\n");
+        for (int i = 0; i < messagesReceived.length; i++) {
+            out.append("gameserver_messages_received_total{type=\"").append(messageType(i)).append("\"} ")
+                    .append(messagesReceived[i].sum()).append('\n');
+        }
+        counter(out, "gameserver_position_updates_received_total", "Positions and moves applied", GameServer.getUpdatesReceived());
+        counter(out, "gameserver_position_updates_sent_total", "Positions sent to clients", GameServer.getUpdatesSent());
+        counter(out, "gameserver_snapshots_sent_total", "State snapshots sent", GameServer.getSnapshotsSent());
+        counter(out, "gameserver_slow_clients_dropped_total", "Clients dropped for a full outbound queue", GameServer.getSlowClientsDropped());
+        counter(out, "gameserver_positions_rejected_total", "Positions rejected as impossible moves", GameServer.getPositionsRejected());
+        counter(out, "gameserver_log_entries_dropped_total", "Log entries dropped", Log.getDropped());
+
+        out.append("# HELP gameserver_broadcast_fanout_seconds Time to queue one event or one tick for every recipient\n");
+        out.append("# TYPE gameserver_broadcast_fanout_seconds histogram\n");
+        eventFanout.writeTo(out);
+        tickFanout.writeTo(out);
+        out.append("# HELP gameserver_match_duration_seconds Started matches from start to finish\n");
+        out.append("# TYPE gameserver_match_duration_seconds histogram\n");
+        matchDuration.writeTo(out);
+
+        out.append("# HELP gameserver_send_queue_depth Frames waiting in a player's outbound queue\n");
+        out.append("# TYPE gameserver_send_queue_depth gauge\n");
+        StringBuilder maxDepths = new StringBuilder();
+        for (Match match : GameServer.getActiveMatches()) {
+            for (ClientHandler client : match.getClients()) {
+                String labels = "{match=\"" + match.getMatchId() + "\",player=\"" + client.getPlayerId() + "\"} ";
+                out.append("gameserver_send_queue_depth").append(labels).append(client.getOutboundDepth()).append('\n');
+                maxDepths.append("gameserver_send_queue_max_depth").append(labels).append(client.getOutboundMaxDepth()).append('\n');
+            }
+        }
+        out.append("# HELP gameserver_send_queue_max_depth Deepest a player's outbound queue has been\n");
+        out.append("# TYPE gameserver_send_queue_max_depth gauge\n");
+        out.append(maxDepths);
+        return out.toString();
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    /** Serve /metrics on the loopback interface, the numbers are for the machine running the server */
+    static void serveHttp(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = prometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        // The default executor runs requests on the server's own single thread, enough for a scraper
+        server.start();
+        log.info("Metrics on http://{}:{}/metrics", InetAddress.getLoopbackAddress().getHostAddress(), port);
+    }
+
+    static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName("GameServer:type=Metrics"));
+        } catch (JMException e) {
+            log.warn("Could not register the metrics MBean: {}", e.getMessage());
+        }
+    }
+
+    /** The same numbers as read-only JMX attributes, histograms as their count, mean and max */
+    private static final class Bean implements DynamicMBean {
+        private final MBeanInfo info;
+
+        Bean() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            attribute(attributes, "ConnectionsAccepted", "long");
+            attribute(attributes, "ConnectionsOpen", "long");
+            attribute(attributes, "ActiveMatches", "long");
+            attribute(attributes, "Spectators", "long");
+            for (int i = 0; i < messagesReceived.length; i++) {
+                attribute(attributes, "Messages_" + messageType(i), "long");
+            }
+            for (String histogram : new String[] {"EventFanout", "TickFanout", "MatchDuration"}) {
+                attribute(attributes, histogram + "Count", "long");
+                attribute(attributes, histogram + "MeanMillis", "double");
+                attribute(attributes, histogram + "MaxMillis", "double");
+            }
+            attribute(attributes, "SendQueueDepthMax", "long");
+            attribute(attributes, "SendQueueDepthTotal", "long");
+            info = new MBeanInfo(Bean.class.getName(), "GameServer metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+
+        private static void attribute(List<MBeanAttributeInfo> attributes, String name, String type) {
+            attributes.add(new MBeanAttributeInfo(name, type, name, true, false, false));
+        }
+
+        @Override
+        public Object getAttribute(String name) throws AttributeNotFoundException {
+            for (int i = 0; i < messagesReceived.length; i++) {
+                if (name.equals("Messages_" + messageType(i))) return messagesReceived[i].sum();
+            }
+            return switch (name) {
+                case "ConnectionsAccepted" -> connectionsAccepted.sum();
+                case "ConnectionsOpen" -> (long) connectionsOpen.get();
+                case "ActiveMatches" -> (long) GameServer.getActiveMatchCount();
+                case "Spectators" -> (long) GameServer.getSpectators().size();
+                case "EventFanoutCount" -> eventFanout.count();
+                case "EventFanoutMeanMillis" -> eventFanout.meanMillis();
+                case "EventFanoutMaxMillis" -> eventFanout.maxMillis();
+                case "TickFanoutCount" -> tickFanout.count();
+                case "TickFanoutMeanMillis" -> tickFanout.meanMillis();
+                case "TickFanoutMaxMillis" -> tickFanout.maxMillis();
+                case "MatchDurationCount" -> matchDuration.count();
+                case "MatchDurationMeanMillis" -> matchDuration.meanMillis();
+                case "MatchDurationMaxMillis" -> matchDuration.maxMillis();
+                case "SendQueueDepthMax", "SendQueueDepthTotal" -> {
+                    long deepest = 0, total = 0;
+                    for (Match match : GameServer.getActiveMatches()) {
+                        for (ClientHandler client : match.getClients()) {
+                            deepest = Math.max(deepest, client.getOutboundDepth());
+                            total += client.getOutboundDepth();
+                        }
+                    }
+                    yield name.equals("SendQueueDepthMax") ? deepest : total;
+                }
+                default -> throw new AttributeNotFoundException(name);
+            };
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String name : attributes) {
+                try {
+                    list.add(new Attribute(name, getAttribute(name)));
+                } catch (AttributeNotFoundException e) {
+                    // left out, as the JMX contract asks
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException {
+            throw new MBeanException(new UnsupportedOperationException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            return info;
+        }
+    }
+}
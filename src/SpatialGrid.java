@@ -0,0 +1,117 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uniform grid over a floor plan. Every item is stored, together with the bounds it had when it
+ * was added, in each cell those bounds overlap. A query then only looks at the few cells around
+ * the player, so the cost of a collision check no longer depends on how many nodes the floor has.
+ *
+ * Bounds are only read once, so this is meant for things that don't move: walls, doors, lifts.
+ * Items outside the grid's area are clamped into the border cells, they still get found.
+ */
+class SpatialGrid<T> {
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    private final List<List<Entry<T>>> cells;
+    private final Map<T, Entry<T>> entries = new HashMap<>();
+    // Bumped on every query so an item spanning several cells is only reported once
+    private int queryStamp = 0;
+
+    SpatialGrid(double width, double height, double cellSize) {
+        this.cellSize = cellSize;
+        this.columns = Math.max(1, (int) Math.ceil(width / cellSize));
+        this.rows = Math.max(1, (int) Math.ceil(height / cellSize));
+        this.cells = new ArrayList<>(columns * rows);
+        for (int i = 0; i < columns * rows; i++) {
+            cells.add(new ArrayList<>(2));
+        }
+    }
+
+    void add(T item, double minX, double minY, double maxX, double maxY) {
+        Entry<T> entry = new Entry<>(item, minX, minY, maxX, maxY);
+        entries.put(item, entry);
+        for (int row = row(minY); row <= row(maxY); row++) {
+            for (int column = column(minX); column <= column(maxX); column++) {
+                cells.get(row * columns + column).add(entry);
+            }
+        }
+    }
+
+    void remove(T item) {
+        Entry<T> entry = entries.remove(item);
+        if (entry == null) return;
+        for (int row = row(entry.minY); row <= row(entry.maxY); row++) {
+            for (int column = column(entry.minX); column <= column(entry.maxX); column++) {
+                cells.get(row * columns + column).remove(entry);
+            }
+        }
+    }
+
+    /**
+     * Put the items whose bounds intersect the box into out (cleared first) and return how many.
+     * Touching edges count, the same as javafx.geometry.Bounds.intersects.
+     */
+    int query(double minX, double minY, double maxX, double maxY, List<T> out) {
+        out.clear();
+        int stamp = ++queryStamp;
+        for (int row = row(minY); row <= row(maxY); row++) {
+            for (int column = column(minX); column <= column(maxX); column++) {
+                List<Entry<T>> cell = cells.get(row * columns + column);
+                for (int i = 0; i < cell.size(); i++) {
+                    Entry<T> entry = cell.get(i);
+                    if (entry.stamp == stamp) continue;
+                    entry.stamp = stamp;
+                    if (StaticGeometry.intersects(entry.minX, entry.minY, entry.maxX, entry.maxY, minX, minY, maxX, maxY)) {
+                        out.add(entry.item);
+                    }
+                }
+            }
+        }
+        return out.size();
+    }
+
+    /** Whether anything intersects the box, stops at the first hit */
+    boolean intersectsAny(double minX, double minY, double maxX, double maxY) {
+        for (int row = row(minY); row <= row(maxY); row++) {
+            for (int column = column(minX); column <= column(maxX); column++) {
+                List<Entry<T>> cell = cells.get(row * columns + column);
+                for (int i = 0; i < cell.size(); i++) {
+                    Entry<T> entry = cell.get(i);
+                    if (StaticGeometry.intersects(entry.minX, entry.minY, entry.maxX, entry.maxY, minX, minY, maxX, maxY)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private int column(double x) {
+        return Math.min(columns - 1, Math.max(0, (int) Math.floor(x / cellSize)));
+    }
+
+    private int row(double y) {
+        return Math.min(rows - 1, Math.max(0, (int) Math.floor(y / cellSize)));
+    }
+
+    private static class Entry<T> {
+        final T item;
+        final double minX, minY, maxX, maxY;
+        int stamp;
+
+        Entry(T item, double minX, double minY, double maxX, double maxY) {
+            this.item = item;
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-only stream of every running match for spectators, a projector or an instructor watching
+ * a whole lab. A spectator gets the lines the players of each match get, prefixed with the match:
+ * MATCH:<match id>:<message>, e.g. MATCH:3:ROOM_VISITED:1:12.
+ *
+ * Nothing is encoded per spectator. An event is encoded once and the same buffer is queued for
+ * every spectator, and the positions that changed in all matches during a tick are collected into
+ * one buffer that goes out after the tick. Spectators are never players, they don't join the lobby
+ * and don't count towards starting a match.
+ */
+final class SpectatorFeed {
+    private final Set<ClientHandler> spectators = ConcurrentHashMap.newKeySet();
+    // PLAYER_POSITION lines of all matches during the current tick, only the tick thread touches it
+    private final StringBuilder tickLines = new StringBuilder();
+    private int tickPositions = 0;
+
+    /** A new spectator, caught up with the state of the running matches */
+    void add(ClientHandler spectator, Iterable<Match> running) {
+        // Listening before the catch-up, so no event falls between the two
+        spectators.add(spectator);
+        for (Match match : running) {
+            match.describeTo(spectator);
+        }
+    }
+
+    void remove(ClientHandler spectator) {
+        spectators.remove(spectator);
+    }
+
+    int size() {
+        return spectators.size();
+    }
+
+    /** One event of a match, to every spectator */
+    void publish(int matchId, String message, OutboundQueue.Delivery delivery) {
+        if (spectators.isEmpty()) return;
+        ByteBuffer frame = WireProtocol.encodeText(line(matchId, message));
+        for (ClientHandler spectator : spectators) {
+            spectator.sendFrame(frame, delivery);
+        }
+    }
+
+    static String line(int matchId, String message) {
+        return "MATCH:" + matchId + ":" + message;
+    }
+
+    /** Positions a match sent its players this tick, they go out with flushTick() */
+    void positions(int matchId, int count, int[] ids, double[] xs, double[] ys) {
+        if (spectators.isEmpty()) return;
+        for (int i = 0; i < count; i++) {
+            if (tickLines.length() > 0) tickLines.append('\n');
+            tickLines.append("MATCH:").append(matchId).append(":PLAYER_POSITION:").append(ids[i])
+                    .append(':').append(xs[i]).append(':').append(ys[i]);
+        }
+        tickPositions += count;
+    }
+
+    /** After every match ticked: all their positions as one buffer, shared by every spectator */
+    void flushTick() {
+        if (tickLines.length() == 0) return;
+        ByteBuffer frame = WireProtocol.encodeText(tickLines.toString());
+        tickLines.setLength(0);
+        int recipients = 0;
+        for (ClientHandler spectator : spectators) {
+            spectator.sendFrame(frame);
+            recipients++;
+        }
+        GameServer.countUpdatesSent(tickPositions * recipients);
+        tickPositions = 0;
+    }
+}
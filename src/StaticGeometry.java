@@ -0,0 +1,96 @@
+import java.util.Arrays;
+
+/**
+ * Axis aligned boxes of a level's static nodes (walls, barriers, shelves), snapshotted once when
+ * the level loads into one flat array: minX, minY, maxX, maxY per box. Collision checks then read
+ * plain doubles instead of asking JavaFX for Bounds objects, and never allocate.
+ *
+ * Two tests are offered because the controllers used both:
+ *   intersects - touching edges count, the same as javafx.geometry.Bounds.intersects
+ *   overlaps   - the boxes must share some area, touching edges don't count
+ */
+final class StaticGeometry {
+    private static final int STRIDE = 4;
+
+    private double[] boxes;
+    private int count = 0;
+
+    StaticGeometry() {
+        this(16);
+    }
+
+    StaticGeometry(int expectedBoxes) {
+        boxes = new double[Math.max(1, expectedBoxes) * STRIDE];
+    }
+
+    /** Add a box and return its index, indexes follow the order boxes were added in */
+    int add(double minX, double minY, double maxX, double maxY) {
+        if ((count + 1) * STRIDE > boxes.length) {
+            boxes = Arrays.copyOf(boxes, boxes.length * 2);
+        }
+        int offset = count * STRIDE;
+        boxes[offset] = minX;
+        boxes[offset + 1] = minY;
+        boxes[offset + 2] = maxX;
+        boxes[offset + 3] = maxY;
+        return count++;
+    }
+
+    int size() {
+        return count;
+    }
+
+    double minX(int index) {
+        return boxes[index * STRIDE];
+    }
+
+    double minY(int index) {
+        return boxes[index * STRIDE + 1];
+    }
+
+    double maxX(int index) {
+        return boxes[index * STRIDE + 2];
+    }
+
+    double maxY(int index) {
+        return boxes[index * STRIDE + 3];
+    }
+
+    /** Index of the first box the query box intersects (touching counts), or -1 */
+    int firstIntersecting(double minX, double minY, double maxX, double maxY) {
+        double[] b = boxes;
+        for (int offset = 0, end = count * STRIDE; offset < end; offset += STRIDE) {
+            if (b[offset] <= maxX && b[offset + 2] >= minX && b[offset + 1] <= maxY && b[offset + 3] >= minY) {
+                return offset / STRIDE;
+            }
+        }
+        return -1;
+    }
+
+    /** Index of the first box the query box overlaps (touching doesn't count), or -1 */
+    int firstOverlapping(double minX, double minY, double maxX, double maxY) {
+        double[] b = boxes;
+        for (int offset = 0, end = count * STRIDE; offset < end; offset += STRIDE) {
+            if (b[offset] < maxX && b[offset + 2] > minX && b[offset + 1] < maxY && b[offset + 3] > minY) {
+                return offset / STRIDE;
+            }
+        }
+        return -1;
+    }
+
+    boolean intersects(int index, double minX, double minY, double maxX, double maxY) {
+        int offset = index * STRIDE;
+        return intersects(boxes[offset], boxes[offset + 1], boxes[offset + 2], boxes[offset + 3],
+                minX, minY, maxX, maxY);
+    }
+
+    static boolean intersects(double aMinX, double aMinY, double aMaxX, double aMaxY,
+                              double bMinX, double bMinY, double bMaxX, double bMaxY) {
+        return aMinX <= bMaxX && aMaxX >= bMinX && aMinY <= bMaxY && aMaxY >= bMinY;
+    }
+
+    static boolean overlaps(double aMinX, double aMinY, double aMaxX, double aMaxY,
+                            double bMinX, double bMinY, double bMaxX, double bMaxY) {
+        return aMinX < bMaxX && aMaxX > bMinX && aMinY < bMaxY && aMaxY > bMinY;
+    }
+}
@@ -0,0 +1,190 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Framing shared by GameServer and MultiplayerController.
+ *
+ * Most messages are newline terminated text lines. Right after connecting a client may send
+ * HELLO:<capabilities> (comma separated) and the server answers PROTOCOL:<the ones it accepts>.
+ *   BINARY   - position updates travel as fixed size binary frames instead of text
+ *   SNAPSHOT - the server sends delta SNAPSHOT messages that the client acknowledges (see GameState)
+ *   INPUT    - the client sends its key presses as MOVE:<U|D|L|R>:<sequence number> and the
+ *              server moves it, confirming the newest one applied each tick with
+ *              MOVE_ACK:<sequence number>:<x>:<y> so the client can correct its prediction
+ *   CLOCK    - the client may send CLOCK:<its System.nanoTime()> at any time and the server answers
+ *              CLOCK:<that time>:<server System.nanoTime()>; START_GAME:<start>:<deadline> carries
+ *              the match start and end on the server's clock, and the server alone ends the match
+ *   RESUME   - the client then sends JOIN, or RESUME:<token> to take back its slot after a dropped
+ *              connection. In a match the server hands out SESSION:<token>; a dropped player's slot
+ *              is held for a grace period, PLAYER_AWAY:<id> and PLAYER_BACK:<id> tell the others,
+ *              and a resumed client gets RESUMED:<id>:<x>:<y> and a full snapshot (or RESUME_FAILED,
+ *              after which the same connection may still send JOIN)
+ *   SPECTATE - a read-only connection that never joins a match. It gets every running match's
+ *              events and positions as MATCH:<match id>:<message>, see SpectatorFeed
+ * Binary frames start with an opcode that has the high bit set, which can never be the first byte
+ * of an ASCII text line, so both kinds can share one stream.
+ *
+ * Position frame (10 bytes): opcode, player id (unsigned byte), x (float), y (float), big endian.
+ * Client to server frames carry player id 0, the server knows who sent them.
+ */
+public final class WireProtocol {
+    public static final String HELLO = "HELLO";
+    public static final String PROTOCOL = "PROTOCOL";
+    public static final String CAP_BINARY = "BINARY";
+    public static final String CAP_SNAPSHOT = "SNAPSHOT";
+    public static final String CAP_INPUT = "INPUT";
+    public static final String CAP_CLOCK = "CLOCK";
+    public static final String CAP_RESUME = "RESUME";
+    public static final String CAP_SPECTATE = "SPECTATE";
+
+    public static final int OP_POSITION = 0x81;
+    public static final int POSITION_FRAME_LENGTH = 10;
+    public static final int MAX_LINE_LENGTH = 8192;
+
+    private WireProtocol() {
+    }
+
+    public static boolean isBinaryOpcode(int firstByte) {
+        return (firstByte & 0x80) != 0;
+    }
+
+    /** Length of the frame starting with this opcode, or -1 if the opcode is unknown */
+    public static int frameLength(int opcode) {
+        return opcode == OP_POSITION ? POSITION_FRAME_LENGTH : -1;
+    }
+
+    public static ByteBuffer encodeText(String message) {
+        return ByteBuffer.wrap((message + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ByteBuffer encodePosition(int playerId, float x, float y) {
+        ByteBuffer frame = ByteBuffer.allocate(POSITION_FRAME_LENGTH);
+        encodePosition(frame, playerId, x, y);
+        frame.flip();
+        return frame;
+    }
+
+    /** Append a position frame, used to batch several frames into one buffer */
+    public static void encodePosition(ByteBuffer dst, int playerId, float x, float y) {
+        dst.put((byte) OP_POSITION).put((byte) playerId).putFloat(x).putFloat(y);
+    }
+
+    /** Encode into a caller owned array so the sender can reuse it for every update */
+    public static void encodePosition(byte[] dst, int playerId, float x, float y) {
+        dst[0] = (byte) OP_POSITION;
+        dst[1] = (byte) playerId;
+        writeInt(dst, 2, Float.floatToRawIntBits(x));
+        writeInt(dst, 6, Float.floatToRawIntBits(y));
+    }
+
+    public static int positionPlayerId(byte[] frame) {
+        return frame[1] & 0xff;
+    }
+
+    public static float positionX(byte[] frame) {
+        return Float.intBitsToFloat(readInt(frame, 2));
+    }
+
+    public static float positionY(byte[] frame) {
+        return Float.intBitsToFloat(readInt(frame, 6));
+    }
+
+    private static void writeInt(byte[] dst, int offset, int value) {
+        dst[offset] = (byte) (value >>> 24);
+        dst[offset + 1] = (byte) (value >>> 16);
+        dst[offset + 2] = (byte) (value >>> 8);
+        dst[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] src, int offset) {
+        return ((src[offset] & 0xff) << 24)
+                | ((src[offset + 1] & 0xff) << 16)
+                | ((src[offset + 2] & 0xff) << 8)
+                | (src[offset + 3] & 0xff);
+    }
+
+    /**
+     * Reads a stream that may mix text lines and binary frames. Binary frames are decoded
+     * into fields of the reader itself, so receiving positions does not allocate.
+     */
+    public static final class FrameReader {
+        public static final int EOF = -1;
+        public static final int TEXT = 0;
+        public static final int POSITION = 1;
+
+        private final InputStream in;
+        private final byte[] line = new byte[MAX_LINE_LENGTH];
+        private final byte[] frame = new byte[POSITION_FRAME_LENGTH];
+        private String text;
+
+        /** The stream should be buffered, it is read one byte at a time */
+        public FrameReader(InputStream in) {
+            this.in = in;
+        }
+
+        public int next() throws IOException {
+            int first = in.read();
+            if (first < 0) {
+                return EOF;
+            }
+
+            if (isBinaryOpcode(first)) {
+                int length = frameLength(first);
+                if (length < 0) {
+                    throw new IOException("Unknown frame opcode: " + first);
+                }
+                frame[0] = (byte) first;
+                readFully(frame, 1, length - 1);
+                return POSITION;
+            }
+
+            int length = 0;
+            int b = first;
+            while (b != '\n') {
+                if (b < 0) {
+                    return EOF;
+                }
+                if (length == MAX_LINE_LENGTH) {
+                    throw new IOException("Line too long");
+                }
+                line[length++] = (byte) b;
+                b = in.read();
+            }
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            text = new String(line, 0, length, StandardCharsets.UTF_8);
+            return TEXT;
+        }
+
+        private void readFully(byte[] dst, int offset, int length) throws IOException {
+            while (length > 0) {
+                int read = in.read(dst, offset, length);
+                if (read < 0) {
+                    throw new EOFException("Stream ended inside a frame");
+                }
+                offset += read;
+                length -= read;
+            }
+        }
+
+        public String text() {
+            return text;
+        }
+
+        public int playerId() {
+            return positionPlayerId(frame);
+        }
+
+        public float x() {
+            return positionX(frame);
+        }
+
+        public float y() {
+            return positionY(frame);
+        }
+    }
+}
@@ -0,0 +1,414 @@
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Headless load generator: simulated players that connect in pairs and play a match the way the
+ * JavaFX client does, without a display. Every bot walks its own MovementSimulation, so what it
+ * sends is legal for the server's simulation too: POSITION_UPDATE (or MOVE with --protocol=input)
+ * for every step, ROOM_VISITED, FLOOR_CHANGED and VICTORY when its walk gets there, and
+ * ITEM_COLLECTED now and then.
+ *
+ * Broadcast latency is the time from a bot sending a step to its opponent receiving that position
+ * from the server, both ends are in this JVM so they share a clock. Every 5 seconds and at the end
+ * it prints throughput, p50/p99 latency and errors.
+ *
+ * Usage (after compiling src/ and tools/ into the same output directory, src on the class path
+ * for the floor levels):
+ *   java -cp out:src BotLoadTest --players=200 --rate=10 --duration=60     against a running server
+ *   java -cp out:src BotLoadTest --local --players=1000 --protocol=input   against one started here
+ *
+ * Options: --host=<host> --port=<n> --players=<n> --rate=<steps per second per bot>
+ *   --item-rate=<items per minute per bot> --duration=<seconds> --protocol=position|input --binary --local
+ */
+public class BotLoadTest {
+    private static final char[] DIRECTIONS = {'U', 'D', 'L', 'R'};
+    private static final int[] ITEM_IDS = {100, 200, 300, 400, 500, 600};
+    private static final long REPORT_NANOS = 5_000_000_000L;
+
+    private static final LongAdder messagesSent = new LongAdder();
+    private static final LongAdder messagesReceived = new LongAdder();
+    private static final LongAdder errors = new LongAdder();
+    private static final LongAdder matchesFinished = new LongAdder();
+    private static final LatencyHistogram latency = new LatencyHistogram();
+
+    private static String host = "localhost";
+    private static int port = 12345;
+    private static boolean inputProtocol = false;
+    private static boolean binary = false;
+    private static double itemChance;
+
+    public static void main(String[] args) throws Exception {
+        int players = 100;
+        double rate = 10;
+        double itemsPerMinute = 2;
+        int duration = 30;
+        boolean local = false;
+
+        for (String arg : args) {
+            if (arg.startsWith("--host=")) {
+                host = arg.substring("--host=".length());
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--players=")) {
+                players = Integer.parseInt(arg.substring("--players=".length()));
+            } else if (arg.startsWith("--rate=")) {
+                rate = Double.parseDouble(arg.substring("--rate=".length()));
+            } else if (arg.startsWith("--item-rate=")) {
+                itemsPerMinute = Double.parseDouble(arg.substring("--item-rate=".length()));
+            } else if (arg.startsWith("--duration=")) {
+                duration = Integer.parseInt(arg.substring("--duration=".length()));
+            } else if (arg.startsWith("--protocol=")) {
+                inputProtocol = arg.substring("--protocol=".length()).equals("input");
+            } else if (arg.equals("--binary")) {
+                binary = true;
+            } else if (arg.equals("--local")) {
+                local = true;
+            } else {
+                System.err.println("Unknown option: " + arg);
+            }
+        }
+        players += players % 2; // matches are pairs
+        itemChance = itemsPerMinute / 60.0 / rate;
+
+        if (local) {
+            LocalServer.start(host, port);
+        }
+        MovementSimulation.Floor[] floors = MovementSimulation.floors();
+
+        System.out.printf("%d bots against %s:%d, %.1f steps/s each, %s%s%n", players, host, port, rate,
+                inputProtocol ? "MOVE inputs" : "POSITION_UPDATE", binary ? ", binary positions" : "");
+        ExecutorService readers = Executors.newVirtualThreadPerTaskExecutor();
+        List<Bot> bots = new ArrayList<>(players);
+        for (int i = 0; i < players; i += 2) {
+            // One after the other, so the lobby puts each pair into the same match
+            Bot first = Bot.connect(i, floors, readers);
+            Bot second = first == null ? null : Bot.connect(i + 1, floors, readers);
+            if (first == null || second == null) {
+                if (first != null) first.close();
+                continue;
+            }
+            first.partner = second;
+            second.partner = first;
+            bots.add(first);
+            bots.add(second);
+        }
+        System.out.printf("%d bots connected in %d matches%n", bots.size(), bots.size() / 2);
+
+        ScheduledExecutorService steppers = Executors.newScheduledThreadPool(
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        long periodNanos = (long) (1_000_000_000L / rate);
+        Random jitter = new Random();
+        for (Bot bot : bots) {
+            // Spread the bots over the step interval instead of all stepping at once
+            steppers.scheduleAtFixedRate(bot::step, jitter.nextLong(periodNanos), periodNanos, TimeUnit.NANOSECONDS);
+        }
+
+        long start = System.nanoTime();
+        long end = start + duration * 1_000_000_000L;
+        long lastSent = 0, lastReceived = 0, lastReport = start;
+        while (System.nanoTime() < end) {
+            Thread.sleep(Math.min(REPORT_NANOS, end - System.nanoTime()) / 1_000_000L + 1);
+            long now = System.nanoTime();
+            long sent = messagesSent.sum(), received = messagesReceived.sum();
+            double seconds = (now - lastReport) / 1e9;
+            System.out.printf("t=%3ds  sent %8.0f/s  received %8.0f/s  latency p50 %6.2f ms  p99 %6.2f ms"
+                            + "  matches over %d  errors %d%n",
+                    (now - start) / 1_000_000_000L, (sent - lastSent) / seconds, (received - lastReceived) / seconds,
+                    latency.percentileMillis(50), latency.percentileMillis(99), matchesFinished.sum(), errors.sum());
+            lastSent = sent;
+            lastReceived = received;
+            lastReport = now;
+        }
+        steppers.shutdownNow();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println();
+        System.out.printf("Bots:              %d in %d matches%n", bots.size(), bots.size() / 2);
+        System.out.printf("Messages sent:     %d (%.0f/s)%n", messagesSent.sum(), messagesSent.sum() / seconds);
+        System.out.printf("Messages received: %d (%.0f/s)%n", messagesReceived.sum(), messagesReceived.sum() / seconds);
+        System.out.printf("Broadcast latency: p50 %.2f ms, p99 %.2f ms, max %.2f ms over %d samples%n",
+                latency.percentileMillis(50), latency.percentileMillis(99), latency.maxMillis(), latency.count());
+        System.out.printf("Matches over:      %d%n", matchesFinished.sum());
+        System.out.printf("Errors:            %d%n", errors.sum());
+
+        for (Bot bot : bots) {
+            bot.close();
+        }
+        System.exit(0);
+    }
+
+    /** One simulated player: a socket, a reader thread and its own walk through the building */
+    private static final class Bot {
+        private static final int REMEMBERED = 64;
+
+        private final int index;
+        private final Socket socket;
+        private final OutputStream out;
+        private final WireProtocol.FrameReader in;
+        private final MovementSimulation walk;
+        private final Random random;
+        private final CountDownLatch joined = new CountDownLatch(1);
+        private final byte[] positionFrame = new byte[WireProtocol.POSITION_FRAME_LENGTH];
+        private volatile int playerId;
+        // --binary and the server accepted BINARY, otherwise positions go as text
+        private volatile boolean binaryFrames = false;
+        private volatile boolean started = false;
+        private volatile boolean finished = false;
+        private Bot partner;
+        private char heading;
+        private long input = 0;
+
+        // Positions this bot sent lately and when, the partner looks up the ones broadcast to it
+        private final long[] sentPositions = new long[REMEMBERED];
+        private final long[] sentTimes = new long[REMEMBERED];
+        private int sentNext = 0;
+
+        private Bot(int index, Socket socket, MovementSimulation.Floor[] floors) throws IOException {
+            this.index = index;
+            this.socket = socket;
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+            this.in = new WireProtocol.FrameReader(new BufferedInputStream(socket.getInputStream()));
+            this.walk = new MovementSimulation(floors);
+            this.random = new Random(index);
+            this.heading = DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+        }
+
+        /** Connect, join the lobby and wait for a player id, null if that failed */
+        static Bot connect(int index, MovementSimulation.Floor[] floors, ExecutorService readers) {
+            try {
+                Socket socket = new Socket(host, port);
+                socket.setTcpNoDelay(true);
+                Bot bot = new Bot(index, socket, floors);
+                readers.execute(bot::read);
+                String capabilities = inputProtocol ? WireProtocol.CAP_INPUT : "";
+                if (binary) capabilities += (capabilities.isEmpty() ? "" : ",") + WireProtocol.CAP_BINARY;
+                bot.send(WireProtocol.HELLO + ":" + capabilities + "\n");
+                if (!bot.joined.await(5, TimeUnit.SECONDS)) {
+                    System.err.println("Bot " + index + " got no player id");
+                    errors.increment();
+                    bot.close();
+                    return null;
+                }
+                return bot;
+            } catch (IOException e) {
+                System.err.println("Bot " + index + " could not connect: " + e.getMessage());
+                errors.increment();
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        private void read() {
+            try {
+                int type;
+                while ((type = in.next()) != WireProtocol.FrameReader.EOF) {
+                    messagesReceived.increment();
+                    if (type == WireProtocol.FrameReader.POSITION) {
+                        positionReceived(in.playerId(), in.x(), in.y());
+                    } else {
+                        lineReceived(in.text());
+                    }
+                }
+                if (!finished) {
+                    errors.increment(); // the server closed a match still running
+                }
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    System.err.println("Bot " + index + " lost its connection: " + e.getMessage());
+                    errors.increment();
+                }
+            }
+        }
+
+        private void lineReceived(String line) {
+            String[] parts = line.split(":");
+            switch (parts[0]) {
+                case WireProtocol.PROTOCOL -> binaryFrames = parts.length > 1
+                        && Arrays.asList(parts[1].split(",")).contains(WireProtocol.CAP_BINARY);
+                case "PLAYER_ID" -> {
+                    playerId = Integer.parseInt(parts[1]);
+                    joined.countDown();
+                }
+                case "START_GAME" -> started = true;
+                case "PLAYER_POSITION" -> positionReceived(Integer.parseInt(parts[1]),
+                        (float) Double.parseDouble(parts[2]), (float) Double.parseDouble(parts[3]));
+                case "VICTORY", "DEFEAT", "TIME_UP_DEFEAT" -> {
+                    if (!finished) {
+                        finished = true;
+                        if (playerId == 1) matchesFinished.increment(); // once per match
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        private void positionReceived(int fromPlayer, float x, float y) {
+            if (fromPlayer == playerId || partner == null) return;
+            long sentAt = partner.sentAt(key(x, y));
+            if (sentAt != 0) {
+                latency.record(System.nanoTime() - sentAt);
+            }
+        }
+
+        /** One step of the walk, run by the stepper pool at the bot's rate */
+        void step() {
+            if (!started || finished) return;
+            if (random.nextInt(8) == 0) {
+                heading = DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+            }
+            MovementSimulation.Outcome outcome = walk.move(heading, ++input);
+            if (outcome == MovementSimulation.Outcome.BLOCKED) {
+                // Like a player at a wall: nothing to send, try another way next time
+                heading = DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+                return;
+            }
+
+            StringBuilder lines = new StringBuilder();
+            int count = 1;
+            if (!inputProtocol) {
+                if (!binaryFrames) {
+                    lines.append("POSITION_UPDATE:").append(walk.getX()).append(':').append(walk.getY()).append('\n');
+                }
+            } else {
+                lines.append("MOVE:").append(heading).append(':').append(input).append('\n');
+            }
+            if (outcome == MovementSimulation.Outcome.ROOM_VISITED || outcome == MovementSimulation.Outcome.WON) {
+                for (int room = walk.getFirstRoom(); room <= walk.getLastRoom(); room++) {
+                    lines.append("ROOM_VISITED:").append(room).append('\n');
+                    count++;
+                }
+            }
+            if (outcome == MovementSimulation.Outcome.WON) {
+                lines.append("VICTORY:").append(playerId).append('\n');
+                count++;
+            }
+            String nextFloor = nextFloor();
+            if (nextFloor != null && walk.changeFloor(nextFloor)) {
+                lines.append("FLOOR_CHANGED:").append(nextFloor).append('\n');
+                count++;
+            }
+            if (random.nextDouble() < itemChance) {
+                lines.append("ITEM_COLLECTED:").append(ITEM_IDS[random.nextInt(ITEM_IDS.length)]).append('\n');
+                count++;
+            }
+
+            try {
+                synchronized (out) {
+                    remember(key((float) walk.getX(), (float) walk.getY()), System.nanoTime());
+                    if (binaryFrames && !inputProtocol) {
+                        WireProtocol.encodePosition(positionFrame, 0, (float) walk.getX(), (float) walk.getY());
+                        out.write(positionFrame);
+                    }
+                    out.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+                messagesSent.add(count);
+            } catch (IOException e) {
+                if (!finished) {
+                    errors.increment();
+                    finished = true;
+                }
+            }
+        }
+
+        private String nextFloor() {
+            if (!walk.liftsUnlocked()) return null;
+            String floor = walk.getFloorName();
+            for (int i = 0; i + 1 < MovementSimulation.FLOOR_NAMES.length; i++) {
+                if (MovementSimulation.FLOOR_NAMES[i].equals(floor)) {
+                    return MovementSimulation.FLOOR_NAMES[i + 1];
+                }
+            }
+            return null;
+        }
+
+        private void send(String text) throws IOException {
+            synchronized (out) {
+                out.write(text.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        }
+
+        private static long key(float x, float y) {
+            return ((long) Float.floatToIntBits(x) << 32) | (Float.floatToIntBits(y) & 0xffffffffL);
+        }
+
+        private synchronized void remember(long position, long time) {
+            sentPositions[sentNext] = position;
+            sentTimes[sentNext] = time;
+            sentNext = (sentNext + 1) % REMEMBERED;
+        }
+
+        /** When this bot last sent that position, 0 if not lately */
+        private synchronized long sentAt(long position) {
+            for (int n = 1; n <= REMEMBERED; n++) {
+                int i = (sentNext - n + REMEMBERED) % REMEMBERED;
+                if (sentTimes[i] != 0 && sentPositions[i] == position) {
+                    long time = sentTimes[i];
+                    sentTimes[i] = 0; // a position repeated by a resend is not a new sample
+                    return time;
+                }
+            }
+            return 0;
+        }
+
+        void close() {
+            finished = true;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Going away anyway
+            }
+        }
+    }
+
+    /** Latencies in 0.1 ms buckets up to 2 s, lock free so the reader threads never wait on it */
+    private static final class LatencyHistogram {
+        private static final long BUCKET_NANOS = 100_000L;
+        private static final int BUCKETS = 20_000;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS + 1);
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+            counts.incrementAndGet((int) Math.min(BUCKETS, nanos / BUCKET_NANOS));
+            total.increment();
+            max.accumulate(nanos);
+        }
+
+        long count() {
+            return total.sum();
+        }
+
+        double percentileMillis(double percentile) {
+            long samples = total.sum();
+            if (samples == 0) return 0;
+            long rank = (long) Math.ceil(samples * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i <= BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    return (i + 1) * BUCKET_NANOS / 1_000_000.0; // upper edge of the bucket
+                }
+            }
+            return maxMillis();
+        }
+
+        double maxMillis() {
+            return max.get() / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+import javafx.geometry.Bounds;
+import javafx.scene.Node;
+import javafx.scene.shape.Rectangle;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the collision paths the controllers used against StaticGeometry, for floors with a
+ * growing number of obstacles. Each check tests one player position against every obstacle.
+ *
+ *   bounds         player.getBoundsInParent().intersects(wall.getBoundsInParent()), BFS/Multiplayer
+ *   localToParent  a.localToParent(a.getBoundsInLocal()) for both nodes, LibraryController
+ *   static         StaticGeometry.firstIntersecting on boxes snapshotted once
+ *
+ * Needs javafx.graphics on the class path (no window is opened):
+ *   javac --module-path $FX --add-modules javafx.graphics -d out src/StaticGeometry.java src/FxGeometry.java tools/CollisionBenchmark.java
+ *   java --module-path $FX --add-modules javafx.graphics -cp out CollisionBenchmark
+ */
+public class CollisionBenchmark {
+    private static final int POSITIONS = 1024;
+
+    public static void main(String[] args) {
+        int checks = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        System.out.printf("%-10s %-14s %12s %14s%n", "obstacles", "path", "ns/check", "bytes/check");
+        for (int obstacles : new int[] {40, 400, 4000}) {
+            Random random = new Random(42);
+            List<Rectangle> walls = new ArrayList<>();
+            for (int i = 0; i < obstacles; i++) {
+                // Thin wall segments spread over a floor that grows with the obstacle count
+                double size = Math.sqrt(obstacles) * 100;
+                Rectangle wall = new Rectangle(random.nextBoolean() ? 60 : 4, random.nextBoolean() ? 4 : 60);
+                wall.setLayoutX(random.nextDouble() * size);
+                wall.setLayoutY(random.nextDouble() * size);
+                walls.add(wall);
+            }
+            StaticGeometry geometry = FxGeometry.snapshot(walls);
+
+            Rectangle player = new Rectangle(7, 7);
+            double[] xs = new double[POSITIONS];
+            double[] ys = new double[POSITIONS];
+            for (int i = 0; i < POSITIONS; i++) {
+                xs[i] = random.nextDouble() * Math.sqrt(obstacles) * 100;
+                ys[i] = random.nextDouble() * Math.sqrt(obstacles) * 100;
+            }
+
+            int iterations = Math.max(1000, checks * 40 / obstacles);
+            // The first round warms up the JIT
+            for (int round = 0; round < 2; round++) {
+                boolean report = round == 1;
+                time(obstacles, "bounds", iterations, report, () -> boundsPath(player, walls, xs, ys, iterations));
+                time(obstacles, "localToParent", iterations, report, () -> localToParentPath(player, walls, xs, ys, iterations));
+                time(obstacles, "static", iterations, report, () -> staticPath(player, geometry, xs, ys, iterations));
+            }
+        }
+    }
+
+    private interface Job {
+        int run();
+    }
+
+    private static void time(int obstacles, String name, int iterations, boolean report, Job job) {
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        int hits = job.run();
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        if (report) {
+            System.out.printf("%-10d %-14s %12.1f %14.1f   (hits %d)%n", obstacles, name,
+                    (double) elapsed / iterations, (double) allocated / iterations, hits);
+        }
+    }
+
+    private static int boundsPath(Rectangle player, List<Rectangle> walls, double[] xs, double[] ys, int iterations) {
+        int hits = 0;
+        for (int i = 0; i < iterations; i++) {
+            player.setLayoutX(xs[i & (POSITIONS - 1)]);
+            player.setLayoutY(ys[i & (POSITIONS - 1)]);
+            for (Rectangle wall : walls) {
+                if (player.getBoundsInParent().intersects(wall.getBoundsInParent())) {
+                    hits++;
+                    break;
+                }
+            }
+        }
+        return hits;
+    }
+
+    private static int localToParentPath(Rectangle player, List<Rectangle> walls, double[] xs, double[] ys, int iterations) {
+        int hits = 0;
+        for (int i = 0; i < iterations; i++) {
+            player.setLayoutX(xs[i & (POSITIONS - 1)]);
+            player.setLayoutY(ys[i & (POSITIONS - 1)]);
+            for (Node wall : walls) {
+                Bounds a = player.localToParent(player.getBoundsInLocal());
+                Bounds b = wall.localToParent(wall.getBoundsInLocal());
+                if (a.intersects(b)) {
+                    hits++;
+                    break;
+                }
+            }
+        }
+        return hits;
+    }
+
+    private static int staticPath(Rectangle player, StaticGeometry geometry, double[] xs, double[] ys, int iterations) {
+        int hits = 0;
+        for (int i = 0; i < iterations; i++) {
+            player.setLayoutX(xs[i & (POSITIONS - 1)]);
+            player.setLayoutY(ys[i & (POSITIONS - 1)]);
+            if (FxGeometry.firstIntersecting(geometry, player) >= 0) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean sun) {
+            return sun.getThreadAllocatedBytes(Thread.currentThread().threadId());
+        }
+        return 0;
+    }
+}
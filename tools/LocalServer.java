@@ -0,0 +1,26 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/** The real GameServer in this JVM, for the tools' --local mode; it logs to its log file only */
+final class LocalServer {
+    private LocalServer() {
+    }
+
+    /** Start the server on port and wait until it accepts connections */
+    static void start(String host, int port) throws InterruptedException {
+        Thread server = new Thread(() -> GameServer.main(new String[] {"--port=" + port, "--quiet"}), "server-main");
+        server.setDaemon(true);
+        server.start();
+        for (int attempt = 0; attempt < 100; attempt++) {
+            try (Socket probe = new Socket()) {
+                // A probe that never says anything leaves before the lobby's HELLO wait is over
+                probe.connect(new InetSocketAddress(host, port));
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("Server did not start on port " + port);
+    }
+}
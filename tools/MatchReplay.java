@@ -0,0 +1,367 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays back a match the server recorded with --record (MatchRecorder).
+ *
+ * Without --print it replays the match against a server: one connection per recorded player,
+ * each sending what that player sent, at the recorded pace or as fast as possible. The server
+ * simulates every player on their own, so each player's room visits, floor changes and items and
+ * the final positions only depend on the order of that player's messages. The replay must
+ * therefore end with the same events per player, the same winner and the same positions as the
+ * recording. The tool compares them and exits with 1 if anything differs, which makes a recording
+ * a repeatable load and regression input. Only a match that ran out of time needs --speed=1 to
+ * end the same way.
+ *
+ * With --print it prints the match as a timeline for a post-game review instead.
+ *
+ * Usage (after compiling src/ and tools/ into the same output directory, src on the class path
+ * for the floor levels):
+ *   java -cp out:src MatchReplay recordings/match-3-1760000000000.rec --local --speed=max
+ *   java -cp out:src MatchReplay recordings/match-3-1760000000000.rec --print [--positions]
+ *
+ * Options: --host=<host> --port=<n> --local --speed=1|max --print --positions
+ * Against --host/--port the server must be otherwise idle, so the replay's players share a match.
+ */
+public class MatchReplay {
+    private static final long SETTLE_NANOS = 2_000_000_000L;
+    // At full speed a disconnect waits this long, so the server has applied the others' messages first
+    private static final long DISCONNECT_PAUSE_MILLIS = 100;
+
+    private static String host = "localhost";
+    private static int port = 12345;
+
+    public static void main(String[] args) throws Exception {
+        Path file = null;
+        boolean realtime = true;
+        boolean print = false;
+        boolean positions = false;
+        boolean local = false;
+        for (String arg : args) {
+            if (arg.startsWith("--host=")) {
+                host = arg.substring("--host=".length());
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.equals("--local")) {
+                local = true;
+            } else if (arg.startsWith("--speed=")) {
+                realtime = !arg.substring("--speed=".length()).equals("max");
+            } else if (arg.equals("--print")) {
+                print = true;
+            } else if (arg.equals("--positions")) {
+                positions = true;
+            } else if (!arg.startsWith("--")) {
+                file = Path.of(arg);
+            } else {
+                System.err.println("Unknown option: " + arg);
+            }
+        }
+        if (file == null) {
+            System.err.println("Usage: MatchReplay <recording> [--print [--positions]] [--local | --host=<host> --port=<n>] [--speed=1|max]");
+            System.exit(2);
+        }
+
+        if (print) {
+            printTimeline(file, realtime, positions);
+            return;
+        }
+        if (local) {
+            LocalServer.start(host, port);
+        }
+        System.exit(replay(file, realtime) ? 0 : 1);
+    }
+
+    private static void printTimeline(Path file, boolean realtime, boolean positions) throws Exception {
+        MatchRecorder.Reader record = new MatchRecorder.Reader(file);
+        System.out.printf("Match %d, recorded %s%n", record.matchId, new Date(record.startedMillis));
+        long start = System.nanoTime();
+        while (record.next()) {
+            if (record.type == MatchRecorder.POSITIONS && !positions) continue;
+            if (realtime) {
+                sleepUntil(start + record.micros * 1000);
+            }
+            String time = String.format("%4d:%06.3f", record.micros / 60_000_000, record.micros % 60_000_000 / 1e6);
+            switch (record.type) {
+                case MatchRecorder.PLAYER -> System.out.printf("%s  P%d joined%s%s%s%n", time, record.player,
+                        (record.flags & MatchRecorder.FLAG_BINARY) != 0 ? " binary" : "",
+                        (record.flags & MatchRecorder.FLAG_SNAPSHOT) != 0 ? " snapshot" : "",
+                        (record.flags & MatchRecorder.FLAG_INPUT) != 0 ? " input" : "");
+                case MatchRecorder.RECEIVED -> System.out.printf("%s  P%d > %s%n", time, record.player, record.text);
+                case MatchRecorder.FRAME -> System.out.printf("%s  P%d > [frame] %s, %s%n", time, record.player, record.x, record.y);
+                case MatchRecorder.BROADCAST -> System.out.printf("%s     < %s%n", time, record.text);
+                case MatchRecorder.DISCONNECT -> System.out.printf("%s  P%d disconnected%n", time, record.player);
+                case MatchRecorder.POSITIONS -> {
+                    StringBuilder line = new StringBuilder(time).append("     @");
+                    for (int i = 0; i < record.count; i++) {
+                        line.append(" P").append(record.ids[i]).append(' ').append(record.xs[i]).append(',').append(record.ys[i]);
+                    }
+                    System.out.println(line);
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    private static boolean replay(Path file, boolean realtime) throws Exception {
+        // First pass: the players, and what the server made of their messages
+        MatchRecorder.Reader record = new MatchRecorder.Reader(file);
+        TreeMap<Integer, Integer> players = new TreeMap<>();
+        Map<String, List<String>> expectedEvents = new TreeMap<>();
+        Map<Integer, float[]> expectedPositions = new TreeMap<>();
+        long recordedStart = -1;
+        long recordedEnd = 0;
+        int inputs = 0;
+        while (record.next()) {
+            recordedEnd = record.micros;
+            switch (record.type) {
+                case MatchRecorder.PLAYER -> players.put(record.player, record.flags);
+                case MatchRecorder.BROADCAST -> {
+                    if (record.text.startsWith("START_GAME") && recordedStart < 0) recordedStart = record.micros;
+                    String event = event(record.text);
+                    expectedEvents.computeIfAbsent(subject(event), k -> new ArrayList<>()).add(event);
+                }
+                case MatchRecorder.POSITIONS -> {
+                    for (int i = 0; i < record.count; i++) {
+                        expectedPositions.put(record.ids[i], new float[] {record.xs[i], record.ys[i]});
+                    }
+                }
+                case MatchRecorder.RECEIVED, MatchRecorder.FRAME, MatchRecorder.DISCONNECT -> inputs++;
+                default -> {
+                }
+            }
+        }
+        if (players.isEmpty() || recordedStart < 0) {
+            System.err.println(file + " has no started match");
+            return false;
+        }
+        System.out.printf("Replaying match %d: %d players, %d inputs over %.1f s, %s%n", record.matchId,
+                players.size(), inputs, (recordedEnd - recordedStart) / 1e6, realtime ? "at the recorded pace" : "as fast as possible");
+
+        // Join in player id order, so the server hands out the same ids
+        Map<Integer, Player> connections = new TreeMap<>();
+        for (int id : players.keySet()) {
+            Player player = new Player(id);
+            connections.put(id, player);
+            if (!player.placed.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Server did not place player " + id);
+            }
+            if (player.assignedId != id) {
+                System.err.printf("Server gave player %d id %d, is it running other matches?%n", id, player.assignedId);
+                return false;
+            }
+        }
+        for (Player player : connections.values()) {
+            if (!player.started.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Match did not start");
+            }
+        }
+
+        // Second pass: send each input from its player's connection
+        long start = System.nanoTime();
+        record = new MatchRecorder.Reader(file);
+        int sent = 0;
+        while (record.next()) {
+            Player player = connections.get(record.player);
+            if (player == null) continue;
+            if (realtime && record.micros > recordedStart
+                    && (record.type == MatchRecorder.RECEIVED || record.type == MatchRecorder.FRAME)) {
+                sleepUntil(start + (record.micros - recordedStart) * 1000);
+            }
+            switch (record.type) {
+                case MatchRecorder.RECEIVED -> {
+                    // Clock pings only ask the server for its time
+                    if (!record.text.startsWith("CLOCK:")) {
+                        player.send(record.text);
+                        sent++;
+                    }
+                }
+                // Same double the binary frame gave the server
+                case MatchRecorder.FRAME -> {
+                    player.send("POSITION_UPDATE:" + (double) record.x + ":" + (double) record.y);
+                    sent++;
+                }
+                case MatchRecorder.DISCONNECT -> {
+                    if (realtime) {
+                        sleepUntil(start + (record.micros - recordedStart) * 1000);
+                    } else {
+                        Thread.sleep(DISCONNECT_PAUSE_MILLIS);
+                    }
+                    player.close();
+                }
+                default -> {
+                }
+            }
+            // What follows the result is the server closing the match
+            if (record.type == MatchRecorder.BROADCAST && isResult(record.text)) break;
+        }
+        long sendNanos = System.nanoTime() - start;
+
+        // Let the last moves reach a tick and the results come back
+        long settle = System.nanoTime() + SETTLE_NANOS;
+        while (System.nanoTime() < settle && !replayedEvents(connections).equals(expectedEvents)) {
+            Thread.sleep(20);
+        }
+        Thread.sleep(200);
+
+        System.out.printf("Sent %d messages in %.1f s%n", sent, sendNanos / 1e9);
+        Map<String, List<String>> events = replayedEvents(connections);
+        Set<String> subjects = new TreeSet<>(expectedEvents.keySet());
+        subjects.addAll(events.keySet());
+        boolean eventsMatch = true;
+        for (String subject : subjects) {
+            List<String> want = expectedEvents.getOrDefault(subject, List.of());
+            List<String> got = events.getOrDefault(subject, List.of());
+            int same = 0;
+            while (same < Math.min(want.size(), got.size()) && want.get(same).equals(got.get(same))) {
+                same++;
+            }
+            boolean match = same == want.size() && same == got.size();
+            eventsMatch &= match;
+            System.out.printf("%-10s %d of %d recorded events replayed the same%s%n", subject + ":", same, want.size(),
+                    match ? "" : ", first difference: recorded " + (same < want.size() ? want.get(same) : "nothing")
+                            + ", replayed " + (same < got.size() ? got.get(same) : "nothing"));
+        }
+
+        boolean positionsMatch = true;
+        for (Map.Entry<Integer, float[]> expected : expectedPositions.entrySet()) {
+            double[] actual = lastPosition(connections, expected.getKey());
+            float[] want = expected.getValue();
+            boolean match = actual != null && Math.abs(actual[0] - want[0]) < 1e-3 && Math.abs(actual[1] - want[1]) < 1e-3;
+            positionsMatch &= match;
+            System.out.printf("%-10s recorded at %s, %s, replayed at %s%s%n", "P" + expected.getKey() + ":", want[0], want[1],
+                    actual == null ? "nowhere" : actual[0] + ", " + actual[1], match ? "" : "  DIFFERENT");
+        }
+        for (Player player : connections.values()) {
+            player.close();
+        }
+        System.out.println(eventsMatch && positionsMatch ? "Replay matches the recording" : "Replay differs from the recording");
+        return eventsMatch && positionsMatch;
+    }
+
+    /** A recorded or replayed event, with what differs between runs taken out */
+    private static String event(String line) {
+        return line.startsWith("START_GAME") ? "START_GAME" : line;
+    }
+
+    private static boolean isResult(String event) {
+        return event.startsWith("VICTORY") || event.startsWith("TIME_UP_DEFEAT");
+    }
+
+    /** The player an event is about (ROOM_VISITED:<player>:<room>), or the whole match */
+    private static String subject(String event) {
+        String[] parts = event.split(":");
+        return parts.length > 1 && !parts[1].isEmpty() && parts[1].chars().allMatch(Character::isDigit)
+                ? "P" + parts[1] : "match";
+    }
+
+    /**
+     * The events the players received, per subject from whoever got most of them: a player that
+     * dropped misses what came after. Only the winner gets VICTORY (the others DEFEAT), the
+     * recording has the VICTORY.
+     */
+    private static Map<String, List<String>> replayedEvents(Map<Integer, Player> connections) {
+        Map<String, List<String>> longest = new TreeMap<>();
+        for (Player player : connections.values()) {
+            Map<String, List<String>> events = new TreeMap<>();
+            for (String line : player.lines()) {
+                if (line.startsWith("PLAYER_POSITION") || line.startsWith("PLAYER_ID") || line.startsWith("PROTOCOL")
+                        || line.startsWith("DEFEAT")) continue;
+                String event = event(line);
+                events.computeIfAbsent(subject(event), k -> new ArrayList<>()).add(event);
+            }
+            for (Map.Entry<String, List<String>> entry : events.entrySet()) {
+                if (entry.getValue().size() > longest.getOrDefault(entry.getKey(), List.of()).size()) {
+                    longest.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return longest;
+    }
+
+    /** Where the server last said the player was, from the connection that stayed longest */
+    private static double[] lastPosition(Map<Integer, Player> connections, int playerId) {
+        List<String> longest = List.of();
+        for (Player player : connections.values()) {
+            List<String> lines = player.lines();
+            if (lines.size() > longest.size()) longest = lines;
+        }
+        String prefix = "PLAYER_POSITION:" + playerId + ":";
+        for (int i = longest.size() - 1; i >= 0; i--) {
+            if (longest.get(i).startsWith(prefix)) {
+                String[] parts = longest.get(i).split(":");
+                return new double[] {Double.parseDouble(parts[2]), Double.parseDouble(parts[3])};
+            }
+        }
+        return null;
+    }
+
+    private static void sleepUntil(long deadline) throws InterruptedException {
+        long wait = deadline - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /** One recorded player, as a plain text client so binary frames and moves go the same way */
+    private static final class Player {
+        private final Socket socket;
+        private final Writer out;
+        private final List<String> lines = new ArrayList<>();
+        final CountDownLatch placed = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        volatile int assignedId = -1;
+
+        Player(int id) throws IOException {
+            socket = new Socket();
+            socket.connect(new InetSocketAddress(host, port));
+            socket.setTcpNoDelay(true);
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Thread.ofVirtual().name("replay-player-" + id).start(() -> {
+                try {
+                    String line;
+                    // A tick's positions arrive as one frame of several lines, they are read one by one
+                    while ((line = in.readLine()) != null) {
+                        synchronized (lines) {
+                            lines.add(line);
+                        }
+                        if (line.startsWith("PLAYER_ID:")) {
+                            assignedId = Integer.parseInt(line.substring("PLAYER_ID:".length()));
+                            placed.countDown();
+                        } else if (line.startsWith("START_GAME")) {
+                            started.countDown();
+                        }
+                    }
+                } catch (IOException e) {
+                    // closed by the replay or the server
+                }
+            });
+            // No capabilities: positions, moves and events all travel as text lines
+            send("HELLO:");
+        }
+
+        List<String> lines() {
+            synchronized (lines) {
+                return new ArrayList<>(lines);
+            }
+        }
+
+        synchronized void send(String line) throws IOException {
+            if (socket.isClosed()) return;
+            out.write(line);
+            out.write('\n');
+            out.flush();
+        }
+
+        void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Opens a large number of idle or slow connections against an in-process GameServer and
+ * reports how many platform and carrier threads it needed and how much memory each connection cost.
+ *
+ * Usage (after compiling src/ and tools/ into the same output directory):
+ *   java ServerLoadTest --connections=5000              runs every transport in its own JVM
+ *   java ServerLoadTest --mode=virtual --connections=20000
+ *
+ * Large runs need a raised open file limit (ulimit -n). The client sockets live in the same JVM,
+ * they are plain SocketChannels without threads so they add little next to the server.
+ */
+public class ServerLoadTest {
+    private static final String[] MODES = {"nio", "blocking", "virtual"};
+
+    public static void main(String[] args) throws Exception {
+        String mode = null;
+        int connections = 2000;
+        int port = 12400;
+
+        for (String arg : args) {
+            if (arg.startsWith("--mode=")) {
+                mode = arg.substring("--mode=".length());
+            } else if (arg.startsWith("--connections=")) {
+                connections = Integer.parseInt(arg.substring("--connections=".length()));
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            }
+        }
+
+        if (mode == null) {
+            compareModes(connections, port);
+        } else {
+            runMode(mode, connections, port);
+        }
+    }
+
+    // Each mode gets a fresh JVM so thread and memory numbers don't leak between runs
+    private static void compareModes(int connections, int port) throws Exception {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        String classpath = System.getProperty("java.class.path");
+
+        System.out.printf("%-10s %12s %10s %10s %16s %16s%n",
+                "mode", "connections", "threads", "carriers", "heap/conn (B)", "rss/conn (B)");
+        for (int i = 0; i < MODES.length; i++) {
+            Process process = new ProcessBuilder(java, "-cp", classpath, "ServerLoadTest",
+                    "--mode=" + MODES[i], "--connections=" + connections, "--port=" + (port + i))
+                    .redirectErrorStream(true)
+                    .start();
+
+            String result = null;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("RESULT ")) {
+                        result = line;
+                    } else if (line.startsWith("ERROR ")) {
+                        System.err.println(MODES[i] + ": " + line);
+                    }
+                }
+            }
+            process.waitFor();
+
+            if (result == null) {
+                System.out.printf("%-10s %12s%n", MODES[i], "failed");
+                continue;
+            }
+            String[] parts = result.split(" ");
+            System.out.printf("%-10s %12s %10s %10s %16s %16s%n",
+                    parts[1], parts[2], parts[3], parts[4], parts[5], parts[6]);
+        }
+    }
+
+    private static void runMode(String mode, int connections, int port) throws Exception {
+        // Keep the server's console chatter out of our report
+        PrintStream report = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+
+        Thread server = new Thread(() -> GameServer.main(new String[] {"--port=" + port, "--transport=" + mode}),
+                "server-main");
+        server.setDaemon(true);
+        server.start();
+        waitForServer(port);
+
+        Snapshot before = Snapshot.take();
+
+        List<SocketChannel> clients = new ArrayList<>(connections);
+        try {
+            for (int i = 0; i < connections; i++) {
+                SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", port));
+                clients.add(channel);
+                // Half the clients say something once and then go quiet, the rest never speak
+                if (i % 2 == 0) {
+                    channel.write(ByteBuffer.wrap("POSITION_UPDATE:10.0:10.0\n".getBytes(StandardCharsets.UTF_8)));
+                }
+            }
+        } catch (IOException e) {
+            report.println("ERROR opened " + clients.size() + " connections: " + e.getMessage()
+                    + " (check ulimit -n)");
+        }
+
+        // Let the server finish handing every connection to its threads
+        Thread.sleep(3000);
+        Snapshot after = Snapshot.take();
+
+        int opened = Math.max(1, clients.size());
+        long heapPerConnection = (after.heapUsed - before.heapUsed) / opened;
+        long rssPerConnection = before.rss < 0 ? -1 : (after.rss - before.rss) / opened;
+
+        report.printf("RESULT %s %d %d %d %d %d%n", mode, clients.size(), after.platformThreads,
+                after.carrierThreads, heapPerConnection, rssPerConnection);
+
+        for (SocketChannel channel : clients) {
+            channel.close();
+        }
+        System.exit(0);
+    }
+
+    private static void waitForServer(int port) throws InterruptedException {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            try {
+                SocketChannel.open(new InetSocketAddress("localhost", port)).close();
+                Thread.sleep(200); // let the probe's player leave the lobby again
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("Server did not start on port " + port);
+    }
+
+    /** Threads and memory at one point in time */
+    private static class Snapshot {
+        long heapUsed;
+        long rss;
+        int platformThreads;
+        int carrierThreads;
+
+        static Snapshot take() {
+            System.gc();
+            Snapshot snapshot = new Snapshot();
+            snapshot.heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            snapshot.rss = readRss();
+            snapshot.platformThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+            // Virtual threads run on ForkJoinPool carrier threads, getAllStackTraces only lists platform threads
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getClass().getName().endsWith("CarrierThread")) {
+                    snapshot.carrierThreads++;
+                }
+            }
+            return snapshot;
+        }
+
+        // Resident set size in bytes, thread stacks live here rather than on the heap
+        private static long readRss() {
+            try {
+                for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                    if (line.startsWith("VmRSS:")) {
+                        return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // Not on Linux
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compares the text and binary encodings of a position update: bytes on the wire and the
+ * time to encode and parse one update the way GameServer and MultiplayerController do it.
+ *
+ * Usage: java WireProtocolBenchmark [iterations]
+ */
+public class WireProtocolBenchmark {
+    private static final int SAMPLES = 1024;
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+
+        // Coordinates in the range of the 600x400 floors, stepping by the controllers' 5px moves
+        double[] xs = new double[SAMPLES];
+        double[] ys = new double[SAMPLES];
+        byte[][] textLines = new byte[SAMPLES][];
+        byte[][] frames = new byte[SAMPLES][];
+        for (int i = 0; i < SAMPLES; i++) {
+            xs[i] = (i * 5) % 600;
+            ys[i] = 40 + (i * 15) % 360 + 0.5;
+            textLines[i] = ("POSITION_UPDATE:" + xs[i] + ":" + ys[i] + "\n").getBytes(StandardCharsets.UTF_8);
+            frames[i] = new byte[WireProtocol.POSITION_FRAME_LENGTH];
+            WireProtocol.encodePosition(frames[i], 1, (float) xs[i], (float) ys[i]);
+        }
+
+        long textUp = 0, textDown = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            textUp += textLines[i].length;
+            textDown += ("PLAYER_POSITION:1:" + xs[i] + ":" + ys[i] + "\n").length();
+        }
+        System.out.println("Bytes per update");
+        System.out.printf("  text   client->server %.1f, server->client %.1f%n",
+                (double) textUp / SAMPLES, (double) textDown / SAMPLES);
+        System.out.printf("  binary client->server %d, server->client %d%n",
+                WireProtocol.POSITION_FRAME_LENGTH, WireProtocol.POSITION_FRAME_LENGTH);
+
+        // Run everything twice, the first round only warms up the JIT
+        for (int round = 0; round < 2; round++) {
+            boolean report = round == 1;
+            if (report) System.out.println("Nanoseconds per update");
+            time("  text   encode", iterations, report, () -> encodeText(xs, ys, iterations));
+            time("  binary encode", iterations, report, () -> encodeBinary(xs, ys, iterations));
+            time("  text   parse ", iterations, report, () -> parseText(textLines, iterations));
+            time("  binary parse ", iterations, report, () -> parseBinary(frames, iterations));
+        }
+    }
+
+    private interface Job {
+        double run();
+    }
+
+    private static void time(String name, int iterations, boolean report, Job job) {
+        long start = System.nanoTime();
+        double sink = job.run();
+        long elapsed = System.nanoTime() - start;
+        if (report) {
+            // Printing the sink keeps the JIT from dropping the work
+            System.out.printf("%s %8.1f   (checksum %.0f)%n", name, (double) elapsed / iterations, sink);
+        }
+    }
+
+    // What MultiplayerController.sendPositionUpdate does on the text protocol
+    private static double encodeText(double[] xs, double[] ys, int iterations) {
+        double sink = 0;
+        for (int i = 0; i < iterations; i++) {
+            int s = i & (SAMPLES - 1);
+            String message = "POSITION_UPDATE:" + xs[s] + ":" + ys[s] + "\n";
+            sink += message.getBytes(StandardCharsets.UTF_8).length;
+        }
+        return sink;
+    }
+
+    private static double encodeBinary(double[] xs, double[] ys, int iterations) {
+        byte[] frame = new byte[WireProtocol.POSITION_FRAME_LENGTH];
+        double sink = 0;
+        for (int i = 0; i < iterations; i++) {
+            int s = i & (SAMPLES - 1);
+            WireProtocol.encodePosition(frame, 0, (float) xs[s], (float) ys[s]);
+            sink += frame[2] + frame[6];
+        }
+        return sink;
+    }
+
+    // What the server does with a text line: decode, split and parse both doubles
+    private static double parseText(byte[][] lines, int iterations) {
+        double sink = 0;
+        for (int i = 0; i < iterations; i++) {
+            byte[] line = lines[i & (SAMPLES - 1)];
+            String message = new String(line, 0, line.length - 1, StandardCharsets.UTF_8);
+            String[] parts = message.split(":");
+            sink += Double.parseDouble(parts[1]) + Double.parseDouble(parts[2]);
+        }
+        return sink;
+    }
+
+    private static double parseBinary(byte[][] frames, int iterations) {
+        double sink = 0;
+        for (int i = 0; i < iterations; i++) {
+            byte[] frame = frames[i & (SAMPLES - 1)];
+            sink += WireProtocol.positionX(frame) + WireProtocol.positionY(frame);
+        }
+        return sink;
+    }
+}